@@ -1,7 +1,9 @@
 plugins {
     id("java")
     id("org.springframework.boot") version "3.1.4"
+    id("org.springframework.boot.aot") version "3.1.4"
     id("io.spring.dependency-management") version "1.1.3"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -14,15 +16,17 @@ repositories {
 }
 
 dependencies {
-//    implementation("org.springframework.boot:spring-boot-starter-actuator")
     // Spring Boot
     implementation("org.springframework.boot:spring-boot-starter")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
     implementation("org.springframework.boot:spring-boot-configuration-processor")
 
     // Database
     implementation("mysql:mysql-connector-java:8.0.33")
+    implementation("org.flywaydb:flyway-core")
+    implementation("org.flywaydb:flyway-mysql")
 //    runtimeOnly("org.postgresql:postgresql")
 
     // Telegram Bot API
@@ -37,10 +41,109 @@ dependencies {
     implementation("org.projectlombok:lombok:1.18.26")
     annotationProcessor("org.projectlombok:lombok:1.18.26")
 
+    // Metrics
+    implementation("io.micrometer:micrometer-registry-prometheus")
+
     implementation("org.slf4j:slf4j-api:2.0.9")
     implementation("ch.qos.logback:logback-classic:1.4.11")
+
+    // Тесты: срезы Spring на H2 в режиме MySQL со схемой из миграций Flyway
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
+    testRuntimeOnly("com.h2database:h2")
+    testCompileOnly("org.projectlombok:lombok:1.18.26")
+    testAnnotationProcessor("org.projectlombok:lombok:1.18.26")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Нагрузочный стенд: ./gradlew loadTest --args="--rate=100 --duration=60 --users=200"
+val loadtest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[loadtest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[loadtest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "loadtestRuntimeOnly"("com.h2database:h2")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Replays synthetic updates against the bot with stubbed TMDb and Telegram APIs."
+    group = "verification"
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("org.example.loadtest.LoadTestRunner")
+}
+
+// Профиль быстрого запуска fast-start: классы AOT собираются processAot с этим профилем,
+// архив AppCDS - тренировочным прогоном cdsArchive (нужна та же база и настройки, что и при обычном запуске).
+// Запуск с AOT и архивом: ./gradlew bootRunFastStart
+tasks.named<org.springframework.boot.gradle.tasks.aot.ProcessAot>("processAot") {
+    args("--spring.profiles.active=fast-start")
+}
+
+val aotJar by tasks.registering(Jar::class) {
+    archiveClassifier.set("aot")
+    from(sourceSets["aot"].output)
+}
+
+// AppCDS архивирует классы только из jar-файлов, поэтому приложение запускается из plain jar, а не из каталогов
+val fastStartClasspath = files(tasks.jar, aotJar, configurations.runtimeClasspath)
+val cdsArchiveFile = layout.buildDirectory.file("cds/app.jsa")
+
+tasks.register<JavaExec>("cdsArchive") {
+    description = "Runs the app once with the fast-start profile and dumps an AppCDS archive on exit."
+    group = "build"
+    classpath = fastStartClasspath
+    mainClass.set("org.example.TelegramBotApplication")
+    jvmArgs("-XX:ArchiveClassesAtExit=${cdsArchiveFile.get().asFile}", "-Dspring.aot.enabled=true")
+    args("--spring.profiles.active=fast-start", "--spring.startup.exit-on-ready=true")
+    outputs.file(cdsArchiveFile)
+    doFirst { cdsArchiveFile.get().asFile.parentFile.mkdirs() }
+}
+
+tasks.register<JavaExec>("bootRunFastStart") {
+    description = "Runs the app with the fast-start profile, AOT classes and the AppCDS archive."
+    group = "application"
+    classpath = fastStartClasspath
+    mainClass.set("org.example.TelegramBotApplication")
+    jvmArgs("-XX:SharedArchiveFile=${cdsArchiveFile.get().asFile}", "-Xshare:auto", "-Dspring.aot.enabled=true")
+    args("--spring.profiles.active=fast-start")
+}
+
+// Время от запуска JVM до первого ответа бота, обычный запуск против fast-start:
+// ./gradlew startupBenchmark --args="--runs=5 --mode=both"
+tasks.register<JavaExec>("startupBenchmark") {
+    description = "Measures JVM start to first bot reply for the default and fast-start launches."
+    group = "verification"
+    dependsOn(tasks.jar, aotJar)
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("org.example.loadtest.StartupBenchmark")
+    val h2 = configurations[loadtest.runtimeClasspathConfigurationName].filter { it.name.startsWith("h2-") }
+    systemProperty("startup.fast-start-classpath", (fastStartClasspath + h2).asPath)
+    systemProperty("startup.cds-archive", cdsArchiveFile.get().asFile.path)
+    systemProperty("startup.aot", "true")
+}
+
+// Бенчмарки ядер рекомендаций: ./gradlew jmh, результаты в build/reports/jmh/results.json.
+// Эталонные замеры лежат в src/jmh/baseline/results.json, обновляются через ./gradlew jmhBaseline
+// при каждом изменении или добавлении бенчмарка, иначе сравнивать будет не с чем.
+// Три форка по десять итераций дают погрешность, на фоне которой видны изменения в несколько процентов.
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    warmupIterations.set(5)
+    iterations.set(10)
+    fork.set(3)
+}
+
+tasks.register<Copy>("jmhBaseline") {
+    dependsOn("jmh")
+    from(layout.buildDirectory.file("reports/jmh/results.json"))
+    into("src/jmh/baseline")
+}
@@ -0,0 +1,138 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HNSW-индекс против точного прохода на случайных нормированных векторах - худшем случае
+ * для ANN, без кластеров. Время запроса меряет JMH, полнота recall@K по сравнению с точным
+ * ответом печатается при подготовке каждого значения ef.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AnnRecallBenchmark {
+    private static final int DIMENSION = 32;
+    private static final int K = 20;
+    private static final int QUERIES = 200;
+
+    @Param({"20000"})
+    private int vectorCount;
+
+    @Param({"50", "100"})
+    private int ef;
+
+    private float[][] vectors;
+    private float[][] queries;
+    private HnswIndex index;
+    private Path dir;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(1);
+        vectors = new float[vectorCount][];
+        for (int i = 0; i < vectorCount; i++) {
+            vectors[i] = randomUnitVector(random);
+        }
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = randomUnitVector(random);
+        }
+
+        dir = Files.createTempDirectory("ann-benchmark");
+        index = new HnswIndex(DIMENSION, 16, 100, dir);
+        long start = System.nanoTime();
+        for (int i = 0; i < vectorCount; i++) {
+            index.add(i, vectors[i]);
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int hits = 0;
+        for (float[] query : queries) {
+            Set<Long> expected = new HashSet<>(exact(query));
+            for (HnswIndex.Neighbour neighbour : index.search(query, K, ef)) {
+                if (expected.contains(neighbour.key())) {
+                    hits++;
+                }
+            }
+        }
+        System.out.printf("%nef=%d: recall@%d = %.3f, построение %d векторов за %d мс%n",
+                ef, K, hits / (double) (QUERIES * K), vectorCount, buildMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Neighbour> ann() {
+        return index.search(queries[next++ % QUERIES], K, ef);
+    }
+
+    @Benchmark
+    public List<Long> exact() {
+        return exact(queries[next++ % QUERIES]);
+    }
+
+    private List<Long> exact(float[] query) {
+        long[] bestIds = new long[K];
+        float[] bestScores = new float[K];
+        int found = 0;
+        for (int i = 0; i < vectors.length; i++) {
+            float[] vector = vectors[i];
+            float score = 0;
+            for (int j = 0; j < DIMENSION; j++) {
+                score += query[j] * vector[j];
+            }
+            if (found == K && score <= bestScores[K - 1]) {
+                continue;
+            }
+            int insertAt = found < K ? found++ : K - 1;
+            while (insertAt > 0 && bestScores[insertAt - 1] < score) {
+                bestScores[insertAt] = bestScores[insertAt - 1];
+                bestIds[insertAt] = bestIds[insertAt - 1];
+                insertAt--;
+            }
+            bestScores[insertAt] = score;
+            bestIds[insertAt] = i;
+        }
+        return Arrays.stream(bestIds, 0, found).boxed().toList();
+    }
+
+    private static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        double squares = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            squares += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(squares));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перевод строки идентификаторов жанров в названия по закэшированному словарю.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GenreNamesBenchmark {
+    private TmdbService tmdbService;
+
+    @Setup
+    public void setup() {
+        tmdbService = SyntheticCatalog.tmdbService();
+    }
+
+    @Benchmark
+    public String getGenreNames() {
+        return tmdbService.getGenreNames("28_12_878", "ru");
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.service;
+
+import org.example.entity.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Итоговая оценка по индексу фильмов (MovieIndex.topK): пропускная способность в кандидатах
+ * в секунду на одно ядро. Вариант genresOnly - то же без сигналов качества, для сравнения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HybridScoringBenchmark {
+    private static final int CATALOG_SIZE = 1_000_000;
+    private static final int TOP_K = 20;
+    private static final MovieIndex.Weights HYBRID = new MovieIndex.Weights(1, 0.3f, 0.2f, 0.1f, 0);
+
+    @Param({"1000"})
+    private int ratingCount;
+
+    private MovieIndex index;
+    private Map<String, Double> userGenres;
+
+    @Setup
+    public void setup() {
+        List<Movie> movies = SyntheticCatalog.movies(CATALOG_SIZE, 1);
+        index = SyntheticCatalog.movieIndex(movies, 3);
+        userGenres = CommandProcessingService.aggregateGenres(SyntheticCatalog.ratings(movies, ratingCount, 2));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CATALOG_SIZE)
+    public List<MovieIndex.ScoredMovie> hybrid() {
+        return index.topK(userGenres, HYBRID, TOP_K, Set.of(), 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CATALOG_SIZE)
+    public List<MovieIndex.ScoredMovie> genresOnly() {
+        return index.topK(userGenres, MovieIndex.Weights.GENRES_ONLY, TOP_K, Set.of(), 0);
+    }
+}
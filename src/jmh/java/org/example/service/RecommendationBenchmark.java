@@ -0,0 +1,69 @@
+package org.example.service;
+
+import org.example.entity.Movie;
+import org.example.repository.RatedGenresView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный расчёт top-K рекомендаций по каталогу: агрегация оценок пользователя,
+ * вектор жанров и косинус для каждого фильма, отбор K лучших.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecommendationBenchmark {
+    private static final int TOP_K = 5;
+
+    @Param({"10000", "100000", "1000000"})
+    private int movieCount;
+
+    @Param({"10", "1000", "10000"})
+    private int ratingCount;
+
+    private CommandProcessingService service;
+    private List<Movie> movies;
+    private List<RatedGenresView> ratings;
+
+    @Setup
+    public void setup() {
+        service = SyntheticCatalog.commandProcessingService();
+        movies = SyntheticCatalog.movies(movieCount, 1);
+        ratings = SyntheticCatalog.ratings(movies, ratingCount, 2);
+    }
+
+    @Benchmark
+    public List<Movie> topK() {
+        Map<String, Double> userGenres = CommandProcessingService.aggregateGenres(ratings);
+        PriorityQueue<Map.Entry<Movie, Double>> best = new PriorityQueue<>(TOP_K + 1, Map.Entry.comparingByValue());
+
+        for (Movie movie : movies) {
+            double similarity = service.computeCosineSimilarity(userGenres, service.createGenreVector(movie.getGenreIds()));
+            if (best.size() < TOP_K || similarity > best.peek().getValue()) {
+                best.add(Map.entry(movie, similarity));
+                if (best.size() > TOP_K) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<Map.Entry<Movie, Double>> sorted = new ArrayList<>(best);
+        sorted.sort(Map.Entry.<Movie, Double>comparingByValue(Comparator.reverseOrder()));
+        return sorted.stream().map(Map.Entry::getKey).toList();
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.service;
+
+import org.example.entity.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ядра сходства на одном фильме: построение вектора жанров и косинус с вектором пользователя.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SimilarityBenchmark {
+    private CommandProcessingService service;
+    private String genreIds;
+    private Map<String, Double> userGenres;
+    private Map<String, Integer> movieVector;
+
+    @Setup
+    public void setup() {
+        service = SyntheticCatalog.commandProcessingService();
+        List<Movie> movies = SyntheticCatalog.movies(1_000, 1);
+        userGenres = CommandProcessingService.aggregateGenres(SyntheticCatalog.ratings(movies, 100, 2));
+        genreIds = "28_12_878";
+        movieVector = service.createGenreVector(genreIds);
+    }
+
+    @Benchmark
+    public Map<String, Integer> createGenreVector() {
+        return service.createGenreVector(genreIds);
+    }
+
+    @Benchmark
+    public double computeCosineSimilarity() {
+        return service.computeCosineSimilarity(userGenres, movieVector);
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.entity.Movie;
+import org.example.repository.MovieFeaturesView;
+import org.example.repository.RatedGenresView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Детерминированные синтетические данные для бенчмарков: фильмы с 1-3 жанрами TMDb
+ * и оценки пользователя от 1 до 10.
+ */
+final class SyntheticCatalog {
+    static final int[] GENRE_IDS = {28, 12, 16, 35, 80, 99, 18, 10751, 14, 36, 27, 10402, 9648, 10749, 878, 10770, 53, 10752, 37};
+
+    private SyntheticCatalog() {
+    }
+
+    static List<Movie> movies(int count, long seed) {
+        Random random = new Random(seed);
+        List<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Movie movie = new Movie();
+            movie.setId((long) i + 1);
+            movie.setMovieId((long) i + 1000);
+            movie.setTitle("Фильм " + i);
+            movie.setRating(random.nextInt(100) / 10.0);
+            movie.setGenreIds(genreIds(random));
+            movies.add(movie);
+        }
+        return movies;
+    }
+
+    static List<RatedGenresView> ratings(List<Movie> movies, int count, long seed) {
+        Random random = new Random(seed);
+        List<RatedGenresView> ratings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Movie movie = movies.get(random.nextInt(movies.size()));
+            ratings.add(new Rated(random.nextInt(10) + 1, movie.getId(), movie.getGenreIds()));
+        }
+        return ratings;
+    }
+
+    private record Rated(int rating, Long movieId, String genreIds) implements RatedGenresView {
+
+        @Override
+        public int getRating() {
+            return rating;
+        }
+
+        @Override
+        public Long getMovieId() {
+            return movieId;
+        }
+
+        @Override
+        public String getGenreIds() {
+            return genreIds;
+        }
+    }
+
+    /**
+     * Фильмы каталога в виде строк индекса, с числом голосов и годом релиза из отдельного
+     * генератора, чтобы жанры совпадали с {@link #movies(int, long)} при том же seed.
+     */
+    static MovieIndex movieIndex(List<Movie> movies, long seed) {
+        Random random = new Random(seed);
+        MovieIndex index = new MovieIndex(null, new MovieStatsService(null, null, null));
+        for (Movie movie : movies) {
+            index.add(new Features(movie.getId(), movie.getMovieId(), movie.getGenreIds(), movie.getRating(),
+                    random.nextInt(20_000), (1950 + random.nextInt(75)) + "-01-01"));
+        }
+        return index;
+    }
+
+    private record Features(Long id, Long movieId, String genreIds, Double rating, Integer voteCount,
+                            String releaseDate) implements MovieFeaturesView {
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getMovieId() {
+            return movieId;
+        }
+
+        @Override
+        public String getGenreIds() {
+            return genreIds;
+        }
+
+        @Override
+        public Double getRating() {
+            return rating;
+        }
+
+        @Override
+        public Integer getVoteCount() {
+            return voteCount;
+        }
+
+        @Override
+        public String getReleaseDate() {
+            return releaseDate;
+        }
+    }
+
+    static Map<Integer, String> genreNames() {
+        Map<Integer, String> names = new HashMap<>();
+        for (int genreId : GENRE_IDS) {
+            names.put(genreId, "Жанр " + genreId);
+        }
+        return names;
+    }
+
+    /**
+     * Сервис без репозиториев: ядра подсчёта сходства к ним не обращаются.
+     */
+    static CommandProcessingService commandProcessingService() {
+        return new CommandProcessingService(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    static TmdbService tmdbService() {
+        TmdbService tmdbService = new TmdbService(new BotMetrics(new SimpleMeterRegistry()));
+        tmdbService.cacheGenres("ru", genreNames());
+        return tmdbService;
+    }
+
+    private static String genreIds(Random random) {
+        int genres = 1 + random.nextInt(3);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < genres; i++) {
+            if (i > 0) {
+                builder.append('_');
+            }
+            builder.append(GENRE_IDS[random.nextInt(GENRE_IDS.length)]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.service;
+
+import org.example.entity.Movie;
+import org.example.repository.RatedGenresView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Агрегация оценок пользователя в веса жанров, как в getUserGenres, без обращения к базе.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserGenresBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int ratingCount;
+
+    private List<RatedGenresView> ratings;
+
+    @Setup
+    public void setup() {
+        List<Movie> movies = SyntheticCatalog.movies(10_000, 1);
+        ratings = SyntheticCatalog.ratings(movies, ratingCount, 2);
+    }
+
+    @Benchmark
+    public Map<String, Double> aggregateGenres() {
+        return CommandProcessingService.aggregateGenres(ratings);
+    }
+}
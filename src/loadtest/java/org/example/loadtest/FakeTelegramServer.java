@@ -0,0 +1,211 @@
+package org.example.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Поддельный Telegram Bot API: принимает любые методы по адресу /bot{token}/{method},
+ * считает вызовы и отвечает так, чтобы telegrambots смог разобрать результат.
+ * Обновления, добавленные через {@link #enqueueUpdate}, отдаются боту в ответ на getUpdates.
+ * Последняя inline-клавиатура каждого чата запоминается, чтобы синтетический пользователь
+ * мог нажать её кнопку (см. {@link #keyboard}).
+ * <p>
+ * Методы с файлами (sendPhoto, sendDocument) приходят multipart-формой; её текстовые поля разбираются
+ * так же, как JSON, а отправленное фото получает file_id, который бот может переиспользовать.
+ */
+class FakeTelegramServer implements AutoCloseable {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Set<String> BOOLEAN_METHODS = Set.of("answercallbackquery", "answerinlinequery", "deletemessage", "deletewebhook");
+    private static final long EMPTY_POLL_MILLIS = 50;
+    private static final Pattern FIELD_NAME = Pattern.compile("name=\"([^\"]+)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicLong fileIds = new AtomicLong();
+    private final Queue<Update> updates = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Long> firstReply = new CompletableFuture<>();
+    private final Map<Long, Keyboard> keyboards = new ConcurrentHashMap<>();
+
+    /**
+     * Сообщение бота с inline-клавиатурой и данные её кнопок.
+     */
+    record Keyboard(int messageId, List<String> callbackData) {
+    }
+
+    FakeTelegramServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String apiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/bot";
+    }
+
+    Map<String, LongAdder> calls() {
+        return calls;
+    }
+
+    Keyboard keyboard(long chatId) {
+        return keyboards.get(chatId);
+    }
+
+    void enqueueUpdate(Update update) {
+        updates.add(update);
+    }
+
+    /**
+     * Момент (System.nanoTime) первого sendMessage от бота.
+     */
+    CompletableFuture<Long> firstReply() {
+        return firstReply;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = path.substring(path.lastIndexOf('/') + 1);
+        calls.computeIfAbsent(method, key -> new LongAdder()).increment();
+        if (method.equalsIgnoreCase("sendmessage")) {
+            firstReply.complete(System.nanoTime());
+        }
+
+        long chatId = 0;
+        JsonNode request = null;
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("application/json")) {
+                request = objectMapper.readTree(body);
+            } else if (contentType != null && contentType.startsWith("multipart/form-data")) {
+                request = parseMultipart(body, boundary(contentType));
+            }
+            if (request != null) {
+                chatId = request.path("chat_id").asLong();
+            }
+        }
+
+        boolean sendPhoto = method.equalsIgnoreCase("sendphoto");
+        long messageId = method.equalsIgnoreCase("sendmessage") || sendPhoto || method.equalsIgnoreCase("senddocument")
+                ? messageIds.incrementAndGet()
+                : request != null ? request.path("message_id").asLong() : 0;
+        if (request != null && request.path("reply_markup").has("inline_keyboard")) {
+            List<String> callbackData = new ArrayList<>();
+            for (JsonNode row : request.path("reply_markup").path("inline_keyboard")) {
+                for (JsonNode button : row) {
+                    callbackData.add(button.path("callback_data").asText());
+                }
+            }
+            keyboards.put(chatId, new Keyboard((int) messageId, callbackData));
+        }
+
+        Object result = method.equalsIgnoreCase("getupdates") ? pollUpdates()
+                : BOOLEAN_METHODS.contains(method.toLowerCase()) ? Boolean.TRUE
+                : sendPhoto ? Map.of("message_id", messageId,
+                        "date", System.currentTimeMillis() / 1000,
+                        "chat", Map.of("id", chatId, "type", "private"),
+                        "photo", List.of(photoSize(request)))
+                : Map.of("message_id", messageId,
+                        "date", System.currentTimeMillis() / 1000,
+                        "chat", Map.of("id", chatId, "type", "private"));
+
+        byte[] bytes = objectMapper.writeValueAsBytes(Map.of("ok", true, "result", result));
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Текстовые поля multipart-формы; значения-JSON (reply_markup) разбираются в объекты.
+     * Части с файлами пропускаются, вместо них остаётся поле со значением "file".
+     */
+    private static ObjectNode parseMultipart(byte[] body, String boundary) throws IOException {
+        ObjectNode fields = objectMapper.createObjectNode();
+        // ISO-8859-1 сохраняет байты один к одному, текст полей потом декодируется как UTF-8
+        String content = new String(body, StandardCharsets.ISO_8859_1);
+        for (String part : content.split("--" + Pattern.quote(boundary))) {
+            int headersEnd = part.indexOf("\r\n\r\n");
+            Matcher name = FIELD_NAME.matcher(part);
+            if (headersEnd < 0 || !name.find() || name.start() > headersEnd) {
+                continue;
+            }
+            String headers = part.substring(0, headersEnd);
+            if (headers.contains("filename=")) {
+                fields.put(name.group(1), "file");
+                continue;
+            }
+            String value = part.substring(headersEnd + 4);
+            if (value.endsWith("\r\n")) {
+                value = value.substring(0, value.length() - 2);
+            }
+            value = new String(value.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+            fields.set(name.group(1), value.startsWith("{") ? objectMapper.readTree(value) : new TextNode(value));
+        }
+        return fields;
+    }
+
+    // multipart/form-data; boundary=...; charset=UTF-8
+    private static String boundary(String contentType) {
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        int end = boundary.indexOf(';');
+        return (end < 0 ? boundary : boundary.substring(0, end)).replace("\"", "").trim();
+    }
+
+    // Загруженное фото получает новый file_id, отправленное по file_id - тот же
+    private Map<String, Object> photoSize(JsonNode request) {
+        String photo = request != null ? request.path("photo").asText("file") : "file";
+        String fileId = photo.equals("file") ? "poster-" + fileIds.incrementAndGet() : photo;
+        return Map.of("file_id", fileId, "file_unique_id", fileId, "width", 342, "height", 513);
+    }
+
+    // Настоящий long polling держит запрос открытым; короткая пауза не даёт сессии крутиться вхолостую
+    private List<Update> pollUpdates() {
+        List<Update> batch = new ArrayList<>();
+        for (Update update = updates.poll(); update != null; update = updates.poll()) {
+            batch.add(update);
+        }
+        if (batch.isEmpty()) {
+            try {
+                Thread.sleep(EMPTY_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Собирает задержки обработки обновлений по шагам сценариев и считает перцентили.
+ */
+class LatencyRecorder {
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void record(String label, long nanos) {
+        samples.computeIfAbsent(label, key -> new Samples()).add(nanos);
+    }
+
+    void error(Exception e) {
+        errors.computeIfAbsent(e.getClass().getSimpleName() + ": " + e.getMessage(), key -> new LongAdder()).increment();
+    }
+
+    long errors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    long total() {
+        return samples.values().stream().mapToLong(Samples::size).sum();
+    }
+
+    String report() {
+        StringBuilder builder = new StringBuilder(String.format("%-18s %8s %10s %10s %10s %10s%n",
+                "step", "count", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, Samples> entry : new TreeMap<>(samples).entrySet()) {
+            long[] sorted = entry.getValue().sorted();
+            builder.append(String.format("%-18s %8d %10.1f %10.1f %10.1f %10.1f%n",
+                    entry.getKey(), sorted.length,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6));
+        }
+        errors.forEach((error, count) -> builder.append(String.format("ошибка x%d: %s%n", count.sum(), error)));
+        return builder.toString();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
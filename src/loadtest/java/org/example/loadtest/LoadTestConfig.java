@@ -0,0 +1,41 @@
+package org.example.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Параметры прогона. Передаются аргументами вида --rate=100 --duration=60
+ * --users=200 --threads=8 --mix=search:30,rate:40,recommend:20,history:10
+ * <p>
+ * Сценарий inline (посимвольный набор названия в inline-режиме) в смесь по умолчанию не входит:
+ * --mix=search:30,rate:40,recommend:20,history:10,inline:20
+ * <p>
+ * --tmdb-outage=N - TMDb не отвечает первые N секунд прогона (проверка запасного пути на каталоге)
+ */
+record LoadTestConfig(int rate, int durationSeconds, int users, int threads, Map<String, Integer> mix,
+                      int tmdbOutageSeconds) {
+
+    static LoadTestConfig parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : options.getOrDefault("mix", "search:30,rate:40,recommend:20,history:10").split(",")) {
+            String[] parts = entry.split(":");
+            mix.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+
+        return new LoadTestConfig(
+                Integer.parseInt(options.getOrDefault("rate", "50")),
+                Integer.parseInt(options.getOrDefault("duration", "60")),
+                Integer.parseInt(options.getOrDefault("users", "200")),
+                Integer.parseInt(options.getOrDefault("threads", "8")),
+                mix,
+                Integer.parseInt(options.getOrDefault("tmdb-outage", "0"))
+        );
+    }
+}
@@ -0,0 +1,171 @@
+package org.example.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.TelegramBotApplication;
+import org.example.service.CommandProcessingService;
+import org.example.service.TelegramBotService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочный стенд: поднимает бота со встроенной H2, заглушкой TMDb и поддельным
+ * Telegram Bot API, подаёт синтетический поток обновлений с заданной частотой
+ * через настоящий TelegramBotService.onUpdateReceived и печатает отчёт.
+ * <p>
+ * Запуск: {@code ./gradlew loadTest --args="--rate=100 --duration=60 --users=200"}
+ */
+public final class LoadTestRunner {
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+
+        try (StubTmdbServer tmdb = new StubTmdbServer();
+             FakeTelegramServer telegram = new FakeTelegramServer();
+             ConfigurableApplicationContext context = startApplication(tmdb, telegram)) {
+
+            System.out.println("Наполнение каталога из заглушки TMDb...");
+            context.getBean(CommandProcessingService.class).cachePopularMovies();
+
+            TelegramBotService bot = context.getBean(TelegramBotService.class);
+            Counter queries = context.getBean(MeterRegistry.class).counter("bot.jpa.queries");
+            Map<String, Long> tmdbBefore = snapshot(tmdb.calls());
+            Map<String, Long> telegramBefore = snapshot(telegram.calls());
+            double queriesBefore = queries.count();
+
+            LatencyRecorder recorder = new LatencyRecorder();
+            if (config.tmdbOutageSeconds() > 0) {
+                tmdb.outage(config.tmdbOutageSeconds());
+            }
+            long elapsed = run(config, bot, telegram, recorder);
+
+            long completed = recorder.total();
+            System.out.printf("%nПрогон: %d обновлений/с в течение %d с, %d пользователей, %d потоков%n",
+                    config.rate(), config.durationSeconds(), config.users(), config.threads());
+            System.out.printf("Обработано обновлений: %d, ошибок: %d, пропускная способность: %.1f обновлений/с%n%n",
+                    completed, recorder.errors(), completed / (elapsed / 1e9));
+            System.out.println(recorder.report());
+            System.out.printf("SQL-запросов: %.0f (%.1f на обновление)%n",
+                    queries.count() - queriesBefore, (queries.count() - queriesBefore) / Math.max(1, completed));
+            System.out.println("Вызовы TMDb: " + delta(tmdb.calls(), tmdbBefore));
+            System.out.println("Вызовы Telegram Bot API: " + delta(telegram.calls(), telegramBefore));
+            System.out.println("Отклонено допуском запросов: " + rejected(context.getBean(MeterRegistry.class)));
+            System.out.println("Ответы из каталога без TMDb: " + fallbacks(context.getBean(MeterRegistry.class)));
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(StubTmdbServer tmdb, FakeTelegramServer telegram) {
+        return SpringApplication.run(TelegramBotApplication.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.tmdb.api.url=" + tmdb.baseUrl(),
+                "--spring.tmdb.api.key=loadtest",
+                "--spring.posters.image-url=" + tmdb.imageUrl(),
+                "--spring.posters.dir=" + posterDir(),
+                "--spring.telegram.bot.username=loadtest_bot",
+                "--spring.telegram.bot.token=loadtest",
+                "--spring.telegram.bot.api-url=" + telegram.apiUrl(),
+                "--spring.telegram.bot.polling-enabled=false",
+                "--spring.snapshot.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.example=ERROR");
+    }
+
+    /**
+     * Открытая модель нагрузки: обновления подаются с постоянной частотой независимо от того,
+     * успевает ли бот. Обновления одного чата выполняются последовательно в своём потоке.
+     */
+    private static long run(LoadTestConfig config, TelegramBotService bot, FakeTelegramServer telegram,
+                            LatencyRecorder recorder) throws InterruptedException {
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = 0; i < config.users(); i++) {
+            users.add(new VirtualUser(1_000_000L + i, telegram, config.mix(), i));
+        }
+
+        ExecutorService[] stripes = new ExecutorService[config.threads()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = Executors.newSingleThreadExecutor();
+        }
+
+        Random random = new Random(42);
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        ticker.scheduleAtFixedRate(() -> {
+            VirtualUser user = users.get(random.nextInt(users.size()));
+            VirtualUser.Step step = user.next();
+            stripes[(int) (user.chatId() % stripes.length)].execute(() -> {
+                long began = System.nanoTime();
+                try {
+                    bot.onUpdateReceived(step.update());
+                } catch (Exception e) {
+                    recorder.error(e);
+                } finally {
+                    recorder.record(step.label(), System.nanoTime() - began);
+                }
+            });
+        }, 0, 1_000_000_000L / config.rate(), TimeUnit.NANOSECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.durationSeconds()));
+        ticker.shutdownNow();
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ExecutorService stripe : stripes) {
+            stripe.awaitTermination(10, TimeUnit.MINUTES);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String posterDir() {
+        try {
+            return Files.createTempDirectory("loadtest-posters").toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Long> fallbacks(MeterRegistry registry) {
+        Map<String, Long> result = new TreeMap<>();
+        registry.find("bot.tmdb.fallbacks").counters().forEach(counter ->
+                result.put(counter.getId().getTag("command"), (long) counter.count()));
+        return result;
+    }
+
+    private static Map<String, Long> rejected(MeterRegistry registry) {
+        Map<String, Long> result = new TreeMap<>();
+        registry.find("bot.admission.rejected").counters().forEach(counter -> result.merge(
+                counter.getId().getTag("command") + "/" + counter.getId().getTag("reason"), (long) counter.count(), Long::sum));
+        return result;
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> calls) {
+        Map<String, Long> result = new TreeMap<>();
+        calls.forEach((key, value) -> result.put(key, value.sum()));
+        return result;
+    }
+
+    private static Map<String, Long> delta(Map<String, LongAdder> calls, Map<String, Long> before) {
+        Map<String, Long> result = snapshot(calls);
+        result.replaceAll((key, value) -> value - before.getOrDefault(key, 0L));
+        return result;
+    }
+}
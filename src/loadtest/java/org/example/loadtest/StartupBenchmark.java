@@ -0,0 +1,147 @@
+package org.example.loadtest;
+
+import org.example.TelegramBotApplication;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер времени от запуска JVM до первого ответа бота. Бот запускается отдельным процессом
+ * с H2, заглушкой TMDb и поддельным Telegram Bot API, в очереди getUpdates его уже ждёт
+ * сообщение пользователя; время считается до первого sendMessage.
+ * <p>
+ * Режимы: default - обычный запуск, fast-start - профиль fast-start с AOT и архивом AppCDS,
+ * если они собраны (пути передаёт задача startupBenchmark). Запуск:
+ * {@code ./gradlew startupBenchmark --args="--runs=5 --mode=both"}
+ */
+public final class StartupBenchmark {
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+        String mode = options.getOrDefault("mode", "both");
+
+        if (!mode.equals("fast-start")) {
+            report("default", measure(runs, System.getProperty("java.class.path"), List.of(), List.of()));
+        }
+        if (!mode.equals("default")) {
+            report("fast-start", measureFastStart(runs));
+        }
+    }
+
+    private static List<Double> measureFastStart(int runs) throws Exception {
+        String classpath = System.getProperty("startup.fast-start-classpath", System.getProperty("java.class.path"));
+        List<String> jvmArgs = new ArrayList<>();
+        if (Boolean.getBoolean("startup.aot")) {
+            jvmArgs.add("-Dspring.aot.enabled=true");
+        } else {
+            System.out.println("Классы AOT не собраны, замер без AOT (соберите: ./gradlew processAot)");
+        }
+        String archive = System.getProperty("startup.cds-archive");
+        if (archive != null && Files.isRegularFile(Path.of(archive))) {
+            jvmArgs.add("-XX:SharedArchiveFile=" + archive);
+            jvmArgs.add("-Xshare:auto");
+        } else {
+            System.out.println("Архив AppCDS не найден, замер без него (соберите: ./gradlew cdsArchive)");
+        }
+        return measure(runs, classpath, jvmArgs, List.of("--spring.profiles.active=fast-start"));
+    }
+
+    private static List<Double> measure(int runs, String classpath, List<String> jvmArgs, List<String> appArgs) throws Exception {
+        List<Double> millis = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            millis.add(firstReplyMillis(classpath, jvmArgs, appArgs));
+        }
+        return millis;
+    }
+
+    private static double firstReplyMillis(String classpath, List<String> jvmArgs, List<String> appArgs) throws Exception {
+        try (StubTmdbServer tmdb = new StubTmdbServer();
+             FakeTelegramServer telegram = new FakeTelegramServer()) {
+            telegram.enqueueUpdate(startMessage());
+
+            List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-cp", classpath, TelegramBotApplication.class.getName()));
+            command.addAll(List.of(
+                    "--server.port=0",
+                    "--spring.datasource.url=jdbc:h2:mem:startup;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                    "--spring.datasource.username=sa",
+                    "--spring.datasource.password=",
+                    "--spring.tmdb.api.url=" + tmdb.baseUrl(),
+                    "--spring.tmdb.api.key=startup",
+                    "--spring.telegram.bot.username=startup_bot",
+                    "--spring.telegram.bot.token=startup",
+                    "--spring.telegram.bot.api-url=" + telegram.apiUrl(),
+                    "--spring.snapshot.enabled=false",
+                    "--spring.posters.enabled=false",
+                    "--logging.level.root=WARN"));
+            command.addAll(appArgs);
+
+            File log = File.createTempFile("startup-benchmark", ".log");
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log)
+                    .start();
+            try {
+                long reply = telegram.firstReply().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                log.delete();
+                return (reply - start) / 1e6;
+            } catch (Exception e) {
+                throw new IOException("Бот не ответил за " + TIMEOUT_SECONDS + " с, вывод процесса: " + log, e);
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    private static Update startMessage() {
+        User from = new User(1L, "Замер запуска", false);
+        from.setLanguageCode("ru");
+
+        Message message = new Message();
+        message.setMessageId(1);
+        message.setChat(new Chat(1L, "private"));
+        message.setFrom(from);
+        message.setText("/start");
+        message.setDate((int) (System.currentTimeMillis() / 1000));
+
+        Update update = new Update();
+        update.setUpdateId(1);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static void report(String mode, List<Double> millis) {
+        double[] sorted = millis.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        System.out.printf("%-12s запусков: %d, до первого ответа: min %.0f мс, медиана %.0f мс, max %.0f мс %s%n",
+                mode, sorted.length, sorted[0], sorted[sorted.length / 2], sorted[sorted.length - 1], Arrays.toString(
+                        millis.stream().mapToLong(Math::round).toArray()));
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Заглушка TMDb API, отдающая фикстуры из resources/fixtures/tmdb.
+ * Для постраничных списков идентификаторы фильмов сдвигаются на номер страницы,
+ * чтобы обход 30 страниц давал разные фильмы.
+ * <p>
+ * Во время {@link #outage} каждый запрос отвечает 503 после задержки дольше таймаутов бота,
+ * как зависший TMDb.
+ */
+class StubTmdbServer implements AutoCloseable {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long OUTAGE_DELAY_MILLIS = 5000;
+    private static final int[] GENRES = {28, 12, 16, 35, 80, 18, 14, 27, 878, 53};
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+    private final Map<String, Map<String, Object>> fixtures = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private volatile long outageUntil; // System.nanoTime
+
+    StubTmdbServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/3/movie/popular", exchange -> servePage(exchange, "popular"));
+        server.createContext("/3/movie/top_rated", exchange -> servePage(exchange, "top_rated"));
+        server.createContext("/3/movie/now_playing", exchange -> servePage(exchange, "now_playing"));
+        server.createContext("/3/search/movie", exchange -> serve(exchange, "search", fixture("search")));
+        server.createContext("/3/genre/movie/list", exchange -> serve(exchange, "genres", fixture("genres")));
+        server.createContext("/3/movie/", this::serveDetails);
+        server.createContext("/t/p/", this::servePoster);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/3";
+    }
+
+    void outage(long seconds) {
+        outageUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /**
+     * Адрес сервера изображений, как https://image.tmdb.org/t/p.
+     */
+    String imageUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/t/p";
+    }
+
+    Map<String, LongAdder> calls() {
+        return calls;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void servePage(HttpExchange exchange, String name) throws IOException {
+        int page = Integer.parseInt(queryParam(exchange, "page", "1"));
+        Map<String, Object> body = copy(fixture(name));
+        body.put("page", page);
+        for (Map<String, Object> movie : (List<Map<String, Object>>) body.get("results")) {
+            movie.put("id", ((Number) movie.get("id")).longValue() + (page - 1) * 10_000L);
+        }
+        serve(exchange, name, body);
+    }
+
+    /**
+     * Подробности фильма /3/movie/{id}: название и описание с пометкой языка запроса, жанр по id.
+     */
+    private void serveDetails(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        long id = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+        String language = queryParam(exchange, "language", "ru");
+        serve(exchange, "details", Map.of(
+                "id", id,
+                "title", "Movie " + id + " [" + language + "]",
+                "overview", "Overview of movie " + id + " [" + language + "]",
+                "release_date", "2020-01-01",
+                "vote_average", 5 + id % 5,
+                "vote_count", id % 5000,
+                "popularity", id % 100,
+                "genres", List.of(Map.of("id", GENRES[(int) (id % GENRES.length)], "name", "Genre"))));
+    }
+
+    // Постер - несколько байт вместо картинки: бот их только сохраняет и пересылает
+    private void servePoster(HttpExchange exchange) throws IOException {
+        calls.computeIfAbsent("poster", key -> new LongAdder()).increment();
+        byte[] bytes = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void serve(HttpExchange exchange, String endpoint, Map<String, Object> body) throws IOException {
+        calls.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+        if (System.nanoTime() < outageUntil) {
+            try {
+                Thread.sleep(OUTAGE_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Map<String, Object> fixture(String name) {
+        return fixtures.computeIfAbsent(name, key -> {
+            try (InputStream in = StubTmdbServer.class.getResourceAsStream("/fixtures/tmdb/" + key + ".json")) {
+                return objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось прочитать фикстуру " + key, e);
+            }
+        });
+    }
+
+    private static Map<String, Object> copy(Map<String, Object> source) {
+        return objectMapper.convertValue(source, new TypeReference<Map<String, Object>>() {});
+    }
+
+    private static String queryParam(HttpExchange exchange, String name, String defaultValue) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0 && pair.substring(0, separator).equals(name)) {
+                return URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return defaultValue;
+    }
+}
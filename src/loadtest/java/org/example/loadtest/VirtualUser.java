@@ -0,0 +1,179 @@
+package org.example.loadtest;
+
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Синтетический пользователь, проходящий сценарии так же, как человек в чате:
+ * поиск, оценка фильма, рекомендации и просмотр истории оценок.
+ * Используется только из потока, генерирующего нагрузку.
+ */
+class VirtualUser {
+    private static final List<String> QUERIES = List.of("берег", "город", "шторм", "остров", "маяк", "поезд");
+
+    /**
+     * Шаг сценария. Обновление собирается в момент выполнения, после предыдущих шагов этого
+     * чата: нажатию кнопки нужны данные клавиатуры, которую бот только что прислал.
+     */
+    record Step(String label, Supplier<Update> factory) {
+        Update update() {
+            return factory.get();
+        }
+    }
+
+    private final long chatId;
+    private final FakeTelegramServer telegram;
+    private final Map<String, Integer> mix;
+    private final int mixTotal;
+    private final Random random;
+    private final Deque<Step> pending = new ArrayDeque<>();
+    private int updateIds;
+
+    VirtualUser(long chatId, FakeTelegramServer telegram, Map<String, Integer> mix, long seed) {
+        this.chatId = chatId;
+        this.telegram = telegram;
+        this.mix = mix;
+        this.mixTotal = mix.values().stream().mapToInt(Integer::intValue).sum();
+        this.random = new Random(seed);
+    }
+
+    long chatId() {
+        return chatId;
+    }
+
+    Step next() {
+        if (pending.isEmpty()) {
+            startScenario(pickScenario());
+        }
+        return pending.poll();
+    }
+
+    private String pickScenario() {
+        int roll = random.nextInt(mixTotal);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Пустой набор сценариев");
+    }
+
+    private void startScenario(String scenario) {
+        switch (scenario) {
+            case "search" -> {
+                step("search", "🔍 Поиск");
+                step("search_query", QUERIES.get(random.nextInt(QUERIES.size())));
+            }
+            case "rate" -> {
+                if (random.nextBoolean()) {
+                    step("popular", "🎬 Популярные фильмы");
+                } else {
+                    step("random", "🌀 Случайный фильм");
+                }
+                if (random.nextInt(4) == 0) {
+                    callbackStep("similar", "similar:", "");
+                }
+                callbackStep("rating_value", "rate:", ":" + (1 + random.nextInt(10)));
+            }
+            case "recommend" -> {
+                if (random.nextBoolean()) {
+                    step("recommendations", "❤️ Рекомендации");
+                } else {
+                    step("best_match", "🏆 Лучшее совпадение");
+                }
+            }
+            case "history" -> {
+                if (random.nextBoolean()) {
+                    step("my_ratings", "📜 Мои оценки");
+                } else {
+                    step("export", "📤 Экспорт оценок");
+                    if (random.nextInt(4) == 0) {
+                        callbackStep("export_json", "export:", "");
+                    }
+                }
+            }
+            case "inline" -> {
+                // Inline-запрос приходит на каждое нажатие клавиши: набираем название по букве
+                String query = QUERIES.get(random.nextInt(QUERIES.size()));
+                for (int length = 1; length <= query.length(); length++) {
+                    inlineStep(query.substring(0, length));
+                }
+            }
+            default -> throw new IllegalArgumentException("Неизвестный сценарий: " + scenario);
+        }
+    }
+
+    /**
+     * Нажатие кнопки под последним сообщением бота с данными "{prefix}...{suffix}".
+     */
+    private void callbackStep(String label, String prefix, String suffix) {
+        int updateId = ++updateIds;
+        pending.add(new Step(label, () -> {
+            FakeTelegramServer.Keyboard keyboard = telegram.keyboard(chatId);
+            String data = keyboard == null ? prefix + "0" + suffix : keyboard.callbackData().stream()
+                    .filter(candidate -> candidate.startsWith(prefix) && candidate.endsWith(suffix))
+                    .findFirst()
+                    .orElse(prefix + "0" + suffix);
+
+            Message message = new Message();
+            message.setMessageId(keyboard != null ? keyboard.messageId() : 0);
+            message.setChat(new Chat(chatId, "private"));
+
+            CallbackQuery callback = new CallbackQuery();
+            callback.setId(chatId + "-" + updateId);
+            callback.setFrom(new User(chatId, "Нагрузка " + chatId, false));
+            callback.setMessage(message);
+            callback.setData(data);
+
+            Update update = new Update();
+            update.setUpdateId(updateId);
+            update.setCallbackQuery(callback);
+            return update;
+        }));
+    }
+
+    private void inlineStep(String text) {
+        User from = new User(chatId, "Нагрузка " + chatId, false);
+        from.setLanguageCode(chatId % 4 == 0 ? "en" : "ru");
+
+        InlineQuery query = new InlineQuery();
+        query.setId(chatId + "-" + (++updateIds));
+        query.setFrom(from);
+        query.setQuery(text);
+        query.setOffset("");
+
+        Update update = new Update();
+        update.setUpdateId(updateIds);
+        update.setInlineQuery(query);
+        pending.add(new Step("inline", () -> update));
+    }
+
+    private void step(String label, String text) {
+        User from = new User(chatId, "Нагрузка " + chatId, false);
+        from.setLanguageCode(chatId % 4 == 0 ? "en" : "ru"); // Каждый четвёртый видит переведённый каталог
+
+        Message message = new Message();
+        message.setMessageId(++updateIds);
+        message.setChat(new Chat(chatId, "private"));
+        message.setFrom(from);
+        message.setText(text);
+        message.setDate((int) (System.currentTimeMillis() / 1000));
+
+        Update update = new Update();
+        update.setUpdateId(updateIds);
+        update.setMessage(message);
+        pending.add(new Step(label, () -> update));
+    }
+}
@@ -1,28 +1,28 @@
 package org.example;
 
-import org.example.service.TelegramBotService;
+import org.example.service.BotSessionManager;
+import org.example.service.ClusterService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
-import org.telegram.telegrambots.meta.TelegramBotsApi;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@PropertySource("classpath:bot-defaults.properties")
 public class TelegramBotApplication {
     public static void main(String[] args) {
         SpringApplication.run(TelegramBotApplication.class, args);
     }
 
     @Bean
-    CommandLineRunner registerBot(TelegramBotService telegramBotService) {
+    CommandLineRunner registerBot(ClusterService clusterService, BotSessionManager botSessionManager) {
         return args -> {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            try {
-                botsApi.registerBot(telegramBotService);
-            } catch (TelegramApiException e) {
-                e.printStackTrace();
+            // Остальные узлы откроют сессию, когда получат аренду лидера
+            if (clusterService.isLeader()) {
+                botSessionManager.start();
             }
         };
     }
@@ -0,0 +1,47 @@
+package org.example.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Служебные адреса /internal/** (пересылка обновлений между узлами, импорт каталога) слушают
+ * тот же порт, что и остальное приложение, поэтому принимаются только с заголовком
+ * {@value #SECRET_HEADER}, равным spring.internal.secret. Пока секрет не задан, они закрыты.
+ */
+@Slf4j
+@Configuration
+public class InternalApiConfig implements WebMvcConfigurer {
+    public static final String SECRET_HEADER = "X-Internal-Secret";
+
+    @Value("${spring.internal.secret}")
+    private String secret;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        byte[] expected = secret.getBytes(StandardCharsets.UTF_8);
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                String provided = request.getHeader(SECRET_HEADER);
+                // Сравнение за постоянное время, чтобы секрет нельзя было подобрать по задержке ответа
+                if (expected.length > 0 && provided != null
+                        && MessageDigest.isEqual(expected, provided.getBytes(StandardCharsets.UTF_8))) {
+                    return true;
+                }
+                log.warn("Отклонён запрос к {} с адреса {}: неверный {}", request.getRequestURI(), request.getRemoteAddr(), SECRET_HEADER);
+                response.setStatus(HttpStatus.FORBIDDEN.value());
+                return false;
+            }
+        }).addPathPatterns("/internal/**");
+    }
+}
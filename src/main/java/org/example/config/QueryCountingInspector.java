@@ -0,0 +1,33 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.Counter;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Считает SQL-запросы Hibernate: общий счётчик для Prometheus и счётчик
+ * текущего потока, по которому TelegramBotService считает запросы на обновление.
+ */
+public class QueryCountingInspector implements StatementInspector {
+    private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Counter total;
+
+    public QueryCountingInspector(Counter total) {
+        this.total = total;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        CURRENT.get()[0]++;
+        total.increment();
+        return sql;
+    }
+
+    public static void reset() {
+        CURRENT.get()[0] = 0;
+    }
+
+    public static long current() {
+        return CURRENT.get()[0];
+    }
+}
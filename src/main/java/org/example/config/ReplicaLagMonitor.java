@@ -0,0 +1,78 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Периодически читает отставание реплики из SHOW REPLICA STATUS. Реплика считается пригодной для чтения,
+ * пока отставание не больше max-lag и последняя проверка прошла успешно.
+ * Пустой ответ (реплика указывает на основную базу, например в разработке) означает нулевое отставание.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+    private final JdbcTemplate jdbcTemplate;
+    private final String lagQuery;
+    private final Duration maxLag;
+
+    private volatile boolean usable;
+    private volatile double lagSeconds = Double.NaN;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration maxLag, MeterRegistry registry) {
+        this.jdbcTemplate = new JdbcTemplate(replica);
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+        Gauge.builder("bot.db.replica.lag", this, monitor -> monitor.lagSeconds)
+                .description("Отставание реплики в секундах, NaN - реплика недоступна или репликация остановлена")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    public boolean isReplicaUsable() {
+        return usable;
+    }
+
+    @Scheduled(fixedDelayString = "${spring.datasource.replica.lag-check-interval}")
+    public void check() {
+        double lag;
+        try {
+            Double measured = jdbcTemplate.query(lagQuery, ReplicaLagMonitor::readLag);
+            lag = measured == null ? Double.NaN : measured;
+        } catch (Exception e) {
+            log.warn("Не удалось проверить отставание реплики: {}", e.getMessage());
+            lag = Double.NaN;
+        }
+
+        boolean nowUsable = !Double.isNaN(lag) && lag <= maxLag.toSeconds();
+        if (nowUsable != usable) {
+            log.info(nowUsable ? "Чтения переключены на реплику (отставание {} с)"
+                    : "Реплика отстаёт или недоступна (отставание {} с), чтения идут на основную базу", lag);
+        }
+        lagSeconds = lag;
+        usable = nowUsable;
+    }
+
+    // Seconds_Behind_Source в MySQL 8.0.22+, Seconds_Behind_Master в более ранних версиях
+    private static Double readLag(ResultSet resultSet) throws SQLException {
+        if (!resultSet.next()) {
+            return 0.0;
+        }
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String column = metaData.getColumnLabel(i);
+            if (column.equalsIgnoreCase("Seconds_Behind_Source") || column.equalsIgnoreCase("Seconds_Behind_Master")) {
+                long seconds = resultSet.getLong(i);
+                return resultSet.wasNull() ? null : (double) seconds;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Отправляет транзакции {@code @Transactional(readOnly = true)} на реплику, остальное - на основную базу.
+ * Пока реплика отстаёт или недоступна (см. {@link ReplicaLagMonitor}), чтения тоже идут на основную базу.
+ * <p>
+ * Решение принимается при получении соединения, поэтому источник нужно оборачивать в
+ * LazyConnectionDataSourceProxy: иначе соединение берётся раньше, чем транзакция помечается read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final Counter replicaReads;
+    private final Counter fallbackReads;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor, MeterRegistry registry) {
+        this.lagMonitor = lagMonitor;
+        this.replicaReads = registry.counter("bot.db.reads", "target", REPLICA);
+        this.fallbackReads = registry.counter("bot.db.reads", "target", PRIMARY);
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        if (lagMonitor.isReplicaUsable()) {
+            replicaReads.increment();
+            return REPLICA;
+        }
+        fallbackReads.increment();
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Профиль быстрого запуска fast-start (application-fast-start.properties): ленивая инициализация бинов,
+ * отложенный прогрев индекса фильмов, AOT и архив AppCDS (задачи cdsArchive и bootRunFastStart).
+ */
+@Configuration
+public class StartupConfig {
+
+    /**
+     * При ленивой инициализации бины с @Scheduled остаются eager: расписание регистрируется
+     * только при создании бина, и ленивый бин с фоновой задачей так бы её и не запустил.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter scheduledBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && !MethodIntrospector.selectMethods(beanType,
+                (MethodIntrospector.MetadataLookup<Scheduled>) method ->
+                        AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class)).isEmpty();
+    }
+
+    /**
+     * Тренировочный прогон для архива AppCDS: приложение завершается сразу после запуска,
+     * и JVM записывает загруженные классы в архив (-XX:ArchiveClassesAtExit).
+     * Свойство читается при запуске, а не условием на бине, потому что AOT фиксирует условия при сборке.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void exitOnReady(ApplicationReadyEvent event) {
+        if (event.getApplicationContext().getEnvironment().getProperty("spring.startup.exit-on-ready", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
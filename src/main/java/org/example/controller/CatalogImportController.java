@@ -0,0 +1,38 @@
+package org.example.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.entity.CatalogImport;
+import org.example.service.CatalogImportService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Запуск и статус импорта каталога из выгрузки TMDb. Файл указывается по имени внутри
+ * spring.import.dir, запрос - с секретом служебных адресов (InternalApiConfig), например:
+ * {@code curl -X POST -H 'X-Internal-Secret: ...' 'localhost:8080/internal/import/tmdb?file=movie_ids_05_15_2024.json.gz'}
+ */
+@RestController
+@RequiredArgsConstructor
+public class CatalogImportController {
+    private final CatalogImportService catalogImportService;
+
+    @PostMapping("/internal/import/tmdb")
+    public ResponseEntity<CatalogImport> start(@RequestParam("file") String file) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(catalogImportService.start(file));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException e) { // В том числе InvalidPathException
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/internal/import/tmdb")
+    public ResponseEntity<CatalogImport> status() {
+        return ResponseEntity.of(catalogImportService.status());
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.controller;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.service.TelegramBotService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Принимает обновления, пересланные лидером узлу-владельцу чата.
+ * Обработка идёт асинхронно, чтобы поток polling на лидере не ждал чужие узлы;
+ * обновления одного чата попадают в один и тот же поток и сохраняют порядок.
+ * Очередь каждого потока ограничена forward-queue обновлениями: переполненный узел отвечает 503,
+ * и лидер обрабатывает обновление сам. Доступ - только с секретом узлов (см. InternalApiConfig).
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class ClusterController {
+    private static final int STRIPES = 8;
+
+    private final TelegramBotService telegramBotService;
+
+    @Value("${spring.cluster.forward-queue}")
+    private int queueCapacity;
+
+    private ExecutorService[] stripes;
+
+    @PostConstruct
+    public void init() {
+        stripes = new ExecutorService[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity));
+        }
+    }
+
+    @PostMapping("/internal/cluster/updates")
+    public ResponseEntity<Void> receiveUpdate(@RequestBody Update update) {
+        Long chatId = TelegramBotService.resolveChatId(update);
+        int stripe = chatId != null ? Math.floorMod(chatId.hashCode(), STRIPES) : 0;
+        try {
+            stripes[stripe].execute(() -> telegramBotService.handleUpdate(update));
+        } catch (RejectedExecutionException e) {
+            log.warn("Очередь пересланных обновлений {} переполнена, обновление чата {} возвращено лидеру", stripe, chatId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+}
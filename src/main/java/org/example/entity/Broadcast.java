@@ -0,0 +1,37 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Data
+public class Broadcast {
+
+    public enum Status { MATCHING, SENDING, DONE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 512)
+    private String movieIds; // Movie.id новинок через "_", как genre_ids
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    private long lastUserId; // Usr.id последнего сопоставленного пользователя; с него сопоставление продолжается после перезапуска
+    private long matched; // Пользователей, которым подобрана новинка
+    private long sent; // Уведомлений отправлено
+    private long failed; // Уведомлений не доставлено (бот заблокирован, чат удалён)
+    private Instant startedAt;
+    private Instant updatedAt;
+}
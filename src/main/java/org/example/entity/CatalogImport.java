@@ -0,0 +1,37 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Data
+public class CatalogImport {
+
+    public enum Status { STAGING, ENRICHING, DONE, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 512)
+    private String file; // Путь к выгрузке TMDb на диске лидера
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    private long linesRead; // Разобрано строк файла; с этой строки импорт продолжается после перезапуска
+    private long staged; // Фильмов поставлено в очередь на загрузку подробностей
+    private long enriched; // Фильмов добавлено в каталог
+    private long failed; // Фильмов, подробности которых TMDb не отдал
+    private Instant startedAt;
+    private Instant updatedAt;
+}
@@ -0,0 +1,26 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Data
+public class ClusterEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic; // Какой кэш нужно сбросить (USERS, GENRES, MOVIES)
+
+    private String entityKey; // Ключ изменившейся записи, null - сбросить весь кэш
+    private String originNode; // Узел, на котором произошло изменение
+    private Instant createdAt;
+}
@@ -0,0 +1,18 @@
+package org.example.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Data
+public class ClusterLease {
+
+    @Id
+    private String name; // Название аренды (например, "leader")
+
+    private String owner; // Узел, который сейчас держит аренду
+    private Instant expiresAt; // Момент, после которого аренду может забрать другой узел
+}
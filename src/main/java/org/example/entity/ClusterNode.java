@@ -0,0 +1,25 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Data
+public class ClusterNode {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(unique = true, nullable = false)
+    private String nodeId; // Идентификатор узла бота
+
+    private String baseUrl; // Адрес, по которому другие узлы пересылают обновления
+    private Instant lastHeartbeat; // Время последнего сигнала жизни
+}
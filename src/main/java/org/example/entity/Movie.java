@@ -19,9 +19,14 @@ public class Movie {
     private Long movieId; // Идентификатор фильма из TMDb API
 
     private String title; // Название фильма
+    // Списки карточек читают фильм без описания (MovieCardView), см. MovieCardRenderer
     @Column(name = "description", columnDefinition = "TEXT") // Или "character varying(5000)"
     private String description;
     private String releaseDate;
     private Double rating; // Средний рейтинг из TMDb API
+    private Integer voteCount; // Число голосов за рейтинг в TMDb
+    private Double popularity; // Популярность TMDb на момент загрузки
     private String genreIds; // Ids жанра
+    private String posterPath; // Путь постера в TMDb, например "/abc.jpg"
+    private String posterFileId; // file_id постера в Telegram после первой отправки
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_movie_localization_movie_language", columnNames = {"movie_id", "language"}))
+@Data
+public class MovieLocalization {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "movie_id", nullable = false)
+    private Long movieId; // Movie.id фильма
+
+    @Column(nullable = false, length = 8)
+    private String language; // Код языка TMDb ("en", "uk")
+
+    private String title; // Название на этом языке
+    @Column(columnDefinition = "TEXT")
+    private String description; // Описание на этом языке
+}
@@ -0,0 +1,34 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_movie_neighbour_movie_position", columnNames = {"movie_id", "position"}))
+@Data
+public class MovieNeighbour {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "movie_id", nullable = false)
+    private Long movieId; // Movie.id фильма, для которого посчитан список
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "neighbour_id", nullable = false)
+    private Movie neighbour; // Похожий фильм
+
+    private int position; // Место в списке, 0 - самый похожий
+    private double similarity; // Косинусное сходство жанров, показывается в карточке
+    private double score; // Итоговая оценка, по которой упорядочен список (MovieIndex.Weights)
+}
@@ -1,14 +1,20 @@
 package org.example.entity;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_user_movie_rating_user_movie", columnNames = {"user_id", "movie_id"}),
+        indexes = @Index(name = "idx_user_movie_rating_user_cover", columnList = "user_id, movie_id, rating"))
 @Data
 public class UserMovieRating {
 
@@ -16,11 +22,11 @@ public class UserMovieRating {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private Usr user; // Пользователь, который оценил фильм
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "movie_id", nullable = false)
     private Movie movie; // Ссылка на фильм
 
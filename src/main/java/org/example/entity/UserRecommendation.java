@@ -0,0 +1,31 @@
+package org.example.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import lombok.Data;
+
+@Entity
+@Data
+public class UserRecommendation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId; // Пользователь, для которого посчитана рекомендация
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "movie_id", nullable = false)
+    private Movie movie; // Рекомендованный фильм
+
+    private int position; // Место в списке, 0 - лучшее совпадение
+    private double similarity; // Косинусное сходство с предпочтениями пользователя, показывается в карточке
+    private double score; // Итоговая оценка, по которой упорядочен список (MovieIndex.Weights)
+}
@@ -8,7 +8,10 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -30,8 +33,13 @@ public class Usr {
     private Boolean isPremium; // Информация о премиум-аккаунте
     private Boolean isBot; // Является ли пользователь ботом
     private String genrePreferences;
+    private Boolean recommendationsDirty; // Нужно пересчитать рекомендации (пользователь что-то оценил)
+    private Instant recommendationsUpdatedAt; // Когда рекомендации пересчитывались в последний раз
 
-    // Оцененные фильмы
+    // Оцененные фильмы. Не входят в equals/hashCode/toString: иначе слияние пользователя (save)
+    // загружает все его оценки, а хэш оценки снова считает хэш пользователя
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<UserMovieRating> ratings = new HashSet<>();
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package org.example.repository;
+
+import org.example.entity.Broadcast;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public interface BroadcastRepository extends JpaRepository<Broadcast, Long> {
+    Optional<Broadcast> findFirstByStatusInOrderByIdAsc(Collection<Broadcast.Status> statuses); // Незавершённое задание
+}
@@ -0,0 +1,13 @@
+package org.example.repository;
+
+import org.example.entity.CatalogImport;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public interface CatalogImportRepository extends JpaRepository<CatalogImport, Long> {
+    Optional<CatalogImport> findFirstByStatusInOrderByIdAsc(Collection<CatalogImport.Status> statuses); // Незавершённое задание
+
+    Optional<CatalogImport> findFirstByOrderByIdDesc(); // Последнее задание, для статуса
+}
@@ -0,0 +1,24 @@
+package org.example.repository;
+
+import org.example.entity.ClusterEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface ClusterEventRepository extends JpaRepository<ClusterEvent, Long> {
+    List<ClusterEvent> findTop500ByIdGreaterThanOrderByIdAsc(Long id); // Новые события ленты изменений
+
+    List<ClusterEvent> findByIdIn(Collection<Long> ids); // Дописанные позже события из пропусков ленты
+
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM ClusterEvent e")
+    Long findMaxId();
+
+    @Modifying
+    @Query("DELETE FROM ClusterEvent e WHERE e.createdAt < :threshold")
+    int deleteOlderThan(@Param("threshold") Instant threshold);
+}
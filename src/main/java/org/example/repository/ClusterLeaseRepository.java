@@ -0,0 +1,31 @@
+package org.example.repository;
+
+import org.example.entity.ClusterLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface ClusterLeaseRepository extends JpaRepository<ClusterLease, String> {
+
+    @Modifying
+    @Query(value = """
+    INSERT IGNORE INTO cluster_lease (name, owner, expires_at) VALUES (:name, NULL, :expiresAt)
+""", nativeQuery = true)
+    void createIfAbsent(@Param("name") String name, @Param("expiresAt") Instant expiresAt);
+
+    // Забирает аренду, если она свободна, просрочена или уже принадлежит этому узлу
+    @Modifying
+    @Query("""
+    UPDATE ClusterLease l SET l.owner = :owner, l.expiresAt = :expiresAt
+    WHERE l.name = :name AND (l.owner = :owner OR l.owner IS NULL OR l.expiresAt < :now)
+""")
+    int tryAcquire(@Param("name") String name, @Param("owner") String owner,
+                   @Param("expiresAt") Instant expiresAt, @Param("now") Instant now);
+
+    @Modifying
+    @Query("UPDATE ClusterLease l SET l.owner = NULL WHERE l.name = :name AND l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner);
+}
@@ -0,0 +1,13 @@
+package org.example.repository;
+
+import org.example.entity.ClusterNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface ClusterNodeRepository extends JpaRepository<ClusterNode, Long> {
+    Optional<ClusterNode> findByNodeId(String nodeId);
+    List<ClusterNode> findByLastHeartbeatAfter(Instant threshold); // Живые узлы
+}
@@ -0,0 +1,10 @@
+package org.example.repository;
+
+/**
+ * Переведённое название фильма - для индекса inline-поиска.
+ */
+public interface LocalizedTitleView {
+    Long getId(); // MovieLocalization.id, курсор догрузки
+    Long getMovieId();
+    String getTitle();
+}
@@ -0,0 +1,30 @@
+package org.example.repository;
+
+import org.example.entity.Movie;
+
+/**
+ * Поля карточки фильма без описания: описание - единственная TEXT-колонка таблицы,
+ * его рендерер дочитывает по id, только когда карточки нет в кэше.
+ */
+public interface MovieCardView extends MovieFeaturesView {
+    String getTitle();
+    Double getPopularity();
+    String getPosterPath();
+    String getPosterFileId();
+
+    // Отсоединённый Movie для рендерера и рассылки; description остаётся null
+    default Movie toMovie() {
+        Movie movie = new Movie();
+        movie.setId(getId());
+        movie.setMovieId(getMovieId());
+        movie.setTitle(getTitle());
+        movie.setReleaseDate(getReleaseDate());
+        movie.setRating(getRating());
+        movie.setVoteCount(getVoteCount());
+        movie.setPopularity(getPopularity());
+        movie.setGenreIds(getGenreIds());
+        movie.setPosterPath(getPosterPath());
+        movie.setPosterFileId(getPosterFileId());
+        return movie;
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.repository;
+
+/**
+ * Фильм для индекса рекомендаций: жанры и сигналы качества, без описания и названия.
+ */
+public interface MovieFeaturesView extends MovieGenresView {
+    Double getRating(); // Средний рейтинг TMDb
+    Integer getVoteCount();
+    String getReleaseDate();
+}
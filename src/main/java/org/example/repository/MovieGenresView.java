@@ -0,0 +1,11 @@
+package org.example.repository;
+
+/**
+ * Облегчённое представление фильма для подсчёта сходства: без описания и прочих
+ * полей карточки, которые нужны только при показе.
+ */
+public interface MovieGenresView {
+    Long getId();
+    Long getMovieId(); // Идентификатор фильма из TMDb API
+    String getGenreIds();
+}
@@ -0,0 +1,31 @@
+package org.example.repository;
+
+import org.example.entity.MovieLocalization;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MovieLocalizationRepository extends JpaRepository<MovieLocalization, Long> {
+    List<MovieLocalization> findByLanguageAndMovieIdIn(String language, Collection<Long> movieIds);
+
+    @Query("SELECT l.id AS id, l.movieId AS movieId, l.title AS title FROM MovieLocalization l WHERE l.id > :id AND l.title IS NOT NULL ORDER BY l.id")
+    List<LocalizedTitleView> findTitlesByIdGreaterThan(@Param("id") Long id, Pageable pageable); // Переведённые названия для индекса inline-поиска
+
+    // Перевод догружается и при показе карточки внутри read-only транзакции, поэтому пишется в своей.
+    // Два узла могут загрузить один и тот же перевод одновременно - побеждает последний
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = """
+    INSERT INTO movie_localization (movie_id, language, title, description) VALUES (:movieId, :language, :title, :description)
+    ON DUPLICATE KEY UPDATE title = :title, description = :description
+""", nativeQuery = true)
+    void upsert(@Param("movieId") Long movieId, @Param("language") String language,
+                @Param("title") String title, @Param("description") String description);
+}
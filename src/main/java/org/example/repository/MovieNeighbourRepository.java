@@ -0,0 +1,18 @@
+package org.example.repository;
+
+import org.example.entity.MovieNeighbour;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MovieNeighbourRepository extends JpaRepository<MovieNeighbour, Long> {
+    @Query("SELECT n.movieId AS movieId, n.neighbour.id AS neighbourId, n.similarity AS similarity, n.score AS score FROM MovieNeighbour n WHERE n.movieId IN :movieIds ORDER BY n.movieId, n.position")
+    List<MovieNeighbourView> findByMovieIdIn(@Param("movieIds") Collection<Long> movieIds); // Готовые списки: для показа и для дополнения новым фильмом
+
+    @Query("SELECT m.id FROM Movie m WHERE m.id > :after AND NOT EXISTS (SELECT n.id FROM MovieNeighbour n WHERE n.movieId = m.id) ORDER BY m.id")
+    List<Long> findMovieIdsWithoutNeighbours(@Param("after") Long after, Pageable pageable); // Фильмы, пропущенные инкрементальным обновлением
+}
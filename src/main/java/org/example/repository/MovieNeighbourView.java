@@ -0,0 +1,11 @@
+package org.example.repository;
+
+/**
+ * Строка списка похожих фильмов без самих фильмов - для дополнения списков новыми фильмами.
+ */
+public interface MovieNeighbourView {
+    Long getMovieId();
+    Long getNeighbourId();
+    double getSimilarity();
+    double getScore();
+}
@@ -1,16 +1,70 @@
 package org.example.repository;
 
 import org.example.entity.Movie;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public interface MovieRepository extends JpaRepository<Movie, Long> {
     Optional<Movie> findByMovieId(Long movieId); // Поиск фильма по идентификатору из TMDb API
 
+    @Query("SELECT m.id AS id, m.movieId AS movieId, m.genreIds AS genreIds, m.rating AS rating, m.voteCount AS voteCount, m.releaseDate AS releaseDate FROM Movie m")
+    List<MovieFeaturesView> findAllFeatures(); // Весь каталог без описаний, для индекса фильмов
+
+    @Query("SELECT m.id AS id, m.movieId AS movieId, m.genreIds AS genreIds, m.rating AS rating, m.voteCount AS voteCount, m.releaseDate AS releaseDate FROM Movie m WHERE m.id > :id")
+    List<MovieFeaturesView> findFeaturesByIdGreaterThan(@Param("id") Long id); // Догрузка индекса после восстановления из снимка
+
+    @Query("SELECT m.id AS id, m.title AS title, m.voteCount AS voteCount FROM Movie m WHERE m.id > :id ORDER BY m.id")
+    List<MovieTitleView> findTitlesByIdGreaterThan(@Param("id") Long id, Pageable pageable); // Названия для индекса inline-поиска
+
+    @Query("SELECT m.id AS id, m.title AS title, m.voteCount AS voteCount FROM Movie m WHERE m.movieId = :movieId")
+    Optional<MovieTitleView> findTitleByMovieId(@Param("movieId") Long movieId);
+
+    @Query("SELECT COALESCE(MAX(m.id), 0) FROM Movie m")
+    long findMaxId();
+
+    @Query("SELECT m.id AS id, m.movieId AS movieId, m.genreIds AS genreIds, m.rating AS rating, m.voteCount AS voteCount, m.releaseDate AS releaseDate FROM Movie m WHERE m.movieId = :movieId")
+    Optional<MovieFeaturesView> findFeaturesByMovieId(@Param("movieId") Long movieId);
+
+    @Query("""
+    SELECT m.id AS id, m.movieId AS movieId, m.genreIds AS genreIds FROM Movie m
+    WHERE m.id > :after
+      AND NOT EXISTS (SELECT l.id FROM MovieLocalization l WHERE l.movieId = m.id AND l.language = :language)
+    ORDER BY m.id
+""")
+    List<MovieGenresView> findWithoutLocalization(@Param("language") String language, @Param("after") Long after, Pageable pageable); // Фильмы без перевода, для фоновой догрузки
+
+    @Query("""
+    SELECT m.id AS id, m.movieId AS movieId, m.title AS title, m.genreIds AS genreIds, m.rating AS rating,
+           m.voteCount AS voteCount, m.releaseDate AS releaseDate, m.popularity AS popularity,
+           m.posterPath AS posterPath, m.posterFileId AS posterFileId
+    FROM Movie m WHERE m.id IN :ids
+""")
+    List<MovieCardView> findCardsByIdIn(@Param("ids") Collection<Long> ids); // Списки карточек без описаний
+
+    // Фильмы для карточек по Movie.id, без описаний (см. MovieCardView)
+    default Map<Long, Movie> findCards(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return findCardsByIdIn(ids).stream()
+                .map(MovieCardView::toMovie)
+                .collect(Collectors.toMap(Movie::getId, Function.identity()));
+    }
+
+    @Query("SELECT m.description FROM Movie m WHERE m.id = :id")
+    Optional<String> findDescriptionById(@Param("id") Long id); // Описание для карточки, которой нет в кэше
+
     @Query(value = """
     SELECT m.* FROM movie m
         JOIN (
@@ -19,4 +73,9 @@ public interface MovieRepository extends JpaRepository<Movie, Long> {
         ) AS random_movies ON m.id = random_movies.id;
 """, nativeQuery = true)
     List<Movie> findRandomMovies(@Param("limit") int limit);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Movie m SET m.posterFileId = :fileId WHERE m.id = :id")
+    int updatePosterFileId(@Param("id") Long id, @Param("fileId") String fileId); // null - file_id больше не принимается Telegram
 }
@@ -0,0 +1,10 @@
+package org.example.repository;
+
+/**
+ * Название фильма на языке каталога и число голосов - для индекса inline-поиска.
+ */
+public interface MovieTitleView {
+    Long getId();
+    String getTitle();
+    Integer getVoteCount();
+}
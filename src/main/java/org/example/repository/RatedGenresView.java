@@ -0,0 +1,10 @@
+package org.example.repository;
+
+/**
+ * Оценка пользователя вместе с жанрами фильма - всё, что нужно для getUserGenres.
+ */
+public interface RatedGenresView {
+    int getRating();
+    Long getMovieId(); // Movie.id оценённого фильма
+    String getGenreIds();
+}
@@ -0,0 +1,12 @@
+package org.example.repository;
+
+/**
+ * Строка списка "Мои оценки".
+ */
+public interface RatedMovieView {
+    Long getId();
+    Long getMovieId();
+    int getRating();
+    String getTitle();
+    String getGenreIds();
+}
@@ -1,12 +1,46 @@
 package org.example.repository;
 
 import org.example.entity.UserMovieRating;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public interface UserMovieRatingRepository extends JpaRepository<UserMovieRating, Long> {
     List<UserMovieRating> findByUserId(Long userId); // Поиск записей по userId
     Optional<UserMovieRating> findByUserIdAndMovieId(Long userId, Long movieId);
+
+    @Query("SELECT r.rating FROM UserMovieRating r WHERE r.user.id = :userId AND r.movie.id = :movieId")
+    Optional<Integer> findRating(@Param("userId") Long userId, @Param("movieId") Long movieId); // Прежняя оценка, без загрузки сущности
+
+    // Вставляет оценку или обновляет существующую одним запросом (уникальный индекс user_id, movie_id).
+    // Число строк по нему не определить, новая ли оценка: с CLIENT_FOUND_ROWS повтор той же оценки
+    // тоже даёт 1. Это решает прежняя оценка (CommandProcessingService.saveUserRating)
+    @Transactional
+    @Modifying
+    @Query(value = """
+    INSERT INTO user_movie_rating (user_id, movie_id, rating) VALUES (:userId, :movieId, :rating)
+    ON DUPLICATE KEY UPDATE rating = :rating
+""", nativeQuery = true)
+    int upsert(@Param("userId") Long userId, @Param("movieId") Long movieId, @Param("rating") int rating);
+
+    @Query("SELECT r.movie.id FROM UserMovieRating r WHERE r.user.id = :userId")
+    Set<Long> findRatedMovieIds(@Param("userId") Long userId); // Оценённые фильмы, по индексу (user_id, movie_id)
+
+    @Query("SELECT r.rating AS rating, m.id AS movieId, m.genreIds AS genreIds FROM UserMovieRating r JOIN r.movie m WHERE r.user.id = :userId")
+    List<RatedGenresView> findRatedGenresByUserId(@Param("userId") Long userId); // Оценки с жанрами, без загрузки фильмов
+
+    @Query("""
+    SELECT r.id AS id, m.id AS movieId, r.rating AS rating, m.title AS title, m.genreIds AS genreIds
+    FROM UserMovieRating r JOIN r.movie m WHERE r.user.id = :userId ORDER BY r.id DESC
+""")
+    List<RatedMovieView> findRatedMoviesByUserId(@Param("userId") Long userId, Pageable pageable); // Последние оценки для списка "Мои оценки"
+
+    long countByUserId(Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package org.example.repository;
+
+import org.example.entity.UserRecommendation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface UserRecommendationRepository extends JpaRepository<UserRecommendation, Long> {
+    List<UserRecommendation> findByUserIdOrderByPositionAsc(Long userId); // Готовый список; фильмы подгружаются лениво, только для показанных карточек
+
+    @Modifying
+    @Query("DELETE FROM UserRecommendation r WHERE r.userId = :userId")
+    void deleteByUserId(@Param("userId") Long userId);
+}
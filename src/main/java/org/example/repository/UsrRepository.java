@@ -1,10 +1,25 @@
 package org.example.repository;
 
+import jakarta.persistence.LockModeType;
 import org.example.entity.Usr;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 public interface UsrRepository extends JpaRepository<Usr, Long> {
     Optional<Usr> findByChatId(Long chatId); // Поиск пользователя по идентификатору чата
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM Usr u WHERE u.chatId = :chatId")
+    Optional<Usr> findByChatIdForUpdate(@Param("chatId") Long chatId); // SELECT ... FOR UPDATE: оценки пользователя пишутся по очереди
+    List<Usr> findByRecommendationsDirtyTrue(Pageable pageable); // Оценили что-то новое
+    List<Usr> findByRecommendationsUpdatedAtBefore(Instant threshold, Pageable pageable); // Устаревшие рекомендации
+    Slice<Usr> findByRecommendationsUpdatedAtIsNotNull(Pageable pageable); // Все пользователи с готовыми рекомендациями
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Допуск обновлений к обработке, чтобы всплеск тяжёлых команд (полный проход по каталогу
+ * в "Лучшем совпадении", поиск через TMDb) не занял весь пул соединений и квоту TMDb
+ * и не замедлил бота для всех.
+ * <p>
+ * Два уровня, оба без очередей - лишний запрос отклоняется сразу, а пользователь получает
+ * короткое "попробуйте позже":
+ * <ul>
+ *     <li>частота на чат: до chat-burst запросов подряд, дальше не чаще chat-rate в секунду;</li>
+ *     <li>одновременные запросы на команду: предел подстраивается по задержке (AIMD) -
+ *     медленнее target-latency уменьшается в backoff раз, быстрее растёт на 1 за каждые
+ *     "предел" успешных запросов, но не выше размера отсека команды из bulkheads
+ *     (или max-concurrency) и не ниже min-limit.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdmissionController {
+    private final BotMetrics botMetrics;
+
+    @Value("${spring.admission.chat-rate}")
+    private double chatRate;
+
+    @Value("${spring.admission.chat-burst}")
+    private int chatBurst;
+
+    @Value("${spring.admission.max-concurrency}")
+    private int maxConcurrency;
+
+    @Value("${spring.admission.bulkheads}")
+    private String bulkheads;
+
+    @Value("${spring.admission.min-limit}")
+    private int minLimit;
+
+    @Value("${spring.admission.target-latency}")
+    private Duration targetLatency;
+
+    @Value("${spring.admission.backoff}")
+    private double backoff;
+
+    @Value("${spring.admission.notify-interval}")
+    private Duration notifyInterval;
+
+    private final Map<String, Integer> bulkheadSizes = new HashMap<>();
+    private final Map<String, CommandLimit> limits = new ConcurrentHashMap<>();
+    private final Map<Long, ChatLimit> chats = new ConcurrentHashMap<>();
+
+    private static final class ChatLimit {
+        final RateLimiter limiter;
+        volatile long notifiedAt; // Когда чату последний раз отвечали отказом, System.nanoTime
+
+        ChatLimit(double rate, long now, long interval) {
+            this.limiter = new RateLimiter(rate);
+            this.notifiedAt = now - interval;
+        }
+    }
+
+    /**
+     * Предел одновременных запросов команды. Дробная часть копит рост: +1/limit за успех.
+     */
+    private final class CommandLimit {
+        final int maxLimit;
+        double limit;
+        int inFlight;
+
+        CommandLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            this.limit = maxLimit;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        synchronized void release(long latencyNanos) {
+            inFlight--;
+            if (latencyNanos > targetLatency.toNanos()) {
+                limit = Math.max(minLimit, limit * backoff);
+            } else if (limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+
+        synchronized double limit() {
+            return limit;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String entry : bulkheads.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2) {
+                bulkheadSizes.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        log.info("Допуск запросов: {} в секунду на чат (до {} подряд), отсеки команд {}, остальным {}",
+                chatRate, chatBurst, bulkheadSizes, maxConcurrency);
+    }
+
+    /**
+     * Не превысил ли чат свою частоту запросов. Разрешение расходуется.
+     */
+    public boolean allowChat(long chatId) {
+        long now = System.nanoTime();
+        ChatLimit chat = chats.computeIfAbsent(chatId, id -> new ChatLimit(chatRate, now, notifyInterval.toNanos()));
+        if (chat.limiter.tryAcquire(chatBurst)) {
+            return true;
+        }
+        botMetrics.admissionRejected("chat", "chat_rate");
+        return false;
+    }
+
+    /**
+     * Выполняет обработчик команды, если у неё есть свободное место.
+     *
+     * @return false, если запрос отклонён и обработчик не вызывался
+     */
+    public boolean execute(String command, Runnable handler) {
+        CommandLimit limit = limits.computeIfAbsent(command, this::createLimit);
+        if (!limit.tryAcquire()) {
+            botMetrics.admissionRejected(command, "concurrency");
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            handler.run();
+        } finally {
+            limit.release(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    /**
+     * Стоит ли сообщать чату об отказе: не чаще раза в notify-interval, чтобы ответы
+     * на поток отклонённых сообщений сами не стали нагрузкой.
+     */
+    public boolean shouldNotify(long chatId) {
+        ChatLimit chat = chats.get(chatId);
+        if (chat == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long notifiedAt = chat.notifiedAt;
+        if (now - notifiedAt < notifyInterval.toNanos()) {
+            return false;
+        }
+        chat.notifiedAt = now;
+        return true;
+    }
+
+    /**
+     * Удаляет ограничители чатов, которые давно ничего не присылали: их запас уже полон,
+     * а об отказе им можно сообщить снова.
+     */
+    @Scheduled(fixedDelayString = "${spring.admission.cleanup-interval}")
+    public void cleanup() {
+        long idle = notifyInterval.toNanos();
+        chats.values().removeIf(chat -> chat.limiter.isIdle(idle));
+    }
+
+    private CommandLimit createLimit(String command) {
+        CommandLimit limit = new CommandLimit(bulkheadSizes.getOrDefault(command, maxConcurrency));
+        botMetrics.admissionLimit(command, limit, CommandLimit::limit);
+        return limit;
+    }
+}
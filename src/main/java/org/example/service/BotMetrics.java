@@ -0,0 +1,147 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Единая точка регистрации метрик бота. Все таймеры публикуют гистограммы,
+ * чтобы в Prometheus можно было считать p99 по каждой команде и эндпоинту.
+ */
+@Component
+@RequiredArgsConstructor
+public class BotMetrics {
+    private final MeterRegistry registry;
+
+    /**
+     * Оборачивает обработчик команды из commandHandlers таймером с тегом команды.
+     */
+    public <T> Consumer<T> timed(String command, Consumer<T> handler) {
+        Timer timer = Timer.builder("bot.command.latency")
+                .description("Время обработки команды бота")
+                .tag("command", command)
+                .publishPercentileHistogram()
+                .register(registry);
+        return argument -> timer.record(() -> handler.accept(argument));
+    }
+
+    /**
+     * Замеряет вызов TMDb и считает ошибки. Пустой ответ тоже считается ошибкой,
+     * потому что вызывающий код воспринимает его как сбой.
+     */
+    public <T> T recordTmdb(String endpoint, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        try {
+            T result = call.get();
+            if (result == null) {
+                outcome = "empty";
+            }
+            return result;
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("bot.tmdb.latency")
+                    .description("Время ответа TMDb API")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            if (!outcome.equals("success")) {
+                registry.counter("bot.tmdb.errors", "endpoint", endpoint, "outcome", outcome).increment();
+            }
+        }
+    }
+
+    /**
+     * Запрос к TMDb не отправлялся: цепь предохранителя разомкнута.
+     */
+    public void tmdbShortCircuited(String endpoint) {
+        registry.counter("bot.tmdb.errors", "endpoint", endpoint, "outcome", "circuit_open").increment();
+    }
+
+    /**
+     * Команда обслужена из локального каталога, потому что TMDb не ответил.
+     */
+    public void tmdbFallback(String command) {
+        registry.counter("bot.tmdb.fallbacks", "command", command).increment();
+    }
+
+    public Timer.Sample startSend() {
+        return Timer.start(registry);
+    }
+
+    public void stopSend(Timer.Sample sample, String method, boolean success) {
+        sample.stop(Timer.builder("bot.telegram.send.latency")
+                .description("Время вызова execute() Telegram Bot API")
+                .tag("method", method)
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void recordQueriesPerUpdate(long queries) {
+        DistributionSummary.builder("bot.update.jpa.queries")
+                .description("Количество SQL-запросов на одно обновление Telegram")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(queries);
+    }
+
+    public void recordRecommendation(String mode, int candidates, long scoringNanos) {
+        DistributionSummary.builder("bot.recommendation.candidates")
+                .description("Количество фильмов-кандидатов в одном расчёте рекомендаций")
+                .tag("mode", mode)
+                .register(registry)
+                .record(candidates);
+        Timer.builder("bot.recommendation.scoring")
+                .description("Время подсчёта сходства по кандидатам")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(scoringNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Запрос отклонён AdmissionController; reason - chat_rate или concurrency.
+     */
+    public void admissionRejected(String command, String reason) {
+        registry.counter("bot.admission.rejected", "command", command, "reason", reason).increment();
+    }
+
+    /**
+     * Текущий предел одновременных запросов команды.
+     */
+    public <T> void admissionLimit(String command, T limit, ToDoubleFunction<T> value) {
+        Gauge.builder("bot.admission.limit", limit, value)
+                .description("Предел одновременных запросов команды")
+                .tag("command", command)
+                .register(registry);
+    }
+
+    /**
+     * Счётчики попаданий и промахов кэша; доля попаданий считается в Prometheus
+     * как hit / (hit + miss).
+     */
+    public void cacheHit(String cache) {
+        cacheCounter(cache, "hit").increment();
+    }
+
+    public void cacheMiss(String cache) {
+        cacheCounter(cache, "miss").increment();
+    }
+
+    private Counter cacheCounter(String cache, String result) {
+        return registry.counter("bot.cache.requests", "cache", cache, "result", result);
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+
+/**
+ * Держит long polling сессию Telegram. Telegram отдаёт обновления только одному
+ * потребителю на токен, поэтому в многоузловом режиме сессию открывает лишь лидер.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BotSessionManager {
+    private final TelegramBotService telegramBotService;
+
+    @Value("${spring.telegram.bot.polling-enabled}")
+    private boolean pollingEnabled;
+
+    private BotSession session;
+
+    public synchronized void start() {
+        if (!pollingEnabled || (session != null && session.isRunning())) {
+            return;
+        }
+
+        try {
+            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+            session = botsApi.registerBot(telegramBotService);
+            log.info("Сессия long polling запущена");
+        } catch (TelegramApiException e) {
+            log.error("Не удалось зарегистрировать бота: {}", e.getMessage(), e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (session != null && session.isRunning()) {
+            session.stop();
+            log.info("Сессия long polling остановлена");
+        }
+        session = null;
+    }
+
+    @EventListener
+    public void onLeadershipChanged(LeadershipChangedEvent event) {
+        if (event.leader()) {
+            start();
+        } else {
+            stop();
+        }
+    }
+}
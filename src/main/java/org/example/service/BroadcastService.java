@@ -0,0 +1,419 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.Broadcast;
+import org.example.entity.Movie;
+import org.example.repository.BroadcastRepository;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Рассылка новинок: после ночного обхода TMDb каждому пользователю с известными
+ * предпочтениями приходит карточка самой подходящей ему новинки.
+ * <p>
+ * Рассылка идёт в две фазы, обе с ограниченной памятью и возобновляемые, как импорт каталога:
+ * <ol>
+ *     <li>пользователи читаются страницами по page-size в порядке id (без сущностей Usr),
+ *     страница оценивается параллельно по индексу фильмов, подобранные уведомления пишутся
+ *     в broadcast_delivery вместе с id последнего пользователя страницы одной транзакцией;</li>
+ *     <li>уведомления отправляются в senders потоков, всего не чаще rate в секунду, чтобы
+ *     не упереться в общий предел Telegram и оставить место ответам на команды. Каждое
+ *     отправленное уведомление сразу отмечается, так что после перезапуска отправка
+ *     продолжается с неотправленных.</li>
+ * </ol>
+ * Работает только на лидере; незавершённую рассылку подхватывает проверка по расписанию.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BroadcastService {
+    private static final Pattern RELEASE_DATE = Pattern.compile("(\\d{4})\\.(\\d{2})\\.(\\d{2})");
+    private static final int SENT = 1;
+    private static final int FAILED = 2;
+
+    private final BroadcastRepository broadcastRepository;
+    private final MovieRepository movieRepository;
+    private final MovieIndex movieIndex;
+    private final MovieLocalizationService movieLocalizationService;
+    private final TelegramBotService telegramBotService;
+    private final ClusterService clusterService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.broadcast.enabled}")
+    private boolean enabled;
+
+    @Value("${spring.broadcast.release-window}")
+    private Duration releaseWindow;
+
+    @Value("${spring.broadcast.max-movies}")
+    private int maxMovies;
+
+    @Value("${spring.broadcast.min-similarity}")
+    private double minSimilarity;
+
+    @Value("${spring.broadcast.page-size}")
+    private int pageSize;
+
+    @Value("${spring.broadcast.parallelism}")
+    private int parallelism;
+
+    @Value("${spring.broadcast.senders}")
+    private int senderCount;
+
+    @Value("${spring.broadcast.rate}")
+    private double rate;
+
+    @Value("${spring.broadcast.max-attempts}")
+    private int maxAttempts;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ForkJoinPool scorers;
+    private ExecutorService senders;
+    private RateLimiter rateLimiter;
+
+    private record Recipient(long userId, long chatId, String genrePreferences, String languageCode) {
+    }
+
+    private record Delivery(long userId, long chatId, long movieId, double similarity, String language) {
+    }
+
+    /**
+     * Новые фильмы, вышедшие не раньше release-window назад, ставятся в очередь на рассылку:
+     * не больше max-movies самых популярных, чтобы список новинок задания оставался коротким.
+     * <p>
+     * Вызывается после коммита транзакции, опубликовавшей событие, когда новые фильмы видны потокам
+     * рассылки; без транзакции (обход сохраняет каждый фильм в своей) - сразу. Транзакция издателя
+     * к этому моменту завершена, поэтому задание пишется в новой.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onNewMovies(NewMoviesEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDate since = LocalDate.now().minusDays(releaseWindow.toDays());
+        List<Long> releases = movieRepository.findCards(event.movieIds()).values().stream()
+                .filter(movie -> isReleasedSince(movie.getReleaseDate(), since))
+                .sorted(Comparator.comparingDouble((Movie movie) -> movie.getPopularity() != null ? movie.getPopularity() : 0).reversed())
+                .limit(maxMovies)
+                .map(Movie::getId)
+                .toList();
+        if (releases.isEmpty()) {
+            log.info("Среди {} новых фильмов нет новинок для рассылки", event.movieIds().size());
+            return;
+        }
+
+        Broadcast job = new Broadcast();
+        job.setMovieIds(releases.stream().map(String::valueOf).collect(Collectors.joining("_")));
+        job.setStatus(Broadcast.Status.MATCHING);
+        job.setStartedAt(Instant.now());
+        job.setUpdatedAt(job.getStartedAt());
+        job = broadcastRepository.save(job);
+        log.info("Рассылка {} новинок поставлена в очередь (задание {})", releases.size(), job.getId());
+        resume();
+    }
+
+    @Scheduled(fixedDelayString = "${spring.broadcast.check-interval}")
+    public void resume() {
+        if (!enabled || !clusterService.isLeader() || running.get()) {
+            return;
+        }
+
+        findUnfinished().ifPresent(job -> {
+            if (running.compareAndSet(false, true)) {
+                runner.execute(() -> run(job));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        if (senders != null) {
+            senders.shutdownNow();
+            scorers.shutdownNow();
+        }
+    }
+
+    private void run(Broadcast job) {
+        long start = System.nanoTime();
+        try {
+            ensureWorkers();
+            if (job.getStatus() == Broadcast.Status.MATCHING && !match(job)) {
+                return;
+            }
+            if (send(job)) {
+                // Счётчики отправки увеличивались в базе, поэтому задание перечитывается
+                Broadcast done = broadcastRepository.findById(job.getId()).orElse(job);
+                done.setStatus(Broadcast.Status.DONE);
+                save(done);
+                purgeDeliveries(done.getId());
+                log.info("Рассылка {} завершена: подобрано {}, отправлено {}, не доставлено {}, {} с",
+                        done.getId(), done.getMatched(), done.getSent(), done.getFailed(),
+                        (System.nanoTime() - start) / 1_000_000_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Рассылка {} прервана, продолжится после перезапуска", job.getId());
+        } catch (Exception e) {
+            log.error("Рассылка {} остановлена из-за ошибки, продолжится при следующей проверке: {}",
+                    job.getId(), e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Фаза 1: подбор новинки каждому пользователю. Возвращает false, если рассылку нужно
+     * прервать (узел перестал быть лидером).
+     */
+    private boolean match(Broadcast job) {
+        List<Long> movieIds = movieIds(job);
+        if (job.getLastUserId() > 0) {
+            log.info("Рассылка {}: продолжаем подбор с пользователя {}", job.getId(), job.getLastUserId() + 1);
+        }
+
+        while (true) {
+            if (!clusterService.isLeader()) {
+                log.info("Рассылка {} приостановлена на пользователе {}: узел больше не лидер", job.getId(), job.getLastUserId());
+                return false;
+            }
+
+            List<Recipient> page = jdbcTemplate.query("""
+                    SELECT id, chat_id, genre_preferences, language_code FROM usr
+                    WHERE id > :after AND genre_preferences IS NOT NULL
+                    ORDER BY id LIMIT :limit""",
+                    Map.of("after", job.getLastUserId(), "limit", pageSize),
+                    (rs, row) -> new Recipient(rs.getLong("id"), rs.getLong("chat_id"),
+                            rs.getString("genre_preferences"), rs.getString("language_code")));
+            if (page.isEmpty()) {
+                break;
+            }
+
+            long lastUserId = page.get(page.size() - 1).userId();
+            Map<Long, Set<Long>> rated = rated(page.get(0).userId(), lastUserId, movieIds);
+            List<SqlParameterSource> rows = scorers.submit(() -> page.parallelStream()
+                    .map(recipient -> match(job, recipient, movieIds, rated.getOrDefault(recipient.userId(), Set.of())))
+                    .filter(Objects::nonNull)
+                    .toList()).join();
+
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate("""
+                        INSERT INTO broadcast_delivery (broadcast_id, user_id, chat_id, movie_id, similarity, language, status)
+                        VALUES (:broadcastId, :userId, :chatId, :movieId, :similarity, :language, 0)""",
+                        rows.toArray(SqlParameterSource[]::new));
+                job.setLastUserId(lastUserId);
+                job.setMatched(job.getMatched() + rows.size());
+                save(job);
+            });
+        }
+
+        job.setStatus(Broadcast.Status.SENDING);
+        save(job);
+        log.info("Рассылка {}: новинка подобрана {} пользователям", job.getId(), job.getMatched());
+        return true;
+    }
+
+    // Лучшая для пользователя новинка из тех, что он ещё не оценил, если она достаточно похожа на его вкусы
+    private SqlParameterSource match(Broadcast job, Recipient recipient, List<Long> movieIds, Set<Long> rated) {
+        Map<String, Double> userGenres;
+        try {
+            userGenres = CommandProcessingService.jsonToMap(recipient.genrePreferences());
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        List<MovieIndex.ScoredMovie> best = movieIndex.rank(userGenres, MovieIndex.Weights.GENRES_ONLY, movieIds, 1, rated);
+        if (best.isEmpty() || best.get(0).similarity() < minSimilarity) {
+            return null;
+        }
+        return new MapSqlParameterSource()
+                .addValue("broadcastId", job.getId())
+                .addValue("userId", recipient.userId())
+                .addValue("chatId", recipient.chatId())
+                .addValue("movieId", best.get(0).movieId())
+                .addValue("similarity", best.get(0).similarity())
+                .addValue("language", movieLocalizationService.languageOf(recipient.languageCode()));
+    }
+
+    // Новинки, которые пользователи страницы уже оценили (например, в "Популярных фильмах")
+    private Map<Long, Set<Long>> rated(long fromUserId, long toUserId, List<Long> movieIds) {
+        Map<Long, Set<Long>> rated = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT user_id, movie_id FROM user_movie_rating
+                WHERE user_id BETWEEN :from AND :to AND movie_id IN (:movieIds)""",
+                Map.of("from", fromUserId, "to", toUserId, "movieIds", movieIds),
+                rs -> {
+                    rated.computeIfAbsent(rs.getLong("user_id"), id -> new HashSet<>()).add(rs.getLong("movie_id"));
+                });
+        return rated;
+    }
+
+    /**
+     * Фаза 2: отправка подобранных уведомлений пачками по page-size. Возвращает false, если
+     * рассылку нужно прервать (узел перестал быть лидером).
+     */
+    private boolean send(Broadcast job) throws InterruptedException {
+        Map<Long, Movie> movies = movieRepository.findCards(movieIds(job));
+        long after = 0;
+        while (true) {
+            if (!clusterService.isLeader()) {
+                log.info("Рассылка {} приостановлена: узел больше не лидер", job.getId());
+                return false;
+            }
+
+            List<Delivery> batch = jdbcTemplate.query("""
+                    SELECT user_id, chat_id, movie_id, similarity, language FROM broadcast_delivery
+                    WHERE broadcast_id = :broadcastId AND status = 0 AND user_id > :after
+                    ORDER BY user_id LIMIT :limit""",
+                    Map.of("broadcastId", job.getId(), "after", after, "limit", pageSize),
+                    (rs, row) -> new Delivery(rs.getLong("user_id"), rs.getLong("chat_id"), rs.getLong("movie_id"),
+                            rs.getDouble("similarity"), rs.getString("language")));
+            if (batch.isEmpty()) {
+                return true;
+            }
+
+            List<Future<?>> sends = new ArrayList<>(batch.size());
+            for (Delivery delivery : batch) {
+                sends.add(senders.submit(() -> {
+                    deliver(job.getId(), delivery, movies.get(delivery.movieId()));
+                    return null;
+                }));
+            }
+            for (Future<?> sent : sends) {
+                await(sent);
+            }
+            after = batch.get(batch.size() - 1).userId();
+        }
+    }
+
+    /**
+     * Отправляет одно уведомление и сразу отмечает его. 429 - превышен предел Telegram:
+     * ждём retry_after и повторяем; сетевые ошибки тоже повторяются, до max-attempts раз.
+     * Остальные ошибки (бот заблокирован, чат удалён) повтором не исправить.
+     */
+    private void deliver(long broadcastId, Delivery delivery, Movie movie) throws InterruptedException {
+        int status = FAILED;
+        for (int attempt = 1; movie != null && attempt <= maxAttempts; attempt++) {
+            rateLimiter.acquire();
+            try {
+                telegramBotService.sendNewRelease(delivery.chatId(), movie, delivery.similarity(), delivery.language());
+                status = SENT;
+                break;
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (!Integer.valueOf(429).equals(e.getErrorCode()) || retryAfter == null) {
+                    log.debug("Уведомление в чат {} не доставлено: {}", delivery.chatId(), e.getMessage());
+                    break;
+                }
+                TimeUnit.SECONDS.sleep(retryAfter);
+            } catch (TelegramApiException e) {
+                log.warn("Ошибка отправки уведомления в чат {} (попытка {}): {}", delivery.chatId(), attempt, e.getMessage());
+            }
+        }
+
+        String counter = status == SENT ? "sent" : "failed";
+        int result = status;
+        transactionTemplate.executeWithoutResult(tx -> {
+            jdbcTemplate.update("UPDATE broadcast_delivery SET status = :status WHERE broadcast_id = :broadcastId AND user_id = :userId",
+                    Map.of("status", result, "broadcastId", broadcastId, "userId", delivery.userId()));
+            jdbcTemplate.update("UPDATE broadcast SET " + counter + " = " + counter + " + 1 WHERE id = :broadcastId",
+                    Map.of("broadcastId", broadcastId));
+        });
+    }
+
+    // Очередь завершённой рассылки больше не нужна; удаляется частями, чтобы не держать долгую транзакцию
+    private void purgeDeliveries(long broadcastId) {
+        while (jdbcTemplate.update("DELETE FROM broadcast_delivery WHERE broadcast_id = :broadcastId LIMIT :limit",
+                Map.of("broadcastId", broadcastId, "limit", pageSize)) > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private static void await(Future<?> sent) throws InterruptedException {
+        try {
+            sent.get();
+        } catch (ExecutionException e) {
+            log.warn("Не удалось отправить уведомление: {}", e.getCause().getMessage());
+        }
+    }
+
+    // Дата релиза хранится как "2024.05.17" или "Не известно"
+    private static boolean isReleasedSince(String releaseDate, LocalDate since) {
+        Matcher matcher = releaseDate != null ? RELEASE_DATE.matcher(releaseDate) : null;
+        if (matcher == null || !matcher.matches()) {
+            return false;
+        }
+        try {
+            LocalDate date = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)));
+            return !date.isBefore(since) && !date.isAfter(LocalDate.now());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static List<Long> movieIds(Broadcast job) {
+        return Arrays.stream(job.getMovieIds().split("_")).map(Long::valueOf).toList();
+    }
+
+    private synchronized void ensureWorkers() {
+        if (senders == null) {
+            scorers = new ForkJoinPool(parallelism);
+            senders = Executors.newFixedThreadPool(senderCount);
+            rateLimiter = new RateLimiter(rate);
+        }
+    }
+
+    private void save(Broadcast job) {
+        job.setUpdatedAt(Instant.now());
+        broadcastRepository.save(job);
+    }
+
+    private Optional<Broadcast> findUnfinished() {
+        return broadcastRepository.findFirstByStatusInOrderByIdAsc(List.of(Broadcast.Status.MATCHING, Broadcast.Status.SENDING));
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.service;
+
+/**
+ * Локальное событие сброса кэша. Публикуется как при изменениях на этом узле,
+ * так и при чтении ленты изменений, записанной другими узлами.
+ *
+ * @param topic     какой кэш затронут
+ * @param entityKey ключ изменившейся записи, {@code null} - сбросить кэш целиком
+ */
+public record CacheInvalidationEvent(ChangeFeedService.Topic topic, String entityKey) {
+}
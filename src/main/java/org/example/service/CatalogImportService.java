@@ -0,0 +1,392 @@
+package org.example.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.CatalogImport;
+import org.example.repository.CatalogImportRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Импорт каталога из ежедневных выгрузок TMDb: gzip-файла, где каждая строка - JSON
+ * вида {"id":..., "original_title":..., "popularity":..., "adult":..., "video":...}.
+ * <p>
+ * Импорт идёт в две фазы, обе с ограниченной памятью и возобновляемые:
+ * <ol>
+ *     <li>файл читается потоком и пачками по batch-size записывается в catalog_import_item;
+ *     после каждой пачки сохраняется номер строки, с которой продолжать;</li>
+ *     <li>ожидающие фильмы по убыванию популярности загружаются из TMDb параллельно,
+ *     не чаще rate запросов в секунду, и пачками добавляются в таблицу movie.</li>
+ * </ol>
+ * Работает только на лидере; после перезапуска или смены лидера незавершённое задание
+ * подхватывается проверкой по расписанию. Файл должен лежать на диске лидера.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CatalogImportService {
+    private static final ObjectReader exportReader = new ObjectMapper().readerFor(ExportEntry.class);
+    private static final int MAX_TITLE_LENGTH = 255;
+
+    private final CatalogImportRepository catalogImportRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TmdbService tmdbService;
+    private final ClusterService clusterService;
+    private final ChangeFeedService changeFeedService;
+    private final PosterService posterService;
+
+    @Value("${spring.import.batch-size}")
+    private int batchSize;
+
+    @Value("${spring.import.enrich-batch-size}")
+    private int enrichBatchSize;
+
+    @Value("${spring.import.parallelism}")
+    private int parallelism;
+
+    @Value("${spring.import.rate}")
+    private double rate;
+
+    @Value("${spring.import.dir}")
+    private Path dir;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ExecutorService fetchers;
+    private RateLimiter rateLimiter;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record ExportEntry(long id, double popularity, boolean adult, boolean video) {
+    }
+
+    /**
+     * Ставит файл в очередь на импорт. Запускает его сразу, если этот узел - лидер,
+     * иначе задание подхватит лидер.
+     *
+     * @param name имя файла выгрузки внутри spring.import.dir
+     * @throws IllegalArgumentException если имя указывает за пределы каталога выгрузок
+     */
+    public CatalogImport start(String name) {
+        Path file = resolve(name);
+        Optional<CatalogImport> unfinished = findUnfinished();
+        if (unfinished.isPresent()) {
+            throw new IllegalStateException("Импорт " + unfinished.get().getFile() + " ещё не завершён");
+        }
+
+        CatalogImport job = new CatalogImport();
+        job.setFile(file.toString());
+        job.setStatus(CatalogImport.Status.STAGING);
+        job.setStartedAt(Instant.now());
+        job.setUpdatedAt(job.getStartedAt());
+        job = catalogImportRepository.save(job);
+        log.info("Импорт каталога из {} поставлен в очередь (задание {})", file, job.getId());
+        resume();
+        return job;
+    }
+
+    // Только файлы внутри каталога выгрузок: без абсолютных путей и переходов "..".
+    private Path resolve(String name) {
+        Path requested = Path.of(name);
+        for (Path element : requested) {
+            if (element.toString().equals("..")) {
+                throw new IllegalArgumentException("Недопустимое имя файла выгрузки: " + name);
+            }
+        }
+        Path base = dir.toAbsolutePath().normalize();
+        Path file = base.resolve(requested).normalize();
+        if (requested.isAbsolute() || requested.getRoot() != null || !file.startsWith(base) || file.equals(base)) {
+            throw new IllegalArgumentException("Недопустимое имя файла выгрузки: " + name);
+        }
+        return file;
+    }
+
+    public Optional<CatalogImport> status() {
+        return catalogImportRepository.findFirstByOrderByIdDesc();
+    }
+
+    @Scheduled(fixedDelayString = "${spring.import.check-interval}")
+    public void resume() {
+        if (!clusterService.isLeader() || running.get()) {
+            return;
+        }
+
+        findUnfinished().ifPresent(job -> {
+            if (running.compareAndSet(false, true)) {
+                runner.execute(() -> run(job));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        if (fetchers != null) {
+            fetchers.shutdownNow();
+        }
+    }
+
+    private void run(CatalogImport job) {
+        long start = System.nanoTime();
+        try {
+            if (job.getStatus() == CatalogImport.Status.STAGING && !stage(job)) {
+                return;
+            }
+            if (enrich(job)) {
+                job.setStatus(CatalogImport.Status.DONE);
+                save(job);
+                log.info("Импорт {} завершён: в очереди {}, добавлено {}, без подробностей {}, {} с",
+                        job.getFile(), job.getStaged(), job.getEnriched(), job.getFailed(),
+                        (System.nanoTime() - start) / 1_000_000_000);
+            }
+        } catch (IOException e) {
+            log.error("Не удалось прочитать выгрузку {}: {}", job.getFile(), e.getMessage(), e);
+            job.setStatus(CatalogImport.Status.FAILED);
+            save(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Импорт {} прерван, продолжится после перезапуска", job.getFile());
+        } catch (Exception e) {
+            log.error("Импорт {} остановлен из-за ошибки, продолжится при следующей проверке: {}",
+                    job.getFile(), e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Фаза 1: разбор файла в catalog_import_item. Возвращает false, если импорт нужно
+     * прервать (узел перестал быть лидером).
+     */
+    private boolean stage(CatalogImport job) throws IOException {
+        long skip = job.getLinesRead();
+        if (skip > 0) {
+            log.info("Импорт {}: продолжаем разбор со строки {}", job.getFile(), skip + 1);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(Path.of(job.getFile())), StandardCharsets.UTF_8))) {
+            List<ExportEntry> batch = new ArrayList<>(batchSize);
+            long line = 0;
+            long malformed = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                if (++line <= skip) {
+                    continue;
+                }
+
+                try {
+                    ExportEntry entry = exportReader.readValue(text);
+                    if (!entry.adult() && !entry.video()) {
+                        batch.add(entry);
+                    }
+                } catch (IOException e) {
+                    malformed++;
+                }
+
+                if (line % batchSize == 0) {
+                    stageBatch(job, batch, line);
+                    batch.clear();
+                    if (!clusterService.isLeader()) {
+                        log.info("Импорт {} приостановлен на строке {}: узел больше не лидер", job.getFile(), line);
+                        return false;
+                    }
+                }
+            }
+
+            stageBatch(job, batch, line);
+            job.setStatus(CatalogImport.Status.ENRICHING);
+            save(job);
+            log.info("Выгрузка {} разобрана: {} строк, в очереди {} фильмов, пропущено битых строк {}",
+                    job.getFile(), line, job.getStaged(), malformed);
+            return true;
+        }
+    }
+
+    private void stageBatch(CatalogImport job, List<ExportEntry> batch, long line) {
+        SqlParameterSource[] rows = batch.stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("tmdbId", entry.id())
+                        .addValue("popularity", entry.popularity()))
+                .toArray(SqlParameterSource[]::new);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO catalog_import_item (tmdb_id, popularity, status) VALUES (:tmdbId, :popularity, 0)
+                    ON DUPLICATE KEY UPDATE popularity = VALUES(popularity)
+                    """, rows);
+            job.setLinesRead(line);
+            job.setStaged(job.getStaged() + rows.length);
+            save(job);
+        });
+    }
+
+    /**
+     * Фаза 2: подробности ожидающих фильмов из TMDb. Фильмы, уже попавшие в каталог
+     * другим путём (поиск, популярные), отмечаются загруженными без запроса.
+     */
+    private boolean enrich(CatalogImport job) throws InterruptedException {
+        ensureFetchers();
+        while (true) {
+            if (!clusterService.isLeader()) {
+                log.info("Импорт {} приостановлен: узел больше не лидер", job.getFile());
+                return false;
+            }
+
+            List<Long> pending = jdbcTemplate.queryForList(
+                    "SELECT tmdb_id FROM catalog_import_item WHERE status = 0 ORDER BY popularity DESC LIMIT :limit",
+                    Map.of("limit", enrichBatchSize), Long.class);
+            if (pending.isEmpty()) {
+                return true;
+            }
+
+            Set<Long> known = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT movie_id FROM movie WHERE movie_id IN (:ids)", Map.of("ids", pending), Long.class));
+            List<Long> done = new ArrayList<>(known);
+            List<Future<Map<String, Object>>> requests = new ArrayList<>();
+            List<Long> requested = new ArrayList<>();
+            for (Long tmdbId : pending) {
+                if (!known.contains(tmdbId)) {
+                    requested.add(tmdbId);
+                    requests.add(fetchers.submit(() -> {
+                        rateLimiter.acquire();
+                        return tmdbService.getMovieDetails(tmdbId, tmdbService.getDefaultLanguage());
+                    }));
+                }
+            }
+
+            List<SqlParameterSource> movies = new ArrayList<>(requests.size());
+            List<Long> failed = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                Map<String, Object> details = await(requests.get(i));
+                if (details == null) {
+                    failed.add(requested.get(i));
+                } else {
+                    movies.add(toRow(requested.get(i), details));
+                    done.add(requested.get(i));
+                }
+            }
+            // Ни одного ответа на всю пачку - скорее сбой TMDb, чем удалённые фильмы: попробуем позже
+            if (!requested.isEmpty() && failed.size() == requested.size()) {
+                log.warn("Импорт {}: TMDb не ответил ни на один из {} запросов, повтор при следующей проверке",
+                        job.getFile(), requested.size());
+                return false;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate("""
+                        INSERT INTO movie (movie_id, title, description, release_date, rating, vote_count, popularity, genre_ids, poster_path)
+                        VALUES (:movieId, :title, :description, :releaseDate, :rating, :voteCount, :popularity, :genreIds, :posterPath)
+                        ON DUPLICATE KEY UPDATE movie_id = VALUES(movie_id)
+                        """, movies.toArray(SqlParameterSource[]::new));
+                markItems(done, 1);
+                markItems(failed, 2);
+                job.setEnriched(job.getEnriched() + movies.size());
+                job.setFailed(job.getFailed() + failed.size());
+                save(job);
+            });
+            if (!movies.isEmpty()) {
+                changeFeedService.publish(ChangeFeedService.Topic.MOVIES, null);
+            }
+            movies.forEach(movie -> posterService.prefetch((String) movie.getValue("posterPath")));
+        }
+    }
+
+    private static SqlParameterSource toRow(Long tmdbId, Map<String, Object> details) {
+        String title = (String) details.getOrDefault("title", "Нет названия");
+        if (title != null && title.length() > MAX_TITLE_LENGTH) {
+            title = title.substring(0, MAX_TITLE_LENGTH);
+        }
+        String releaseDate = (String) details.get("release_date");
+
+        // В подробностях жанры приходят объектами {id, name}, а не списком genre_ids, как в списках фильмов
+        StringBuilder genreIds = new StringBuilder();
+        for (Object genre : (List<?>) details.getOrDefault("genres", List.of())) {
+            if (genre instanceof Map<?, ?> map && map.get("id") != null) {
+                if (!genreIds.isEmpty()) {
+                    genreIds.append('_');
+                }
+                genreIds.append(map.get("id"));
+            }
+        }
+
+        return new MapSqlParameterSource()
+                .addValue("movieId", tmdbId)
+                .addValue("title", title)
+                .addValue("description", details.getOrDefault("overview", "Нет описания"))
+                .addValue("releaseDate", releaseDate == null || releaseDate.isEmpty() ? "Не известно" : releaseDate.replace("-", "."))
+                .addValue("rating", CommandProcessingService.parseRating(details.get("vote_average")))
+                .addValue("voteCount", CommandProcessingService.parseVoteCount(details.get("vote_count")))
+                .addValue("popularity", CommandProcessingService.parseRating(details.get("popularity")))
+                .addValue("genreIds", genreIds.toString())
+                .addValue("posterPath", details.get("poster_path"));
+    }
+
+    private void markItems(List<Long> tmdbIds, int status) {
+        if (!tmdbIds.isEmpty()) {
+            jdbcTemplate.update("UPDATE catalog_import_item SET status = :status WHERE tmdb_id IN (:ids)",
+                    Map.of("status", status, "ids", tmdbIds));
+        }
+    }
+
+    private static Map<String, Object> await(Future<Map<String, Object>> request) throws InterruptedException {
+        try {
+            return request.get();
+        } catch (ExecutionException e) {
+            log.warn("Не удалось загрузить подробности фильма: {}", e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void ensureFetchers() {
+        if (fetchers == null) {
+            fetchers = Executors.newFixedThreadPool(parallelism);
+            rateLimiter = new RateLimiter(rate);
+        }
+    }
+
+    private void save(CatalogImport job) {
+        job.setUpdatedAt(Instant.now());
+        catalogImportRepository.save(job);
+    }
+
+    private Optional<CatalogImport> findUnfinished() {
+        return catalogImportRepository.findFirstByStatusInOrderByIdAsc(
+                List.of(CatalogImport.Status.STAGING, CatalogImport.Status.ENRICHING));
+    }
+
+    // Выгрузки TMDb сжаты gzip; несжатый файл (.json) удобен для проверки на небольших данных
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+}
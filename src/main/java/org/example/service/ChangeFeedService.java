@@ -0,0 +1,131 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.ClusterEvent;
+import org.example.repository.ClusterEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Лёгкая лента изменений поверх таблицы cluster_event. Узел, изменивший данные,
+ * пишет строку, остальные узлы периодически дочитывают новые строки и сбрасывают
+ * свои локальные кэши (пользователи, словарь жанров, индекс фильмов).
+ * <p>
+ * Автоинкрементный id выдаётся при вставке, а видна строка после коммита, поэтому событие длинной
+ * транзакции (обход популярных фильмов) может появиться уже после событий с большими id.
+ * Пропущенные курсором id запоминаются и перечитываются, пока не истечёт gap-timeout
+ * (откатившаяся транзакция своё событие так и не запишет).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChangeFeedService {
+
+    public enum Topic { USERS, GENRES, MOVIES }
+
+    private final ClusterEventRepository clusterEventRepository;
+    private final ClusterService clusterService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${spring.cluster.change-feed.retention}")
+    private Duration retention;
+
+    @Value("${spring.cluster.change-feed.gap-timeout}")
+    private Duration gapTimeout;
+
+    @Value("${spring.cluster.change-feed.max-gaps}")
+    private int maxGaps;
+
+    private volatile long lastSeenId;
+    private final Map<Long, Instant> gaps = new HashMap<>(); // Пропущенный id -> до какого момента его ждать
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (clusterService.isEnabled()) {
+            lastSeenId = clusterEventRepository.findMaxId();
+            log.info("Лента изменений читается начиная с события {}", lastSeenId);
+        }
+    }
+
+    /**
+     * Сбрасывает кэш на этом узле сразу, а на остальных - при следующем опросе ленты.
+     */
+    public void publish(Topic topic, String entityKey) {
+        eventPublisher.publishEvent(new CacheInvalidationEvent(topic, entityKey));
+
+        if (!clusterService.isEnabled()) {
+            return;
+        }
+
+        ClusterEvent event = new ClusterEvent();
+        event.setTopic(topic.name());
+        event.setEntityKey(entityKey);
+        event.setOriginNode(clusterService.getNodeId());
+        event.setCreatedAt(Instant.now());
+        clusterEventRepository.save(event);
+    }
+
+    @Scheduled(fixedDelayString = "${spring.cluster.change-feed.poll-interval}")
+    public synchronized void poll() {
+        if (!clusterService.isEnabled()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        gaps.values().removeIf(deadline -> deadline.isBefore(now));
+        if (!gaps.isEmpty()) {
+            for (ClusterEvent event : clusterEventRepository.findByIdIn(List.copyOf(gaps.keySet()))) {
+                gaps.remove(event.getId());
+                deliver(event);
+            }
+        }
+
+        List<ClusterEvent> events;
+        do {
+            events = clusterEventRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastSeenId);
+            for (ClusterEvent event : events) {
+                for (long id = lastSeenId + 1; id < event.getId(); id++) {
+                    if (gaps.size() >= maxGaps) {
+                        log.warn("Слишком много пропусков в ленте изменений, события до {} могут быть потеряны", event.getId());
+                        break;
+                    }
+                    gaps.put(id, now.plus(gapTimeout));
+                }
+                lastSeenId = event.getId();
+                deliver(event);
+            }
+        } while (events.size() == 500);
+    }
+
+    private void deliver(ClusterEvent event) {
+        if (clusterService.getNodeId().equals(event.getOriginNode())) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new CacheInvalidationEvent(Topic.valueOf(event.getTopic()), event.getEntityKey()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Неизвестная тема события в ленте изменений: {}", event.getTopic());
+        }
+    }
+
+    @Transactional
+    @Scheduled(cron = "0 */10 * * * *")
+    public void purgeOldEvents() {
+        if (clusterService.isEnabled() && clusterService.isLeader()) {
+            int removed = clusterEventRepository.deleteOlderThan(Instant.now().minus(retention));
+            log.debug("Удалено {} старых событий ленты изменений", removed);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Предохранитель внешнего сервиса по доле ошибок среди последних {@code window} вызовов.
+ * <p>
+ * Когда ошибок не меньше {@code failureRate} (и вызовов в окне не меньше minCalls), цепь
+ * размыкается: вызовы на openDuration запрещены, и вызывающий код сразу переходит на запасной
+ * путь, не дожидаясь таймаутов. Затем проходит один пробный вызов: успех замыкает цепь,
+ * ошибка размыкает её снова. Общий для всех потоков, которые его вызывают.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] outcomes; // Кольцо исходов последних вызовов, true - ошибка
+    private final int minCalls;
+    private final double failureRate;
+    private final long openNanos;
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    public CircuitBreaker(int window, int minCalls, double failureRate, long openDuration, TimeUnit unit) {
+        if (window <= 0 || minCalls <= 0 || minCalls > window) {
+            throw new IllegalArgumentException("Некорректное окно предохранителя: " + window + "/" + minCalls);
+        }
+        this.outcomes = new boolean[window];
+        this.minCalls = minCalls;
+        this.failureRate = failureRate;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Можно ли выполнить вызов. В полуразомкнутом состоянии разрешается только один пробный
+     * вызов; его исход нужно сообщить через {@link #onSuccess} или {@link #onFailure}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+            probing = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minCalls && failures >= failureRate * calls) {
+            open();
+        }
+    }
+
+    public synchronized State state() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (calls == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        probing = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probing = false;
+        calls = 0;
+        failures = 0;
+        next = 0;
+    }
+}
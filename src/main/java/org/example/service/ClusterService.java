@@ -0,0 +1,203 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.InternalApiConfig;
+import org.example.entity.ClusterNode;
+import org.example.repository.ClusterLeaseRepository;
+import org.example.repository.ClusterNodeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Многоузловой режим: членство узлов по сигналам жизни в таблице cluster_node,
+ * распределение чатов по узлам консистентным хешированием по chatId и
+ * выбор лидера через аренду строки в таблице cluster_lease.
+ * <p>
+ * Лидер держит long polling сессию Telegram и выполняет плановые обходы TMDb,
+ * остальные узлы принимают пересланные им обновления своих чатов.
+ * При {@code spring.cluster.enabled=false} узел единственный: он лидер и владеет всеми чатами.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterService {
+    private static final String LEADER_LEASE = "leader";
+    private static final int VIRTUAL_NODES = 64;
+
+    private final ClusterNodeRepository clusterNodeRepository;
+    private final ClusterLeaseRepository clusterLeaseRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Value("${spring.cluster.enabled}")
+    private boolean enabled;
+
+    @Value("${spring.cluster.node-id}")
+    private String nodeId;
+
+    @Value("${spring.cluster.advertised-url}")
+    private String advertisedUrl;
+
+    @Value("${spring.cluster.lease-duration}")
+    private Duration leaseDuration;
+
+    @Value("${spring.cluster.node-timeout}")
+    private Duration nodeTimeout;
+
+    @Value("${spring.internal.secret}")
+    private String secret;
+
+    private volatile boolean leader;
+    private volatile NavigableMap<Long, ClusterNode> ring = new TreeMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            leader = true;
+            return;
+        }
+
+        if (secret.isBlank()) {
+            throw new IllegalStateException("Для многоузлового режима задайте spring.internal.secret: без него узлы не примут пересланные обновления");
+        }
+        log.info("Узел {} запускается в многоузловом режиме, адрес {}", nodeId, advertisedUrl);
+        heartbeat();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${spring.cluster.heartbeat-interval}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Instant now = Instant.now();
+                ClusterNode self = clusterNodeRepository.findByNodeId(nodeId).orElseGet(ClusterNode::new);
+                self.setNodeId(nodeId);
+                self.setBaseUrl(advertisedUrl);
+                self.setLastHeartbeat(now);
+                clusterNodeRepository.save(self);
+
+                clusterLeaseRepository.createIfAbsent(LEADER_LEASE, now);
+                boolean acquired = clusterLeaseRepository.tryAcquire(LEADER_LEASE, nodeId, now.plus(leaseDuration), now) > 0;
+                updateLeadership(acquired);
+
+                rebuildRing(clusterNodeRepository.findByLastHeartbeatAfter(now.minus(nodeTimeout)));
+            });
+        } catch (Exception e) {
+            // Без связи с базой нельзя гарантировать, что аренда ещё наша
+            log.error("Не удалось обновить состояние узла {}: {}", nodeId, e.getMessage());
+            updateLeadership(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled && leader) {
+            transactionTemplate.executeWithoutResult(status -> clusterLeaseRepository.release(LEADER_LEASE, nodeId));
+            log.info("Узел {} освободил аренду лидера", nodeId);
+        }
+    }
+
+    /**
+     * Обрабатывается ли чат этим узлом. Пока кольцо пустое (узел ещё не видел
+     * ни одного сигнала жизни), все чаты считаются своими.
+     */
+    public boolean isLocal(Long chatId) {
+        ClusterNode owner = ownerOf(chatId);
+        return owner == null || nodeId.equals(owner.getNodeId());
+    }
+
+    /**
+     * Пересылает обновление узлу-владельцу чата.
+     *
+     * @return {@code true}, если владелец принял обновление
+     */
+    public boolean forward(Long chatId, Update update) {
+        ClusterNode owner = ownerOf(chatId);
+        if (owner == null || nodeId.equals(owner.getNodeId())) {
+            return false;
+        }
+
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(InternalApiConfig.SECRET_HEADER, secret);
+            restTemplate.postForEntity(owner.getBaseUrl() + "/internal/cluster/updates", new HttpEntity<>(update, headers), Void.class);
+            return true;
+        } catch (Exception e) {
+            log.warn("Узел {} не принял обновление чата {}: {}", owner.getNodeId(), chatId, e.getMessage());
+            return false;
+        }
+    }
+
+    private ClusterNode ownerOf(Long chatId) {
+        NavigableMap<Long, ClusterNode> current = ring;
+        if (!enabled || current.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Long, ClusterNode> entry = current.ceilingEntry(hash(chatId));
+        return entry != null ? entry.getValue() : current.firstEntry().getValue();
+    }
+
+    private void rebuildRing(List<ClusterNode> liveNodes) {
+        NavigableMap<Long, ClusterNode> newRing = new TreeMap<>();
+        for (ClusterNode node : liveNodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                newRing.put(hash(node.getNodeId().hashCode() * 31L + i), node);
+            }
+        }
+
+        if (newRing.size() != ring.size()) {
+            log.info("Состав кластера изменился, живых узлов: {}", liveNodes.size());
+        }
+        ring = newRing;
+    }
+
+    private void updateLeadership(boolean acquired) {
+        if (acquired != leader) {
+            leader = acquired;
+            log.info("Узел {} {} лидером", nodeId, acquired ? "стал" : "перестал быть");
+            eventPublisher.publishEvent(new LeadershipChangedEvent(acquired));
+        }
+    }
+
+    // SplitMix64: равномерно размазывает последовательные chatId и номера виртуальных узлов по кольцу
+    private static long hash(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
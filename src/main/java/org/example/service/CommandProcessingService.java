@@ -5,21 +5,30 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.example.entity.Movie;
-import org.example.entity.UserMovieRating;
+import org.example.entity.MovieNeighbour;
+import org.example.entity.UserRecommendation;
 import org.example.entity.Usr;
 import org.example.repository.MovieRepository;
+import org.example.repository.RatedGenresView;
+import org.example.repository.RatedMovieView;
 import org.example.repository.UserMovieRatingRepository;
 import org.example.repository.UsrRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -34,9 +43,29 @@ public class CommandProcessingService {
     private final MovieRepository movieRepository;
     private final UsrRepository usrRepository;
     private final UserMovieRatingRepository userMovieRatingRepository;
+    private final ClusterService clusterService;
+    private final ChangeFeedService changeFeedService;
+    private final MovieIndex movieIndex;
+    private final RecommendationService recommendationService;
+    private final MovieCardRenderer movieCardRenderer;
+    private final MovieLocalizationService movieLocalizationService;
+    private final MovieNeighbourService movieNeighbourService;
+    private final MovieTitleIndex movieTitleIndex;
+    private final BotMetrics botMetrics;
+    private final PosterService posterService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MovieStatsService movieStatsService;
+
+    @Value("${spring.export.list-limit}")
+    private int listLimit;
 
     private static final Logger logger = LoggerFactory.getLogger(CommandProcessingService.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int SEARCH_RESULTS = 5;
+    // Без TMDb "популярный" фильм - самый обсуждаемый из стольких случайных фильмов каталога
+    private static final int POPULAR_SAMPLE = 20;
+    // Страниц фильмов в прокате за ночной обход: по 20 фильмов, этого хватает на весь текущий прокат
+    private static final int NOW_PLAYING_PAGES = 5;
 
     public String searchMovie(Update update) {
         Long chatId = update.getMessage().getChatId();
@@ -45,6 +74,7 @@ public class CommandProcessingService {
         Usr user = usrRepository.findByChatId(chatId)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
 
+        List<Movie> found = null;
         if (response != null && response.containsKey("results")) {
             List<Map<String, Object>> movies = (List<Map<String, Object>>) response.get("results");
 
@@ -54,25 +84,30 @@ public class CommandProcessingService {
                 return rating2.compareTo(rating1);
             });
 
-            StringBuilder result = new StringBuilder();
-            for (int i = 0; i < Math.min(5, movies.size()); i++) {
+            found = new ArrayList<>();
+            for (int i = 0; i < Math.min(SEARCH_RESULTS, movies.size()); i++) {
                 Map<String, Object> movieData = movies.get(i);
                 try {
-                    Movie movie = saveOrUpdateMovie(movieData);
-                    double similarity = computeCosineSimilarity(getUserGenres(user), createGenreVector(movie.getGenreIds()));
-                    result.append(String.format("""
-                            %s
-                            🤝 *Сходство:* %s
-                            
-                            """,
-                            movieToString(movie),
-                            similarity != 0 ? String.valueOf((100 + similarity * 100) / 2).substring(0, 4) + "%": "Не известно")
-
-                    );
+                    found.add(saveOrUpdateMovie(movieData));
                 } catch (Exception e) {
                     logger.error("Ошибка обработки данных фильма: {}", movieData, e);
                 }
             }
+        } else if (response == null) {
+            // TMDb недоступен: ищем по названиям фильмов, которые уже есть в каталоге
+            botMetrics.tmdbFallback("search");
+            found = findLocalMovies(movieTitleIndex.search(messageText, SEARCH_RESULTS));
+        }
+
+        if (found != null) {
+            String language = movieLocalizationService.languageOf(user);
+            movieLocalizationService.localize(found, language);
+            Map<String, Double> userGenres = getUserGenres(user);
+            StringBuilder result = new StringBuilder();
+            for (Movie movie : found) {
+                double similarity = computeCosineSimilarity(userGenres, createGenreVector(movie.getGenreIds()));
+                result.append(movieCardRenderer.render(movie, similarity, language)).append("\n\n");
+            }
 
             return result.toString().trim();
         }
@@ -80,20 +115,8 @@ public class CommandProcessingService {
         return "Фильмы не найдены.";
     }
 
-    public String movieToString(Movie movie) {
-        return String.format(
-                """
-                        🎬 *Название:* %s
-                        📝 *Описание:* %s
-                        🎭 *Жанры:* %s
-                        📜 *Релиз:* %s
-                        ⭐ *Рейтинг:* %s""",
-                movie.getTitle(),
-                truncateDescription(movie.getDescription()),
-                tmdbService.getGenreNames(movie.getGenreIds()),
-                movie.getReleaseDate(),
-                movie.getRating() != null ? movie.getRating().toString() : "Нет рейтинга"
-        );
+    public static Integer parseVoteCount(Object voteCount) {
+        return voteCount instanceof Number number ? number.intValue() : null;
     }
 
     public static Double parseRating(Object ratingObj) {
@@ -107,6 +130,7 @@ public class CommandProcessingService {
         }
     }
 
+    @Transactional(readOnly = true)
     public String getPersonalRecommendation(String chatId) {
         logger.info("Получение персональной рекомендации для пользователя с chatId: {}", chatId);
 
@@ -118,8 +142,7 @@ public class CommandProcessingService {
 
         logger.info("Пользователь найден: {} ({} {})", user.getUsername(), user.getFirstName(), user.getLastName());
 
-        Map<String, Double> userGenres = getUserGenres(user);
-        if (userGenres.isEmpty()) {
+        if (user.getGenrePreferences() == null) {
             logger.warn("У пользователя с chatId {} отсутствуют оценки фильмов.", chatId);
             return """
                     🤷‍♂️ *У нас нет достаточно данных, чтобы предложить вам рекомендации.*
@@ -130,32 +153,18 @@ public class CommandProcessingService {
                     🌀 *Случайный фильм*""";
         }
 
-        List<Movie> movies = movieRepository.findRandomMovies(30);
-
-        if (movies.isEmpty()) {
+        if (movieIndex.size() == 0) {
             logger.warn("В базе данных отсутствуют фильмы для анализа.");
             return """
                     😞 *К сожалению, у нас пока нет фильмов для анализа.* Попробуйте позже!""";
         }
 
-        logger.info("Отобрано {} фильмов для анализа.", movies.size());
-
-        Map<Movie, Double> similarityMap = new HashMap<>();
-        for (Movie movie : movies) {
-            Map<String, Integer> movieVector = createGenreVector(movie.getGenreIds());
-            double similarity = computeCosineSimilarity(userGenres, movieVector);
-
-            if (similarity > 0) {
-                similarityMap.put(movie, similarity);
-            }
-
-            logger.debug("Косинусное сходство для фильма '{}' (id: {}): {}", movie.getTitle(), movie.getMovieId(), similarity);
-        }
-
-        List<Map.Entry<Movie, Double>> sortedMovies = similarityMap.entrySet()
-                .stream()
-                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
+        // Из готового top-N каждый раз показываем случайные 5, чтобы подборка не повторялась
+        List<UserRecommendation> recommendations = new ArrayList<>(recommendationService.getRecommendations(user));
+        Collections.shuffle(recommendations);
+        List<UserRecommendation> sortedMovies = recommendations.stream()
                 .limit(5)
+                .sorted(Comparator.comparingInt(UserRecommendation::getPosition))
                 .toList();
 
         if (sortedMovies.isEmpty()) {
@@ -169,40 +178,85 @@ public class CommandProcessingService {
                     🌀 *Случайный фильм*""";
         }
 
+        String language = movieLocalizationService.languageOf(user);
+        // Id берётся из ленивой ссылки без её загрузки, сами фильмы - без описаний
+        Map<Long, Movie> movies = movieRepository.findCards(sortedMovies.stream().map(row -> row.getMovie().getId()).toList());
+        movieLocalizationService.localize(movies.values(), language);
         StringBuilder response = new StringBuilder();
-        for (Map.Entry<Movie, Double> entry : sortedMovies) {
-            Movie movie = entry.getKey();
-            double similarity = entry.getValue();
-            response.append(String.format(
-                    """
-                            %s
-                            🤝 *Сходство:* %s
-                            
-                            """,
-                    movieToString(movie),
-                    similarity != 0 ? String.valueOf((100 + similarity * 100) / 2).substring(0, 4) + "%" : "Не известно"
-            ));
+        for (UserRecommendation recommendation : sortedMovies) {
+            Movie movie = movies.get(recommendation.getMovie().getId());
+            response.append(movieCardRenderer.render(movie, recommendation.getSimilarity(), language)).append("\n\n");
         }
 
         logger.info("Рекомендация сформирована для пользователя с chatId: {}", chatId);
         return response.toString().trim();
     }
 
-    private String truncateDescription(String description) {
-        int maxLength = 2000;
-        if (description != null && description.length() > maxLength) {
-            return description.substring(0, maxLength) + "...";
+    /**
+     * Карточки фильмов, похожих на {@code movie}, из готового списка соседей.
+     * Фильмы, которые пользователь уже оценил, не показываются.
+     */
+    @Transactional(readOnly = true)
+    public String getSimilarMovies(String chatId, Movie movie) {
+        Usr user = usrRepository.findByChatId(Long.parseLong(chatId))
+                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
+
+        Set<Long> rated = userMovieRatingRepository.findRatedGenresByUserId(user.getId()).stream()
+                .map(RatedGenresView::getMovieId)
+                .collect(Collectors.toSet());
+        List<MovieNeighbour> neighbours = movieNeighbourService.getNeighbours(movie.getId()).stream()
+                .filter(neighbour -> !rated.contains(neighbour.getNeighbour().getId()))
+                .limit(5)
+                .toList();
+        if (neighbours.isEmpty()) {
+            return """
+                    🤷‍♂️ *Похожих фильмов пока не нашлось.*""";
+        }
+
+        String language = movieLocalizationService.languageOf(user);
+        movieLocalizationService.localize(neighbours.stream().map(MovieNeighbour::getNeighbour).toList(), language);
+        StringBuilder response = new StringBuilder();
+        for (MovieNeighbour neighbour : neighbours) {
+            response.append(movieCardRenderer.render(neighbour.getNeighbour(), neighbour.getSimilarity(), language)).append("\n\n");
+        }
+        return response.toString().trim();
+    }
+
+    /**
+     * Сохраняет оценку фильма пользователем в одной транзакции: строка пользователя читается
+     * с SELECT ... FOR UPDATE, поэтому одновременные нажатия одного пользователя выполняются
+     * по очереди и прежняя оценка не меняется между чтением и записью. Новая оценка - та, у
+     * которой прежней нет; повтор той же оценки ничего не пишет и не меняет суммы по фильму.
+     *
+     * @return прежняя оценка или null, если фильм оценён впервые
+     */
+    public Integer saveUserRating(Long chatId, Long movieId, int rating) {
+        Usr user = usrRepository.findByChatIdForUpdate(chatId)
+                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
+        Integer previous = userMovieRatingRepository.findRating(user.getId(), movieId).orElse(null);
+        if (previous != null && previous == rating) {
+            return previous;
         }
-        return description != null ? description : "Описание недоступно.";
+
+        userMovieRatingRepository.upsert(user.getId(), movieId, rating);
+        user.setGenrePreferences(mapToJson(getUserGenres(user)));
+        user.setRecommendationsDirty(true);
+        usrRepository.save(user);
+        movieStatsService.recordRating(movieId, previous, rating);
+        return previous;
     }
 
+    @Transactional(readOnly = true)
     public Map<String, Double> getUserGenres(Usr user) {
-        List<UserMovieRating> ratings = userMovieRatingRepository.findByUserId(user.getId());
+        return aggregateGenres(userMovieRatingRepository.findRatedGenresByUserId(user.getId()));
+    }
+
+    public static Map<String, Double> aggregateGenres(List<? extends RatedGenresView> ratings) {
         Map<String, Double> genreWeights = new HashMap<>();
 
-        for (UserMovieRating rating : ratings) {
+        for (RatedGenresView rating : ratings) {
             int userRating = rating.getRating();
-            String[] genres = rating.getMovie().getGenreIds().split("_");
+            String[] genres = rating.getGenreIds().split("_");
 
             for (String genre : genres) {
                 genreWeights.put(genre, genreWeights.getOrDefault(genre, 0.0) + (userRating - 5));
@@ -266,45 +320,79 @@ public class CommandProcessingService {
         return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
     }
 
+    /**
+     * Случайный популярный фильм TMDb, а если TMDb недоступен - один из самых обсуждаемых
+     * фильмов каталога.
+     */
+    public Movie getRandomPopularMovie() {
+        Map<String, Object> randomMovie = tmdbService.getRandomPopularMovie();
+        if (randomMovie != null) {
+            return saveOrUpdateMovie(randomMovie);
+        }
+        botMetrics.tmdbFallback("popular");
+        return getLocalRandomMovie(POPULAR_SAMPLE);
+    }
+
     public Movie getRandomMovieForRating() {
         Map<String, Object> randomMovie = tmdbService.getRandomMovieFromAll();
+        if (randomMovie == null) {
+            botMetrics.tmdbFallback("random");
+            return getLocalRandomMovie(1);
+        }
 
-        if (randomMovie != null) {
-            Long movieId = Long.valueOf(randomMovie.getOrDefault("id", 0).toString());
-            return movieRepository.findByMovieId(movieId).orElseGet(() -> {
-                Movie newMovie = new Movie();
-                newMovie.setMovieId(movieId);
-                newMovie.setReleaseDate((String) randomMovie.getOrDefault("release_date", "Не известно"));
-                newMovie.setTitle((String) randomMovie.getOrDefault("title", "Нет названия"));
-                newMovie.setRating(parseRating(randomMovie.get("vote_average")));
-                newMovie.setDescription((String) randomMovie.getOrDefault("overview", "Описание недоступно"));
-
-                StringBuilder stringBuilder = new StringBuilder();
-                ((List<Integer>) randomMovie.getOrDefault("genre_ids", Collections.emptyList()))
-                        .forEach(genreId -> stringBuilder.append(genreId).append("_"));
-                if (stringBuilder.length() > 0) {
-                    stringBuilder.deleteCharAt(stringBuilder.length() - 1);
-                }
-                newMovie.setGenreIds(stringBuilder.toString());
+        Long movieId = Long.valueOf(randomMovie.getOrDefault("id", 0).toString());
+        return movieRepository.findByMovieId(movieId).orElseGet(() -> {
+            Movie newMovie = new Movie();
+            newMovie.setMovieId(movieId);
+            newMovie.setReleaseDate((String) randomMovie.getOrDefault("release_date", "Не известно"));
+            newMovie.setTitle((String) randomMovie.getOrDefault("title", "Нет названия"));
+            newMovie.setRating(parseRating(randomMovie.get("vote_average")));
+            newMovie.setVoteCount(parseVoteCount(randomMovie.get("vote_count")));
+            newMovie.setPopularity(parseRating(randomMovie.get("popularity")));
+            newMovie.setDescription((String) randomMovie.getOrDefault("overview", "Описание недоступно"));
+            newMovie.setPosterPath((String) randomMovie.get("poster_path"));
+
+            StringBuilder stringBuilder = new StringBuilder();
+            ((List<Integer>) randomMovie.getOrDefault("genre_ids", Collections.emptyList()))
+                    .forEach(genreId -> stringBuilder.append(genreId).append("_"));
+            if (stringBuilder.length() > 0) {
+                stringBuilder.deleteCharAt(stringBuilder.length() - 1);
+            }
+            newMovie.setGenreIds(stringBuilder.toString());
+
+            movieRepository.save(newMovie);
+            posterService.prefetch(newMovie.getPosterPath());
+            // Новый фильм должен попасть в индекс и получить список похожих, как в saveOrUpdateMovie
+            changeFeedService.publish(ChangeFeedService.Topic.MOVIES, movieId.toString());
+            return newMovie;
+        });
+    }
 
-                movieRepository.save(newMovie);
-                return newMovie;
-            });
-        }
+    /**
+     * Случайный фильм из таблицы movie, выбранный по индексу в памяти (см. MovieIndex.randomMovieId),
+     * без ORDER BY RAND() по всему каталогу.
+     */
+    private Movie getLocalRandomMovie(int sample) {
+        long movieId = movieIndex.randomMovieId(sample);
+        Optional<Movie> movie = movieId != 0 ? movieRepository.findById(movieId) : Optional.empty();
+        return movie.or(() -> movieRepository.findRandomMovies(1).stream().findFirst())
+                .orElseThrow(() -> new IllegalArgumentException("TMDb недоступен, а в каталоге нет фильмов."));
+    }
 
-        throw new IllegalArgumentException("Не удалось получить случайный фильм из базы TMDb.");
+    // Фильмы по Movie.id в порядке списка
+    private List<Movie> findLocalMovies(List<Long> movieIds) {
+        Map<Long, Movie> movies = movieRepository.findCards(movieIds);
+        return movieIds.stream().map(movies::get).filter(movie -> movie != null).toList();
     }
 
+    @Transactional(readOnly = true)
     public String getAllRatedMovies(String chatId) {
         Long userChatId = Long.parseLong(chatId);
 
         Usr user = usrRepository.findByChatId(userChatId)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
 
-        List<UserMovieRating> ratings = userMovieRatingRepository.findByUserId(user.getId())
-                .stream()
-                .sorted((r1, r2) -> Long.compare(r2.getId(), r1.getId()))
-                .toList();
+        List<RatedMovieView> ratings = userMovieRatingRepository.findRatedMoviesByUserId(user.getId(), PageRequest.ofSize(listLimit));
 
         if (ratings.isEmpty()) {
             return """
@@ -315,6 +403,9 @@ public class CommandProcessingService {
                     🌀 *Случайный фильм*""";
         }
 
+        String language = movieLocalizationService.languageOf(user);
+        Map<Long, MovieLocalizationService.Localized> localized = movieLocalizationService.localizeStored(
+                ratings.stream().map(RatedMovieView::getMovieId).toList(), language);
         return ratings.stream()
                 .map(rating -> String.format(
                         """
@@ -322,25 +413,62 @@ public class CommandProcessingService {
                                 ⭐ *Оценка*: %d
                                 🎭 *Жанры*: %s
                                 """,
-                        rating.getMovie().getTitle(),
+                        Optional.ofNullable(localized.get(rating.getMovieId()))
+                                .map(MovieLocalizationService.Localized::title)
+                                .orElse(rating.getTitle()),
                         rating.getRating(),
-                        tmdbService.getGenreNames(rating.getMovie().getGenreIds())
+                        tmdbService.getGenreNames(rating.getGenreIds(), language)
                 ))
-                .collect(Collectors.joining("\n---\n"));
+                .collect(Collectors.joining("\n---\n")) + moreRatings(user, ratings.size());
+    }
+
+    // Полная история не помещается в сообщения - её отдаёт "📤 Экспорт оценок" одним файлом
+    private String moreRatings(Usr user, int shown) {
+        if (shown < listLimit) {
+            return "";
+        }
+        long total = userMovieRatingRepository.countByUserId(user.getId());
+        return total > shown ? String.format("""
+
+                ---
+                📤 Показаны последние %d из %d оценок. Все оценки - кнопка *📤 Экспорт оценок*.""", shown, total) : "";
     }
 
     public Movie saveOrUpdateMovie(Map<String, Object> movieData) {
+        if (movieData == null) {
+            throw new IllegalArgumentException("Нет данных фильма от TMDb.");
+        }
         Long movieId = Long.valueOf(movieData.getOrDefault("id", 0).toString());
         Optional<Movie> existingMovie = movieRepository.findByMovieId(movieId);
 
         if (existingMovie.isEmpty()) {
             Movie newMovie = mapToMovie(movieData);
 
-            return movieRepository.save(newMovie);
+            Movie saved = movieRepository.save(newMovie);
+            posterService.prefetch(saved.getPosterPath());
+            changeFeedService.publish(ChangeFeedService.Topic.MOVIES, saved.getMovieId().toString());
+            return saved;
+        }
+
+        // Фильмы, сохранённые до появления числа голосов, получают его при следующей встрече в TMDb
+        Movie movie = existingMovie.get();
+        if (movie.getVoteCount() == null && movieData.get("vote_count") != null) {
+            movie.setVoteCount(parseVoteCount(movieData.get("vote_count")));
+            movie.setPopularity(parseRating(movieData.get("popularity")));
+            movie.setRating(parseRating(movieData.get("vote_average")));
+            movieRepository.save(movie);
+            changeFeedService.publish(ChangeFeedService.Topic.MOVIES, movie.getMovieId().toString());
         }
-        return existingMovie.get();
+        // Так же и путь постера
+        if (movie.getPosterPath() == null && movieData.get("poster_path") != null) {
+            movie.setPosterPath((String) movieData.get("poster_path"));
+            movieRepository.save(movie);
+        }
+        posterService.prefetch(movie.getPosterPath());
+        return movie;
     }
 
+    @Transactional(readOnly = true)
     public String getMostPersonalRecommendation(String chatId) {
         logger.info("Получение самого подходящего фильма для пользователя с chatId: {}", chatId);
 
@@ -352,8 +480,7 @@ public class CommandProcessingService {
 
         logger.info("Пользователь найден: {} ({} {})", user.getUsername(), user.getFirstName(), user.getLastName());
 
-        Map<String, Double> userGenres = getUserGenres(user);
-        if (userGenres.isEmpty()) {
+        if (user.getGenrePreferences() == null) {
             logger.warn("У пользователя с chatId {} отсутствуют оценки фильмов.", chatId);
             return """
                     🤷‍♂️ *У нас нет достаточно данных, чтобы предложить вам рекомендацию.*
@@ -364,44 +491,27 @@ public class CommandProcessingService {
                     🌀 *Случайный фильм*""";
         }
 
-        List<Movie> allMovies = movieRepository.findAll();
-        if (allMovies.isEmpty()) {
+        if (movieIndex.size() == 0) {
             logger.warn("В базе данных отсутствуют фильмы для анализа.");
             return """
                     😞 *К сожалению, у нас пока нет фильмов для анализа.*
                     Попробуйте позже!""";
         }
 
-        Movie bestMatch = null;
-        double maxSimilarity = -1;
-
-        for (Movie movie : allMovies) {
-            Map<String, Integer> movieVector = createGenreVector(movie.getGenreIds());
-            double similarity = computeCosineSimilarity(userGenres, movieVector);
-
-            logger.debug("Косинусное сходство для фильма '{}' (id: {}): {}", movie.getTitle(), movie.getMovieId(), similarity);
-
-            if (similarity > maxSimilarity) {
-                maxSimilarity = similarity;
-                bestMatch = movie;
-            }
-        }
-
-        if (bestMatch == null) {
+        List<UserRecommendation> recommendations = recommendationService.getRecommendations(user);
+        if (recommendations.isEmpty()) {
             logger.warn("Не удалось подобрать подходящий фильм для пользователя.");
             return """
                     🤷‍♂️ *К сожалению, мы не смогли подобрать подходящий фильм для вас.*""";
         }
 
-        logger.info("Лучший фильм для пользователя: {} (id: {}). Сходство: {}", bestMatch.getTitle(), bestMatch.getMovieId(), maxSimilarity);
+        UserRecommendation bestMatch = recommendations.get(0);
+        double maxSimilarity = bestMatch.getSimilarity();
+        Long movieId = bestMatch.getMovie().getId();
+        logger.info("Лучший фильм для пользователя: id {}. Сходство: {}", movieId, maxSimilarity);
 
-        return String.format(
-                """
-                        %s
-                        🤝 *Сходство:* %s""",
-                movieToString(bestMatch),
-                maxSimilarity != 0 ? String.valueOf((100 + maxSimilarity * 100) / 2).substring(0, 4) + "%" : "Не известно"
-        );
+        Movie movie = movieRepository.findCards(List.of(movieId)).get(movieId);
+        return movieCardRenderer.render(movie, maxSimilarity, movieLocalizationService.languageOf(user));
     }
 
     public static Movie mapToMovie(Map<String, Object> movieData) {
@@ -413,6 +523,9 @@ public class CommandProcessingService {
         newMovie.setReleaseDate(((String) movieData.getOrDefault("release_date", "Не известно")).replace("-", "."));
         newMovie.setDescription((String) movieData.getOrDefault("overview", "Нет описания"));
         newMovie.setRating(parseRating(movieData.get("vote_average")));
+        newMovie.setVoteCount(parseVoteCount(movieData.get("vote_count")));
+        newMovie.setPopularity(parseRating(movieData.get("popularity")));
+        newMovie.setPosterPath((String) movieData.get("poster_path"));
 
         StringBuilder genreBuilder = new StringBuilder();
         ((List<Integer>) movieData.getOrDefault("genre_ids", Collections.emptyList()))
@@ -427,11 +540,35 @@ public class CommandProcessingService {
 
     @Scheduled(cron = "0 0 0 * * *")
     public void cachePopularMovies() {
-        for (int i = 1; i <= 30; i++) {
-            Map<String, Object> response = tmdbService.fetchMoviesFromAllPages(i);
+        if (!clusterService.isLeader()) {
+            return;
+        }
 
-            if (response != null && response.containsKey("results")) {
-                ((List<Map<String, Object>>) response.get("results")).forEach(this::saveOrUpdateMovie);
+        // Id фильмов растут, так что добавленные обходом - те, что больше последнего id до него
+        long lastId = movieRepository.findMaxId();
+        Set<Long> added = new LinkedHashSet<>();
+        for (int i = 1; i <= 30 && tmdbService.isAvailable(); i++) {
+            saveCrawledPage(tmdbService.fetchMoviesFromAllPages(i), lastId, added);
+        }
+        // Среди лучших по рейтингу фильмов новинок почти нет: рейтинг набирается годами.
+        // Новинки для рассылки - фильмы, которые сейчас идут в кинотеатрах
+        for (int i = 1; i <= NOW_PLAYING_PAGES && tmdbService.isAvailable(); i++) {
+            saveCrawledPage(tmdbService.getNowPlayingMovies(i), lastId, added);
+        }
+
+        // Рассылка получает событие только после коммита сохранённых фильмов (BroadcastService.onNewMovies)
+        if (!added.isEmpty()) {
+            eventPublisher.publishEvent(new NewMoviesEvent(added));
+        }
+    }
+
+    private void saveCrawledPage(Map<String, Object> response, long lastId, Set<Long> added) {
+        if (response != null && response.containsKey("results")) {
+            for (Map<String, Object> movieData : (List<Map<String, Object>>) response.get("results")) {
+                Movie movie = saveOrUpdateMovie(movieData);
+                if (movie.getId() > lastId) {
+                    added.add(movie.getId());
+                }
             }
         }
     }
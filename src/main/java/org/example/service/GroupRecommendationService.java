@@ -0,0 +1,214 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.Movie;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Рекомендации "смотрим вместе" для групповых чатов.
+ * <p>
+ * Участники группы - те, кто пишет в ней боту или нажимает его кнопки (см. {@link #touch});
+ * их вкусы - уже сохранённые векторы жанров Usr.genrePreferences из личных чатов с ботом.
+ * Векторы участников, заходивших не позже member-ttl, нормируются (каждый участник весит
+ * одинаково, сколько бы фильмов он ни оценил) и складываются в один вектор группы:
+ * <ul>
+ *     <li>mean - средний вектор, фильм для большинства;</li>
+ *     <li>least-misery - по каждому жанру минимум среди участников: остаются только жанры,
+ *     которые нравятся всем. Если общих жанров нет, используется средний вектор.</li>
+ * </ul>
+ * Дальше группа ранжируется как один пользователь ({@link RecommendationService#score}),
+ * без фильмов, оценённых хоть одним участником. Группа из 10 человек стоит двух запросов
+ * к базе и одного прохода по индексу, а не 10 пересчётов getUserGenres.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GroupRecommendationService {
+    public enum Aggregation { MEAN, LEAST_MISERY }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final RecommendationService recommendationService;
+    private final MovieRepository movieRepository;
+    private final MovieCardRenderer movieCardRenderer;
+    private final MovieLocalizationService movieLocalizationService;
+
+    @Value("${spring.groups.aggregation}")
+    private String aggregationName;
+
+    @Value("${spring.groups.results}")
+    private int results;
+
+    @Value("${spring.groups.max-members}")
+    private int maxMembers;
+
+    @Value("${spring.groups.member-ttl}")
+    private Duration memberTtl;
+
+    @Value("${spring.groups.touch-interval}")
+    private Duration touchInterval;
+
+    @Value("${spring.groups.cache-size}")
+    private int cacheSize;
+
+    private Aggregation aggregation;
+    private Map<MemberKey, Long> touchedAt; // Когда участник последний раз записан в group_member, System.nanoTime
+
+    private record MemberKey(long groupChatId, long memberChatId) {
+    }
+
+    private record Member(long userId, Map<String, Double> genres) {
+    }
+
+    @PostConstruct
+    public void init() {
+        aggregation = Aggregation.valueOf(aggregationName.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        touchedAt = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MemberKey, Long> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        log.info("Рекомендации для групп: {}, участники за последние {}", aggregation, memberTtl);
+    }
+
+    /**
+     * Отмечает участника группы. Пишет в базу не чаще раза в touch-interval на участника,
+     * так что частые сообщения в группе не превращаются в запись на каждое.
+     *
+     * @param memberChatId Telegram id участника
+     */
+    public void touch(long groupChatId, long memberChatId) {
+        MemberKey key = new MemberKey(groupChatId, memberChatId);
+        long now = System.nanoTime();
+        Long last = touchedAt.get(key);
+        if (last != null && now - last < touchInterval.toNanos()) {
+            return;
+        }
+        touchedAt.put(key, now);
+
+        jdbcTemplate.update("""
+                INSERT INTO group_member (group_chat_id, member_chat_id, last_seen_at) VALUES (:groupChatId, :memberChatId, :now)
+                ON DUPLICATE KEY UPDATE last_seen_at = VALUES(last_seen_at)""",
+                Map.of("groupChatId", groupChatId, "memberChatId", memberChatId, "now", Timestamp.from(Instant.now())));
+    }
+
+    /**
+     * Участник вышел или удалён из группы.
+     */
+    public void leave(long groupChatId, long memberChatId) {
+        touchedAt.remove(new MemberKey(groupChatId, memberChatId));
+        jdbcTemplate.update("DELETE FROM group_member WHERE group_chat_id = :groupChatId AND member_chat_id = :memberChatId",
+                Map.of("groupChatId", groupChatId, "memberChatId", memberChatId));
+    }
+
+    /**
+     * Карточки фильмов, которые стоит посмотреть группе вместе.
+     */
+    public String recommend(long groupChatId, String language) {
+        List<Member> members = members(groupChatId);
+        if (members.isEmpty()) {
+            return """
+                    🤷‍♂️ *Пока никто из участников группы не оценивал фильмы.*
+
+                    Оцените несколько фильмов в личном чате с ботом, и здесь появятся общие рекомендации.""";
+        }
+
+        Map<String, Double> groupGenres = aggregate(members.stream().map(Member::genres).toList(), aggregation);
+        List<MovieIndex.ScoredMovie> scored = recommendationService.score(groupGenres, rated(members), results);
+        Map<Long, Movie> movies = movieRepository.findCards(scored.stream().map(MovieIndex.ScoredMovie::movieId).toList());
+        if (movies.isEmpty()) {
+            return """
+                    🤷‍♂️ *К сожалению, мы не смогли подобрать фильм, который понравится всем.*""";
+        }
+
+        movieLocalizationService.localize(movies.values(), language);
+        StringBuilder response = new StringBuilder(String.format("""
+                👥 *Что посмотреть вместе* (участников с оценками: %d):
+
+                """, members.size()));
+        for (MovieIndex.ScoredMovie movie : scored) {
+            if (movies.containsKey(movie.movieId())) {
+                response.append(movieCardRenderer.render(movies.get(movie.movieId()), movie.similarity(), language)).append("\n\n");
+            }
+        }
+        return response.toString().trim();
+    }
+
+    /**
+     * Вектор группы из векторов жанров участников (см. описание класса).
+     */
+    static Map<String, Double> aggregate(List<Map<String, Double>> vectors, Aggregation aggregation) {
+        List<Map<String, Double>> normalized = vectors.stream()
+                .map(GroupRecommendationService::normalize)
+                .filter(vector -> !vector.isEmpty())
+                .toList();
+        if (normalized.isEmpty()) {
+            return Map.of();
+        }
+
+        if (aggregation == Aggregation.LEAST_MISERY) {
+            Map<String, Double> shared = new HashMap<>(normalized.get(0));
+            for (Map<String, Double> vector : normalized.subList(1, normalized.size())) {
+                shared.replaceAll((genre, weight) -> Math.min(weight, vector.getOrDefault(genre, 0.0)));
+            }
+            shared.values().removeIf(weight -> weight <= 0);
+            if (!shared.isEmpty()) {
+                return shared;
+            }
+        }
+
+        Map<String, Double> mean = new HashMap<>();
+        for (Map<String, Double> vector : normalized) {
+            vector.forEach((genre, weight) -> mean.merge(genre, weight / normalized.size(), Double::sum));
+        }
+        return mean;
+    }
+
+    private static Map<String, Double> normalize(Map<String, Double> vector) {
+        double norm = Math.sqrt(vector.values().stream().mapToDouble(weight -> weight * weight).sum());
+        if (norm == 0) {
+            return Map.of();
+        }
+        Map<String, Double> normalized = new HashMap<>();
+        vector.forEach((genre, weight) -> {
+            if (weight > 0) {
+                normalized.put(genre, weight / norm);
+            }
+        });
+        return normalized;
+    }
+
+    // Недавние участники группы, у которых есть оценки, вместе с их векторами жанров
+    private List<Member> members(long groupChatId) {
+        return jdbcTemplate.query("""
+                SELECT u.id, u.genre_preferences FROM group_member g JOIN usr u ON u.chat_id = g.member_chat_id
+                WHERE g.group_chat_id = :groupChatId AND g.last_seen_at >= :since AND u.genre_preferences IS NOT NULL
+                ORDER BY g.last_seen_at DESC LIMIT :limit""",
+                Map.of("groupChatId", groupChatId, "since", Timestamp.from(Instant.now().minus(memberTtl)), "limit", maxMembers),
+                (rs, row) -> new Member(rs.getLong("id"), CommandProcessingService.jsonToMap(rs.getString("genre_preferences"))));
+    }
+
+    // Фильмы, оценённые хоть одним участником, одним запросом по индексу (user_id, movie_id)
+    private Set<Long> rated(List<Member> members) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT movie_id FROM user_movie_rating WHERE user_id IN (:userIds)",
+                Map.of("userIds", members.stream().map(Member::userId).toList()), Long.class));
+    }
+}
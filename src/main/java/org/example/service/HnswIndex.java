@@ -0,0 +1,407 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Приближённый поиск ближайших соседей (HNSW, Malkov и Yashunin) по скалярному произведению
+ * нормированных векторов, то есть по косинусному сходству.
+ * <p>
+ * Векторы и списки соседей нижнего слоя - основная часть памяти - лежат вне кучи в файле,
+ * отображённом в память, по узлу фиксированного размера: [вектор][число соседей][соседи].
+ * Верхние слои содержат примерно 1/m узлов и хранятся в куче.
+ * <p>
+ * Вставки выполняются по одной: поиск места для нового узла идёт под блокировкой чтения,
+ * параллельно с запросами, и только подключение узла к графу берёт короткую блокировку записи.
+ * Точность и скорость настраиваются параметрами m, efConstruction и ef при поиске.
+ */
+public class HnswIndex implements AutoCloseable {
+    private static final int MAX_LEVEL = 16;
+    private static final ThreadLocal<Visited> visitedNodes = ThreadLocal.withInitial(Visited::new);
+
+    private final int dimension;
+    private final int m;
+    private final int maxNeighbours0;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final int stride;
+    private final FileChannel channel;
+    private final Random random = new Random(42);
+    private final Object insertMutex = new Object();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> nodes = new HashMap<>(); // Меняется и читается только под insertMutex
+
+    private MappedByteBuffer layer0;
+    private int capacity;
+    private long[] keys = new long[0];
+    private int[][][] upper = new int[0][][]; // upper[узел][слой - 1] = {число соседей, соседи...}
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public record Neighbour(long key, float score) {
+    }
+
+    private record Candidate(int node, float score) {
+    }
+
+    /**
+     * @param dimension      размерность векторов
+     * @param m              число связей узла на верхних слоях (на нижнем - 2m)
+     * @param efConstruction ширина поиска при вставке: больше - точнее граф и медленнее вставка
+     * @param dir            каталог для файла с узлами; файл удаляется при закрытии индекса
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, Path dir) throws IOException {
+        this.dimension = dimension;
+        this.m = m;
+        this.maxNeighbours0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1 / Math.log(m);
+        this.stride = 4 * (dimension + 1 + maxNeighbours0);
+
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "hnsw-", ".bin");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        ensureCapacity(1024);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет нормированный вектор с ключом. Повторная вставка ключа ничего не делает.
+     *
+     * @return true, если вектор добавлен
+     */
+    public boolean add(long key, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Размерность вектора " + vector.length + ", ожидается " + dimension);
+        }
+
+        synchronized (insertMutex) {
+            if (nodes.containsKey(key)) {
+                return false;
+            }
+
+            int level = randomLevel();
+            int[][] selected = new int[level + 1][];
+            lock.readLock().lock();
+            try {
+                if (entryPoint >= 0) {
+                    Candidate nearest = new Candidate(entryPoint, similarity(vector, entryPoint));
+                    for (int layer = maxLevel; layer > level; layer--) {
+                        nearest = greedy(vector, nearest, layer);
+                    }
+                    for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                        List<Candidate> found = searchLayer(vector, nearest, efConstruction, layer);
+                        selected[layer] = selectNeighbours(found, layer == 0 ? maxNeighbours0 : m);
+                        nearest = found.get(0);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // Граф между поиском и подключением не менялся: вставки идут только под insertMutex
+            lock.writeLock().lock();
+            try {
+                ensureCapacity(size + 1);
+                int node = size;
+                int base = node * stride;
+                for (int i = 0; i < dimension; i++) {
+                    layer0.putFloat(base + 4 * i, vector[i]);
+                }
+                layer0.putInt(base + 4 * dimension, 0);
+                keys[node] = key;
+                if (level > 0) {
+                    upper[node] = new int[level][m + 1];
+                }
+
+                for (int layer = 0; layer < selected.length; layer++) {
+                    if (selected[layer] == null) {
+                        continue;
+                    }
+                    setNeighbours(node, layer, selected[layer]);
+                    for (int neighbour : selected[layer]) {
+                        link(neighbour, node, layer);
+                    }
+                }
+
+                size++;
+                if (level > maxLevel) {
+                    maxLevel = level;
+                    entryPoint = node;
+                }
+                nodes.put(key, node);
+                return true;
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось расширить файл ANN-индекса", e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * До {@code k} ключей с наибольшим сходством с нормированным запросом, по убыванию сходства.
+     *
+     * @param ef ширина поиска на нижнем слое (не меньше k): больше - выше полнота и дольше поиск
+     */
+    public List<Neighbour> search(float[] query, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+
+            Candidate nearest = new Candidate(entryPoint, similarity(query, entryPoint));
+            for (int layer = maxLevel; layer > 0; layer--) {
+                nearest = greedy(query, nearest, layer);
+            }
+            List<Candidate> found = searchLayer(query, nearest, Math.max(ef, k), 0);
+
+            List<Neighbour> result = new ArrayList<>(Math.min(k, found.size()));
+            for (int i = 0; i < found.size() && i < k; i++) {
+                result.add(new Neighbour(keys[found.get(i).node()], found.get(i).score()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Candidate greedy(float[] query, Candidate start, int layer) {
+        Candidate nearest = start;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int count = neighbourCount(nearest.node(), layer);
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbour(nearest.node(), layer, i);
+                float score = similarity(query, neighbour);
+                if (score > nearest.score()) {
+                    nearest = new Candidate(neighbour, score);
+                    improved = true;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Поиск ef ближайших на слое, начиная с {@code start}. Результат по убыванию сходства.
+     */
+    private List<Candidate> searchLayer(float[] query, Candidate start, int ef, int layer) {
+        Visited visited = visitedNodes.get();
+        visited.reset(size);
+        visited.mark(start.node());
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score).reversed());
+        PriorityQueue<Candidate> found = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+        candidates.add(start);
+        found.add(start);
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (found.size() >= ef && current.score() < found.peek().score()) {
+                break;
+            }
+
+            int count = neighbourCount(current.node(), layer);
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbour(current.node(), layer, i);
+                if (!visited.mark(neighbour)) {
+                    continue;
+                }
+                float score = similarity(query, neighbour);
+                if (found.size() < ef || score > found.peek().score()) {
+                    Candidate candidate = new Candidate(neighbour, score);
+                    candidates.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(found);
+        result.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return result;
+    }
+
+    /**
+     * Эвристика отбора соседей: кандидат берётся, если он ближе к базовому узлу, чем к уже
+     * выбранным соседям, чтобы связи вели в разные стороны. Оставшиеся места добираются
+     * ближайшими из отброшенных.
+     *
+     * @param candidates кандидаты по убыванию сходства с базовым узлом
+     */
+    private int[] selectNeighbours(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        boolean[] taken = new boolean[candidates.size()];
+        float[] vector = new float[dimension];
+        int count = 0;
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            Candidate candidate = candidates.get(i);
+            vector(candidate.node(), vector);
+            boolean diverse = true;
+            for (int j = 0; j < count && diverse; j++) {
+                diverse = similarity(vector, selected[j]) <= candidate.score();
+            }
+            if (diverse) {
+                selected[count++] = candidate.node();
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = candidates.get(i).node();
+            }
+        }
+        return selected;
+    }
+
+    private void link(int node, int neighbour, int layer) {
+        int count = neighbourCount(node, layer);
+        int max = layer == 0 ? maxNeighbours0 : m;
+        if (count < max) {
+            setNeighbour(node, layer, count, neighbour);
+            setNeighbourCount(node, layer, count + 1);
+            return;
+        }
+
+        float[] vector = vector(node, new float[dimension]);
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+            int existing = neighbour(node, layer, i);
+            candidates.add(new Candidate(existing, similarity(vector, existing)));
+        }
+        candidates.add(new Candidate(neighbour, similarity(vector, neighbour)));
+        candidates.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        setNeighbours(node, layer, selectNeighbours(candidates, max));
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelFactor));
+    }
+
+    private float similarity(float[] query, int node) {
+        int base = node * stride;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * layer0.getFloat(base + 4 * i);
+        }
+        return sum;
+    }
+
+    // Вектор узла читается из файла один раз на сравнение со всеми кандидатами
+    private float[] vector(int node, float[] target) {
+        int base = node * stride;
+        for (int i = 0; i < dimension; i++) {
+            target[i] = layer0.getFloat(base + 4 * i);
+        }
+        return target;
+    }
+
+    private int neighbourCount(int node, int layer) {
+        return layer == 0 ? layer0.getInt(node * stride + 4 * dimension) : upper[node][layer - 1][0];
+    }
+
+    private int neighbour(int node, int layer, int i) {
+        return layer == 0 ? layer0.getInt(node * stride + 4 * (dimension + 1 + i)) : upper[node][layer - 1][i + 1];
+    }
+
+    private void setNeighbourCount(int node, int layer, int count) {
+        if (layer == 0) {
+            layer0.putInt(node * stride + 4 * dimension, count);
+        } else {
+            upper[node][layer - 1][0] = count;
+        }
+    }
+
+    private void setNeighbour(int node, int layer, int i, int neighbour) {
+        if (layer == 0) {
+            layer0.putInt(node * stride + 4 * (dimension + 1 + i), neighbour);
+        } else {
+            upper[node][layer - 1][i + 1] = neighbour;
+        }
+    }
+
+    private void setNeighbours(int node, int layer, int[] neighbours) {
+        for (int i = 0; i < neighbours.length; i++) {
+            setNeighbour(node, layer, i, neighbours[i]);
+        }
+        setNeighbourCount(node, layer, neighbours.length);
+    }
+
+    // Вызывается под блокировкой записи (или из конструктора)
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= capacity) {
+            return;
+        }
+
+        int newCapacity = Math.max(required, capacity * 2);
+        long bytes = (long) newCapacity * stride;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("ANN-индекс не помещается в одно отображение файла: " + newCapacity + " узлов");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        mapped.order(ByteOrder.nativeOrder()); // Без перестановки байтов при каждом чтении
+        layer0 = mapped;
+        keys = Arrays.copyOf(keys, newCapacity);
+        upper = Arrays.copyOf(upper, newCapacity);
+        capacity = newCapacity;
+    }
+
+    /**
+     * Отметки посещённых узлов с номером обхода вместо очистки массива перед каждым поиском.
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean mark(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
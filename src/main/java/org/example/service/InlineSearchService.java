@@ -0,0 +1,208 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.Movie;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResult;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Inline-режим ("@бот название" в любом чате): подсказки фильмов по мере набора названия.
+ * <p>
+ * Ответ строится только из локальных данных: поиск по {@link MovieTitleIndex}, фильмы из базы
+ * по первичному ключу и уже сохранённые переводы, без обращений к TMDb. Результаты запроса
+ * хранятся в LRU-кэше по нормализованному тексту, поэтому повторный или стёртый и набранный
+ * снова запрос отвечается сразу. Новые фильмы появляются в закэшированных результатах
+ * не позже чем через cache-ttl.
+ * <p>
+ * Telegram присылает запрос на каждое нажатие клавиши. Запрос, которого нет в кэше, ждёт
+ * debounce; если за это время от того же пользователя пришёл следующий, старый не считается
+ * вовсе - его ответ клиенту уже не нужен. cache_time разрешает Telegram самому отвечать
+ * на повторы запроса в течение этого времени.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InlineSearchService {
+    // Telegram показывает не больше 50 результатов на страницу
+    private static final int MAX_PAGE_SIZE = 50;
+
+    private final MovieTitleIndex movieTitleIndex;
+    private final MovieRepository movieRepository;
+    private final MovieLocalizationService movieLocalizationService;
+    private final MovieCardRenderer movieCardRenderer;
+    private final TmdbService tmdbService;
+    private final BotMetrics botMetrics;
+
+    @Value("${spring.inline.page-size}")
+    private int pageSize;
+
+    @Value("${spring.inline.max-results}")
+    private int maxResults;
+
+    @Value("${spring.inline.cache-size}")
+    private int cacheSize;
+
+    @Value("${spring.inline.cache-ttl}")
+    private Duration cacheTtl;
+
+    @Value("${spring.inline.debounce}")
+    private Duration debounce;
+
+    @Value("${spring.inline.cache-time}")
+    private Duration cacheTime;
+
+    @Value("${spring.inline.threads}")
+    private int threads;
+
+    private ScheduledExecutorService debouncer;
+    private final Map<Long, String> latestQueries = new ConcurrentHashMap<>(); // Пользователь -> id последнего запроса
+    private Map<String, CachedResult> results;
+
+    private record CachedResult(List<Long> movieIds, long createdAt) {
+    }
+
+    @PostConstruct
+    public void init() {
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        debouncer = Executors.newScheduledThreadPool(threads);
+        results = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        debouncer.shutdownNow();
+    }
+
+    /**
+     * Отвечает на inline-запрос через {@code sender}: сразу, если результат есть в кэше,
+     * иначе после debounce и только если запрос остался последним от этого пользователя.
+     */
+    public void answer(InlineQuery query, Consumer<AnswerInlineQuery> sender) {
+        String key = MovieTitleIndex.normalize(query.getQuery());
+        CachedResult cached = cached(key);
+        if (cached != null || key.isEmpty()) {
+            botMetrics.cacheHit("inline");
+            sender.accept(build(query, cached != null ? cached.movieIds() : List.of()));
+            return;
+        }
+
+        botMetrics.cacheMiss("inline");
+        Long userId = query.getFrom().getId();
+        latestQueries.put(userId, query.getId());
+        debouncer.schedule(() -> {
+            if (!query.getId().equals(latestQueries.get(userId))) {
+                return; // Пользователь продолжил набирать, ответ на этот запрос уже не увидят
+            }
+            try {
+                List<Long> movieIds = movieTitleIndex.search(key, maxResults);
+                results.put(key, new CachedResult(movieIds, System.nanoTime()));
+                sender.accept(build(query, movieIds));
+            } catch (Exception e) {
+                log.error("Ошибка inline-поиска \"{}\": {}", query.getQuery(), e.getMessage(), e);
+            } finally {
+                latestQueries.remove(userId, query.getId());
+            }
+        }, debounce.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private CachedResult cached(String key) {
+        CachedResult cached = results.get(key);
+        if (cached == null || System.nanoTime() - cached.createdAt() > cacheTtl.toNanos()) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Страница результатов с позиции offset запроса. Карточка фильма - текст сообщения,
+     * которое пользователь отправит в чат, выбрав результат.
+     */
+    private AnswerInlineQuery build(InlineQuery query, List<Long> movieIds) {
+        int offset = parseOffset(query.getOffset());
+        List<Long> page = offset < movieIds.size()
+                ? movieIds.subList(offset, Math.min(movieIds.size(), offset + pageSize))
+                : List.of();
+
+        String language = movieLocalizationService.languageOf(query.getFrom().getLanguageCode());
+        Map<Long, Movie> movies = movieRepository.findCards(page);
+        Map<Long, MovieLocalizationService.Localized> localized = movieLocalizationService.localizeStored(page, language);
+
+        List<InlineQueryResult> articles = new ArrayList<>(page.size());
+        for (Long movieId : page) {
+            Movie movie = movies.get(movieId);
+            if (movie == null) {
+                continue;
+            }
+            // Без сохранённого перевода карточка показывается на языке каталога, чтобы не ждать TMDb
+            MovieLocalizationService.Localized translation = localized.get(movieId);
+            String cardLanguage = translation != null ? language : tmdbService.getDefaultLanguage();
+            String title = translation != null && translation.title() != null ? translation.title() : movie.getTitle();
+
+            InputTextMessageContent content = new InputTextMessageContent();
+            content.setMessageText(movieCardRenderer.render(movie, cardLanguage));
+            content.setParseMode("Markdown");
+
+            InlineQueryResultArticle article = new InlineQueryResultArticle();
+            article.setId(movieId.toString());
+            article.setTitle(title);
+            article.setDescription(describe(movie));
+            article.setInputMessageContent(content);
+            articles.add(article);
+        }
+
+        AnswerInlineQuery answer = new AnswerInlineQuery();
+        answer.setInlineQueryId(query.getId());
+        answer.setResults(articles);
+        answer.setCacheTime((int) cacheTime.toSeconds());
+        // Результаты зависят от языка пользователя, поэтому Telegram не должен отдавать их другим
+        answer.setIsPersonal(true);
+        int next = offset + page.size();
+        answer.setNextOffset(next < movieIds.size() && !page.isEmpty() ? Integer.toString(next) : "");
+        return answer;
+    }
+
+    private static String describe(Movie movie) {
+        String year = movie.getReleaseDate() != null && movie.getReleaseDate().length() >= 4
+                && Character.isDigit(movie.getReleaseDate().charAt(0))
+                ? movie.getReleaseDate().substring(0, 4)
+                : "—";
+        return movie.getRating() != null ? year + " · ⭐ " + movie.getRating() : year;
+    }
+
+    private static int parseOffset(String offset) {
+        if (offset == null || offset.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(offset));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
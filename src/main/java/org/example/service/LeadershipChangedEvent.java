@@ -0,0 +1,7 @@
+package org.example.service;
+
+/**
+ * Публикуется, когда этот узел получил или потерял аренду лидера.
+ */
+public record LeadershipChangedEvent(boolean leader) {
+}
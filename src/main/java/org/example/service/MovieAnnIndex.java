@@ -0,0 +1,186 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.repository.MovieFeaturesView;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ANN-индекс фильмов для режима рекомендаций spring.recommendations.mode=ann: вместо полного
+ * прохода по каталогу берутся ближайшие по вектору фильмы из HNSW-графа, и только они
+ * ранжируются итоговой оценкой MovieIndex.
+ * <p>
+ * Пока векторы фильмов - нормированные векторы жанров фиксированной размерности: каждому жанру
+ * TMDb своя координата, незнакомые жанры делят остальные по хешу. Выученные векторы (ключевые
+ * слова, факторизация оценок) встанут на место {@link #embed(String)} без изменений индекса.
+ * <p>
+ * Граф строится в фоне после запуска; до готовности рекомендации считаются точным проходом.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MovieAnnIndex {
+    static final int DIMENSION = 32;
+    private static final int[] KNOWN_GENRES = {28, 12, 16, 35, 80, 99, 18, 10751, 14, 36, 27, 10402, 9648, 10749, 878, 10770, 53, 10752, 37};
+    private static final Map<String, Integer> KNOWN_SLOTS = new HashMap<>();
+    private static final long CATCH_UP_OVERLAP = 1000;
+
+    static {
+        for (int i = 0; i < KNOWN_GENRES.length; i++) {
+            KNOWN_SLOTS.put(Integer.toString(KNOWN_GENRES[i]), i);
+        }
+    }
+
+    private final MovieRepository movieRepository;
+
+    @Value("${spring.recommendations.mode}")
+    private String mode;
+
+    @Value("${spring.ann.m}")
+    private int m;
+
+    @Value("${spring.ann.ef-construction}")
+    private int efConstruction;
+
+    @Value("${spring.ann.ef-search}")
+    private int efSearch;
+
+    @Value("${spring.ann.dir}")
+    private Path dir;
+
+    private final AtomicLong maxId = new AtomicLong();
+    private volatile HnswIndex index;
+    private volatile boolean ready;
+
+    public boolean isEnabled() {
+        return "ann".equals(mode);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (isEnabled()) {
+            CompletableFuture.runAsync(this::build);
+        }
+    }
+
+    private void build() {
+        long start = System.nanoTime();
+        try {
+            index = new HnswIndex(DIMENSION, m, efConstruction, dir);
+        } catch (IOException e) {
+            log.error("Не удалось создать ANN-индекс в {}, рекомендации считаются точным проходом: {}", dir, e.getMessage(), e);
+            return;
+        }
+
+        add(movieRepository.findAllFeatures());
+        ready = true;
+        log.info("ANN-индекс фильмов построен: {} фильмов за {} мс (m={}, efConstruction={})",
+                index.size(), (System.nanoTime() - start) / 1_000_000, m, efConstruction);
+    }
+
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidationEvent event) {
+        if (event.topic() != ChangeFeedService.Topic.MOVIES || index == null) {
+            return;
+        }
+
+        if (event.entityKey() == null) {
+            add(movieRepository.findFeaturesByIdGreaterThan(Math.max(0, maxId.get() - CATCH_UP_OVERLAP)));
+        } else {
+            movieRepository.findFeaturesByMovieId(Long.valueOf(event.entityKey())).ifPresent(movie -> add(List.of(movie)));
+        }
+    }
+
+    /**
+     * Movie.id до {@code k} ближайших к предпочтениям пользователя фильмов, по убыванию сходства.
+     */
+    public List<Long> search(Map<String, Double> userGenres, int k) {
+        HnswIndex current = index;
+        float[] query = embedUser(userGenres);
+        if (current == null || query == null) {
+            return List.of();
+        }
+        return current.search(query, k, Math.max(efSearch, k)).stream().map(HnswIndex.Neighbour::key).toList();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    private void add(List<MovieFeaturesView> movies) {
+        for (MovieFeaturesView movie : movies) {
+            float[] vector = embed(movie.getGenreIds());
+            if (movie.getId() != null && vector != null) {
+                index.add(movie.getId(), vector);
+                maxId.accumulateAndGet(movie.getId(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Нормированный вектор жанров фильма; null для фильма без жанров.
+     */
+    static float[] embed(String genreIds) {
+        if (genreIds == null || genreIds.isEmpty()) {
+            return null;
+        }
+
+        float[] vector = new float[DIMENSION];
+        for (String genreId : genreIds.split("_")) {
+            vector[slot(genreId)] += 1;
+        }
+        return normalize(vector);
+    }
+
+    /**
+     * Нормированный вектор предпочтений; null, если предпочтений нет.
+     */
+    static float[] embedUser(Map<String, Double> userGenres) {
+        float[] vector = new float[DIMENSION];
+        userGenres.forEach((genreId, weight) -> vector[slot(genreId)] += weight.floatValue());
+        return normalize(vector);
+    }
+
+    private static int slot(String genreId) {
+        Integer known = KNOWN_SLOTS.get(genreId);
+        if (known != null) {
+            return known;
+        }
+        return KNOWN_GENRES.length + Math.floorMod(genreId.hashCode(), DIMENSION - KNOWN_GENRES.length);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double squares = 0;
+        for (float value : vector) {
+            squares += value * value;
+        }
+        if (squares == 0) {
+            return null;
+        }
+        float scale = (float) (1 / Math.sqrt(squares));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
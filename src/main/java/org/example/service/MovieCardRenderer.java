@@ -0,0 +1,173 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.example.entity.Movie;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Карточки фильмов. Неизменяемая часть карточки (название, описание, жанры, релиз,
+ * рейтинг) форматируется один раз и хранится в ограниченном LRU-кэше по id фильма,
+ * версии словаря жанров и языку; к ней дописываются только оценка зрителями бота, которая
+ * меняется с каждой оценкой, и строка сходства пользователя.
+ * <p>
+ * Перед показом нескольких карточек переводы стоит загрузить одной пачкой
+ * (MovieLocalizationService.localize), тогда здесь они берутся из кэша.
+ * <p>
+ * Списки карточек загружают фильмы без описания (MovieRepository.findCards): описание
+ * дочитывается отдельным запросом, только когда карточку приходится форматировать заново.
+ */
+@Component
+@RequiredArgsConstructor
+public class MovieCardRenderer {
+    private static final int MAX_DESCRIPTION_LENGTH = 2000;
+    private static final String SIMILARITY_PREFIX = "\n🤝 *Сходство:* ";
+    // Продолжает строку рейтинга TMDb, которой заканчивается неизменяемая часть карточки
+    private static final String COMMUNITY_PREFIX = " · 👥 *Зрители:* ";
+
+    private final TmdbService tmdbService;
+    private final BotMetrics botMetrics;
+    private final MovieLocalizationService movieLocalizationService;
+    private final MovieStatsService movieStatsService;
+    private final MovieRepository movieRepository;
+
+    @Value("${spring.cards.cache-size}")
+    private int cacheSize;
+
+    private Map<CardKey, String> cards;
+
+    private record CardKey(long movieId, long genresVersion, String language) {
+    }
+
+    @PostConstruct
+    public void init() {
+        cards = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CardKey, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public String render(Movie movie, String language) {
+        String card = card(movie, language);
+        if (movie.getId() == null) {
+            return card;
+        }
+        MovieStatsService.Stats stats = movieStatsService.stats(movie.getId());
+        return stats.count() > 0 ? card + COMMUNITY_PREFIX + formatMean(stats.mean()) + " (" + stats.count() + ")" : card;
+    }
+
+    private String card(Movie movie, String language) {
+        if (movie.getId() == null) {
+            return format(movie, null, language);
+        }
+
+        CardKey key = new CardKey(movie.getId(), tmdbService.getGenresVersion(), language);
+        String card = cards.get(key);
+        if (card != null) {
+            botMetrics.cacheHit("cards");
+            return card;
+        }
+
+        botMetrics.cacheMiss("cards");
+        MovieLocalizationService.Localized localized = movieLocalizationService.localize(movie, language);
+        card = format(movie, localized, language);
+        // Карточку без перевода не кэшируем: перевод может появиться позже
+        if (localized != null || language.equals(tmdbService.getDefaultLanguage())) {
+            cards.put(key, card);
+        }
+        return card;
+    }
+
+    /**
+     * Карточка со строкой сходства, без завершающего перевода строки.
+     */
+    public String render(Movie movie, double similarity, String language) {
+        return render(movie, language) + SIMILARITY_PREFIX + formatSimilarity(similarity);
+    }
+
+    /**
+     * Карточка со строкой сходства не длиннее {@code maxLength} символов, для подписи к постеру:
+     * если не помещается, укорачивается описание. Такие карточки не кэшируются.
+     */
+    public String renderCaption(Movie movie, double similarity, String language, int maxLength) {
+        String full = render(movie, similarity, language);
+        int overflow = full.length() - maxLength;
+        if (overflow <= 0 || movie.getId() == null) {
+            return full;
+        }
+
+        String tail = full.substring(card(movie, language).length()); // Оценка зрителей и сходство
+        MovieLocalizationService.Localized localized = movieLocalizationService.localize(movie, language);
+        String description = description(movie, localized);
+        int shown = description == null ? 0 : description.length() > MAX_DESCRIPTION_LENGTH ? MAX_DESCRIPTION_LENGTH + 3 : description.length();
+        return format(movie, localized, description, language, Math.max(0, shown - overflow - 3)) + tail;
+    }
+
+    /**
+     * Сходство в процентах, усечённое до 4 знаков, как раньше делал
+     * {@code String.valueOf(...).substring(0, 4)}, но без промежуточных строк
+     * и без падения на коротких значениях вроде "5.0".
+     */
+    public static String formatSimilarity(double similarity) {
+        if (similarity == 0) {
+            return "Не известно";
+        }
+
+        double percent = (100 + similarity * 100) / 2;
+        if (percent >= 100) {
+            return "100%";
+        }
+        if (percent >= 10) {
+            int tenths = (int) (percent * 10);
+            return (tenths / 10) + "." + (tenths % 10) + "%";
+        }
+        int hundredths = (int) (percent * 100);
+        int fraction = hundredths % 100;
+        return (hundredths / 100) + (fraction < 10 ? ".0" : ".") + fraction + "%";
+    }
+
+    // Средняя оценка с одним знаком после запятой: 7.9
+    private static String formatMean(double mean) {
+        int tenths = (int) Math.round(mean * 10);
+        return (tenths / 10) + "." + (tenths % 10);
+    }
+
+    private String format(Movie movie, MovieLocalizationService.Localized localized, String language) {
+        return format(movie, localized, description(movie, localized), language, MAX_DESCRIPTION_LENGTH);
+    }
+
+    private String format(Movie movie, MovieLocalizationService.Localized localized, String description, String language, int maxDescriptionLength) {
+        String title = localized != null && localized.title() != null ? localized.title() : movie.getTitle();
+        return "🎬 *Название:* " + title
+                + "\n📝 *Описание:* " + truncateDescription(description, maxDescriptionLength)
+                + "\n🎭 *Жанры:* " + tmdbService.getGenreNames(movie.getGenreIds(), language)
+                + "\n📜 *Релиз:* " + movie.getReleaseDate()
+                + "\n⭐ *Рейтинг:* " + (movie.getRating() != null ? movie.getRating().toString() : "Нет рейтинга");
+    }
+
+    // Перевод, описание из загруженного фильма или, для фильма из списка карточек, из базы
+    private String description(Movie movie, MovieLocalizationService.Localized localized) {
+        if (localized != null && localized.description() != null) {
+            return localized.description();
+        }
+        if (movie.getDescription() == null && movie.getId() != null) {
+            return movieRepository.findDescriptionById(movie.getId()).orElse(null);
+        }
+        return movie.getDescription();
+    }
+
+    private static String truncateDescription(String description, int maxLength) {
+        if (description != null && description.length() > maxLength) {
+            return description.substring(0, maxLength) + "...";
+        }
+        return description != null ? description : "Описание недоступно.";
+    }
+}
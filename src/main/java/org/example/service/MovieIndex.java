@@ -0,0 +1,580 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.repository.MovieFeaturesView;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс каталога в памяти узла: векторы жанров всех фильмов в колоночном виде
+ * (один массив на жанр), чтобы косинусное сходство по всему каталогу считалось
+ * одним проходом по плотным массивам без построения Map на каждый фильм.
+ * <p>
+ * Рядом с жанрами в таких же массивах лежат сигналы качества фильма (рейтинг, число голосов,
+ * свежесть, оценка зрителями бота), и итоговая оценка кандидата - их взвешенная сумма
+ * со сходством (см. {@link Weights}).
+ * Семантика сходства совпадает с CommandProcessingService.computeCosineSimilarity.
+ * Фильмы только добавляются: новые позиции дописываются в конец, поэтому
+ * "новые фильмы с позиции N" - это просто хвост индекса; у уже известных фильмов
+ * обновляются только сигналы качества.
+ * <p>
+ * При запуске индекс восстанавливается из снимка (SnapshotService) и догружает из базы
+ * только фильмы, добавленные после снимка.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MovieIndex {
+    // Id фильмов выдаются до коммита, поэтому фильм с меньшим id мог попасть в базу позже снимка.
+    // Догрузка начинается чуть раньше последнего id из снимка; повторы отсекает positions
+    private static final long CATCH_UP_OVERLAP = 1000;
+    // Свежесть фильма: 1 для фильмов этого года, 1/2 для фильмов десятилетней давности и т.д.
+    private static final float RECENCY_HALF_LIFE_YEARS = 10;
+
+    private final MovieRepository movieRepository;
+    private final MovieStatsService movieStatsService;
+
+    @Value("${spring.startup.deferred-warmup}")
+    private boolean deferredWarmup;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> genreColumns = new HashMap<>();
+    private final Map<Long, Integer> positions = new HashMap<>();
+    private float[][] columns = new float[0][];
+    private long[] ids = new long[1024];
+    private float[] invNorms = new float[1024]; // 1 / норма вектора жанров, 0 для фильма без жанров
+    private float[] quality = new float[1024]; // Рейтинг TMDb, приведённый к [0, 1]
+    private float[] votes = new float[1024]; // ln(1 + число голосов)
+    private float[] recency = new float[1024]; // Свежесть по году релиза, (0, 1], 0 если год неизвестен
+    private float[] community = new float[1024]; // Оценка зрителями бота, MovieStatsService.score
+    private float maxVotes;
+    private int size;
+    private long maxId;
+    private long version; // Меняется с каждым изменением данных снимка (всего, кроме community)
+
+    /**
+     * @param similarity косинусное сходство жанров, показывается пользователю
+     * @param score      итоговая оценка, по которой упорядочены результаты
+     */
+    public record ScoredMovie(long movieId, double similarity, double score) {
+    }
+
+    /**
+     * Веса итоговой оценки: genre - косинусное сходство жанров, rating - рейтинг TMDb,
+     * popularity - число голосов (логарифм, относительно самого обсуждаемого фильма каталога),
+     * recency - свежесть релиза, community - оценки пользователей бота. Все сигналы, кроме сходства,
+     * лежат в [0, 1].
+     */
+    public record Weights(float genre, float rating, float popularity, float recency, float community) {
+        public static final Weights GENRES_ONLY = new Weights(1, 0, 0, 0, 0);
+    }
+
+    /**
+     * Копия содержимого индекса для записи на диск. Массивы обрезаны до size,
+     * columns[i] - столбец жанра genres.get(i).
+     */
+    public record Snapshot(int size, List<String> genres, long[] ids, float[] invNorms,
+                           float[] quality, float[] votes, float[] recency, float[][] columns) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (deferredWarmup) {
+            CompletableFuture.runAsync(this::catchUp);
+        } else {
+            catchUp();
+        }
+    }
+
+    /**
+     * Догружает из базы фильмы, которых нет в индексе. Если индекс восстановлен из снимка,
+     * читаются только фильмы после него; снимок от другой базы отбрасывается.
+     */
+    public void catchUp() {
+        long restoredUpTo = maxId();
+        if (restoredUpTo == 0) {
+            load();
+            return;
+        }
+
+        if (movieRepository.findMaxId() < restoredUpTo) {
+            log.warn("Снимок индекса не соответствует базе (последний id {}), индекс строится заново", restoredUpTo);
+            clear();
+            load();
+            return;
+        }
+        load(movieRepository.findFeaturesByIdGreaterThan(Math.max(0, restoredUpTo - CATCH_UP_OVERLAP)));
+    }
+
+    public void load() {
+        load(movieRepository.findAllFeatures());
+    }
+
+    private void load(List<MovieFeaturesView> movies) {
+        long start = System.nanoTime();
+        int before;
+        lock.writeLock().lock();
+        try {
+            before = size;
+            movies.forEach(this::append);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс фильмов загружен: {} фильмов (новых {}), {} жанров за {} мс",
+                size, size - before, genreColumns.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public Snapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            String[] genres = new String[columns.length];
+            genreColumns.forEach((genre, column) -> genres[column] = genre);
+            float[][] values = new float[columns.length][];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = Arrays.copyOf(columns[i], size);
+            }
+            return new Snapshot(size, List.of(genres), Arrays.copyOf(ids, size), Arrays.copyOf(invNorms, size),
+                    Arrays.copyOf(quality, size), Arrays.copyOf(votes, size), Arrays.copyOf(recency, size), values);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Заменяет содержимое индекса снимком. Вызывается до catchUp, пока индекс пуст.
+     * Оценки зрителей в снимок не входят: они берутся из MovieStatsService.
+     */
+    public void restore(Snapshot snapshot) {
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, snapshot.size())) * 2);
+        lock.writeLock().lock();
+        try {
+            clearLocked();
+            ids = Arrays.copyOf(snapshot.ids(), capacity);
+            invNorms = Arrays.copyOf(snapshot.invNorms(), capacity);
+            quality = Arrays.copyOf(snapshot.quality(), capacity);
+            votes = Arrays.copyOf(snapshot.votes(), capacity);
+            recency = Arrays.copyOf(snapshot.recency(), capacity);
+            community = new float[capacity];
+            columns = new float[snapshot.genres().size()][];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(snapshot.columns()[i], capacity);
+                genreColumns.put(snapshot.genres().get(i), i);
+            }
+            size = snapshot.size();
+            for (int i = 0; i < size; i++) {
+                positions.put(ids[i], i);
+                community[i] = movieStatsService.score(ids[i]);
+                maxId = Math.max(maxId, ids[i]);
+                maxVotes = Math.max(maxVotes, votes[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        lock.writeLock().lock();
+        try {
+            clearLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clearLocked() {
+        genreColumns.clear();
+        positions.clear();
+        columns = new float[0][];
+        ids = new long[1024];
+        invNorms = new float[1024];
+        quality = new float[1024];
+        votes = new float[1024];
+        recency = new float[1024];
+        community = new float[1024];
+        maxVotes = 0;
+        size = 0;
+        maxId = 0;
+        version++;
+    }
+
+    private long maxId() {
+        lock.readLock().lock();
+        try {
+            return maxId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidationEvent event) {
+        if (event.topic() != ChangeFeedService.Topic.MOVIES) {
+            return;
+        }
+
+        // Без ключа - добавлено много фильмов сразу (импорт каталога): дочитываем хвост по id
+        if (event.entityKey() == null) {
+            catchUp();
+        } else {
+            movieRepository.findFeaturesByMovieId(Long.valueOf(event.entityKey())).ifPresent(this::add);
+        }
+    }
+
+    @EventListener
+    public void onStatsChanged(MovieStatsChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (Long movieId : event.movieIds()) {
+                Integer position = positions.get(movieId);
+                if (position != null) {
+                    community[position] = movieStatsService.score(movieId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет фильм или, если он уже в индексе, обновляет его сигналы качества.
+     */
+    public void add(MovieFeaturesView movie) {
+        lock.writeLock().lock();
+        try {
+            append(movie);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Количество фильмов в индексе. Служит и версией каталога: индекс только растёт.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Версия содержимого индекса: растёт при добавлении фильма, обновлении его сигналов,
+     * восстановлении и сбросе. По ней SnapshotService решает, переписывать ли снимок.
+     */
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Movie.id всех фильмов индекса в порядке добавления.
+     */
+    public long[] movieIds() {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOf(ids, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Movie.id случайного фильма: лучший по числу голосов из {@code sample} случайных,
+     * так что sample = 1 - равномерный выбор, а больший sample смещает выбор к известным
+     * фильмам. 0, если индекс пуст.
+     */
+    public long randomMovieId(int sample) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return 0;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int best = random.nextInt(size);
+            for (int i = 1; i < sample; i++) {
+                int candidate = random.nextInt(size);
+                if (votes[candidate] > votes[best]) {
+                    best = candidate;
+                }
+            }
+            return ids[best];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Вектор жанров фильма в виде предпочтений (жанр -> число вхождений), чтобы искать
+     * похожие на него фильмы через {@link #topK}; пустой, если фильма нет в индексе.
+     */
+    public Map<String, Double> genresOf(long movieId) {
+        lock.readLock().lock();
+        try {
+            Integer position = positions.get(movieId);
+            if (position == null) {
+                return Map.of();
+            }
+            Map<String, Double> genres = new HashMap<>();
+            genreColumns.forEach((genre, column) -> {
+                float value = columns[column][position];
+                if (value > 0) {
+                    genres.put(genre, (double) value);
+                }
+            });
+            return genres;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Лучшие по итоговой оценке фильмы с положительным сходством, начиная с позиции {@code from}.
+     * <p>
+     * Оценка считается по всем кандидатам сразу в плоском цикле без ветвлений и обращений
+     * к объектам, который JIT разворачивает в векторные инструкции; отбор top-K идёт вторым
+     * проходом по готовому массиву оценок.
+     *
+     * @param userGenres веса жанров пользователя, как их возвращает getUserGenres
+     * @param exclude    Movie.id фильмов, которые не нужно предлагать
+     */
+    public List<ScoredMovie> topK(Map<String, Double> userGenres, Weights weights, int k, Set<Long> exclude, int from) {
+        double userNorm = 0;
+        for (double weight : userGenres.values()) {
+            userNorm += weight * weight;
+        }
+        userNorm = Math.sqrt(userNorm);
+        if (userNorm == 0 || k <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int count = size - from;
+            if (count <= 0) {
+                return List.of();
+            }
+
+            float[] dot = new float[count];
+            for (Map.Entry<String, Double> entry : userGenres.entrySet()) {
+                Integer column = genreColumns.get(entry.getKey());
+                if (column == null) {
+                    continue;
+                }
+                float weight = entry.getValue().floatValue();
+                float[] values = columns[column];
+                for (int i = 0; i < count; i++) {
+                    dot[i] += weight * values[from + i];
+                }
+            }
+
+            float genreScale = (float) (weights.genre() / userNorm);
+            float ratingWeight = weights.rating();
+            float votesScale = maxVotes > 0 ? weights.popularity() / maxVotes : 0;
+            float recencyWeight = weights.recency();
+            float communityWeight = weights.community();
+            float[] scores = new float[count];
+            for (int i = 0; i < count; i++) {
+                scores[i] = genreScale * dot[i] * invNorms[from + i]
+                        + ratingWeight * quality[from + i]
+                        + votesScale * votes[from + i]
+                        + recencyWeight * recency[from + i]
+                        + communityWeight * community[from + i];
+            }
+
+            long[] bestIds = new long[k];
+            double[] bestScores = new double[k];
+            double[] bestSimilarities = new double[k];
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                if (dot[i] <= 0 || invNorms[from + i] == 0) {
+                    continue;
+                }
+                double score = scores[i];
+                if (found == k && score <= bestScores[k - 1]) {
+                    continue;
+                }
+                long movieId = ids[from + i];
+                if (exclude.contains(movieId)) {
+                    continue;
+                }
+
+                int insertAt = found < k ? found++ : k - 1;
+                while (insertAt > 0 && bestScores[insertAt - 1] < score) {
+                    bestScores[insertAt] = bestScores[insertAt - 1];
+                    bestSimilarities[insertAt] = bestSimilarities[insertAt - 1];
+                    bestIds[insertAt] = bestIds[insertAt - 1];
+                    insertAt--;
+                }
+                bestScores[insertAt] = score;
+                bestSimilarities[insertAt] = dot[i] * invNorms[from + i] / userNorm;
+                bestIds[insertAt] = movieId;
+            }
+
+            List<ScoredMovie> result = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                result.add(new ScoredMovie(bestIds[i], bestSimilarities[i], bestScores[i]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Итоговая оценка только для заданных фильмов (кандидатов из ANN-индекса): те же сигналы
+     * и веса, что в {@link #topK}, но без прохода по всему каталогу.
+     */
+    public List<ScoredMovie> rank(Map<String, Double> userGenres, Weights weights, Collection<Long> movieIds,
+                                  int k, Set<Long> exclude) {
+        lock.readLock().lock();
+        try {
+            int[] userColumns = new int[userGenres.size()];
+            float[] userWeights = new float[userGenres.size()];
+            int genres = 0;
+            double userNorm = 0;
+            for (Map.Entry<String, Double> entry : userGenres.entrySet()) {
+                userNorm += entry.getValue() * entry.getValue();
+                Integer column = genreColumns.get(entry.getKey());
+                if (column != null) {
+                    userColumns[genres] = column;
+                    userWeights[genres++] = entry.getValue().floatValue();
+                }
+            }
+            userNorm = Math.sqrt(userNorm);
+            if (userNorm == 0 || k <= 0) {
+                return List.of();
+            }
+
+            float votesScale = maxVotes > 0 ? weights.popularity() / maxVotes : 0;
+            List<ScoredMovie> scored = new ArrayList<>(movieIds.size());
+            for (Long movieId : movieIds) {
+                Integer position = positions.get(movieId);
+                if (position == null || exclude.contains(movieId)) {
+                    continue;
+                }
+                float dot = 0;
+                for (int j = 0; j < genres; j++) {
+                    dot += userWeights[j] * columns[userColumns[j]][position];
+                }
+                if (dot <= 0 || invNorms[position] == 0) {
+                    continue;
+                }
+                double similarity = dot * invNorms[position] / userNorm;
+                double score = weights.genre() * similarity
+                        + weights.rating() * quality[position]
+                        + votesScale * votes[position]
+                        + weights.recency() * recency[position]
+                        + weights.community() * community[position];
+                scored.add(new ScoredMovie(movieId, similarity, score));
+            }
+            scored.sort(Comparator.comparingDouble(ScoredMovie::score).reversed());
+            return scored.size() > k ? List.copyOf(scored.subList(0, k)) : scored;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(MovieFeaturesView movie) {
+        Long id = movie.getId();
+        if (id == null || movie.getGenreIds() == null) {
+            return;
+        }
+
+        version++;
+        Integer position = positions.get(id);
+        if (position != null) {
+            setSignals(position, movie);
+            return;
+        }
+
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            invNorms = Arrays.copyOf(invNorms, capacity);
+            quality = Arrays.copyOf(quality, capacity);
+            votes = Arrays.copyOf(votes, capacity);
+            recency = Arrays.copyOf(recency, capacity);
+            community = Arrays.copyOf(community, capacity);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(columns[i], capacity);
+            }
+        }
+
+        float squares = 0;
+        for (String genreId : movie.getGenreIds().split("_")) {
+            int column = columnOf(genreId);
+            float[] values = columns[column];
+            float previous = values[size];
+            values[size] = previous + 1;
+            squares += 2 * previous + 1; // (x + 1)^2 - x^2
+        }
+
+        ids[size] = id;
+        invNorms[size] = squares > 0 ? (float) (1 / Math.sqrt(squares)) : 0;
+        community[size] = movieStatsService.score(id);
+        setSignals(size, movie);
+        positions.put(id, size);
+        maxId = Math.max(maxId, id);
+        size++;
+    }
+
+    private void setSignals(int position, MovieFeaturesView movie) {
+        quality[position] = movie.getRating() != null ? (float) Math.min(1, Math.max(0, movie.getRating() / 10)) : 0;
+        votes[position] = movie.getVoteCount() != null ? (float) Math.log1p(Math.max(0, movie.getVoteCount())) : 0;
+        maxVotes = Math.max(maxVotes, votes[position]);
+
+        int year = releaseYear(movie.getReleaseDate());
+        float age = Math.max(0, Year.now().getValue() - year);
+        recency[position] = year > 0 ? 1 / (1 + age / RECENCY_HALF_LIFE_YEARS) : 0;
+    }
+
+    // Дата релиза хранится как "2023-05-17" или "2023.05.17"; без года - "Не известно"
+    private static int releaseYear(String releaseDate) {
+        if (releaseDate == null || releaseDate.length() < 4) {
+            return 0;
+        }
+        int year = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = releaseDate.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            year = year * 10 + (c - '0');
+        }
+        return year;
+    }
+
+    private int columnOf(String genreId) {
+        Integer column = genreColumns.get(genreId);
+        if (column == null) {
+            column = columns.length;
+            columns = Arrays.copyOf(columns, column + 1);
+            columns[column] = new float[ids.length];
+            genreColumns.put(genreId, column);
+        }
+        return column;
+    }
+}
@@ -0,0 +1,224 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.Movie;
+import org.example.entity.MovieLocalization;
+import org.example.entity.Usr;
+import org.example.repository.MovieGenresView;
+import org.example.repository.MovieLocalizationRepository;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Названия и описания фильмов на языке пользователя (Usr.languageCode). Язык каталога хранится
+ * в самой таблице movie, остальные языки - в movie_localization, по строке на фильм и язык.
+ * <p>
+ * Перевод ищется в LRU-кэше языка, затем одним запросом к базе на всю пачку фильмов, и только
+ * недостающие запрашиваются в TMDb и сохраняются для всех узлов. Фоновая задача лидера заранее
+ * догружает переводы каталога, поэтому обычно показ карточки в сеть не ходит.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MovieLocalizationService {
+    private final TmdbService tmdbService;
+    private final MovieRepository movieRepository;
+    private final MovieLocalizationRepository movieLocalizationRepository;
+    private final ClusterService clusterService;
+    private final BotMetrics botMetrics;
+
+    @Value("${spring.tmdb.languages}")
+    private Set<String> languages;
+
+    @Value("${spring.localization.cache-size}")
+    private int cacheSize;
+
+    @Value("${spring.localization.batch-size}")
+    private int batchSize;
+
+    private final Map<String, Map<Long, Localized>> caches = new ConcurrentHashMap<>(); // Язык -> Movie.id -> перевод
+    private final Map<String, Long> syncedUpTo = new ConcurrentHashMap<>(); // Язык -> последний Movie.id фоновой догрузки
+
+    /**
+     * Перевод фильма; null в полях означает, что TMDb не знает перевода и нужен текст каталога.
+     */
+    public record Localized(String title, String description) {
+    }
+
+    @PostConstruct
+    public void init() {
+        log.info("Языки каталога: {} (основной {})", languages, tmdbService.getDefaultLanguage());
+    }
+
+    /**
+     * Язык показа для пользователя: код языка Telegram без региона ("en-US" -> "en"),
+     * если он поддерживается, иначе язык каталога.
+     */
+    public String languageOf(Usr user) {
+        return languageOf(user.getLanguageCode());
+    }
+
+    /**
+     * То же по коду языка клиента Telegram - для обновлений от незарегистрированных
+     * пользователей, например inline-запросов.
+     */
+    public String languageOf(String code) {
+        if (code == null || code.isBlank()) {
+            return tmdbService.getDefaultLanguage();
+        }
+
+        String language = code.toLowerCase(Locale.ROOT);
+        int region = language.indexOf('-');
+        if (region > 0) {
+            language = language.substring(0, region);
+        }
+        return languages.contains(language) ? language : tmdbService.getDefaultLanguage();
+    }
+
+    /**
+     * Переводы пачки фильмов: Movie.id -> перевод. Для языка каталога пусто: текст уже в самих фильмах.
+     * Фильм, перевод которого TMDb не отдал, в результат не попадает и показывается на языке каталога.
+     */
+    public Map<Long, Localized> localize(Collection<Movie> movies, String language) {
+        Map<Long, Long> tmdbIds = new HashMap<>();
+        for (Movie movie : movies) {
+            if (movie.getId() != null) {
+                tmdbIds.put(movie.getId(), movie.getMovieId());
+            }
+        }
+        return localize(tmdbIds, language, true);
+    }
+
+    public Localized localize(Movie movie, String language) {
+        return localize(List.of(movie), language).get(movie.getId());
+    }
+
+    /**
+     * Переводы из кэша и базы, без обращения к TMDb: для длинных списков вроде "Мои оценки",
+     * где недостающие переводы догрузит фоновая задача.
+     */
+    public Map<Long, Localized> localizeStored(Collection<Long> movieIds, String language) {
+        Map<Long, Long> ids = new HashMap<>();
+        movieIds.forEach(id -> ids.put(id, null));
+        return localize(ids, language, false);
+    }
+
+    /**
+     * Догружает переводы каталога пачками по batch-size фильмов на язык за проход,
+     * двигаясь по возрастанию id. Дойдя до конца, начинает сначала: так повторяются
+     * фильмы, для которых TMDb не ответил, и подхватываются новые.
+     */
+    @Scheduled(fixedDelayString = "${spring.localization.sync-interval}")
+    public void syncCatalog() {
+        if (!clusterService.isLeader()) {
+            return;
+        }
+
+        for (String language : languages) {
+            if (isDefault(language)) {
+                continue;
+            }
+
+            long after = syncedUpTo.getOrDefault(language, 0L);
+            List<MovieGenresView> batch = movieRepository.findWithoutLocalization(language, after, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                syncedUpTo.remove(language);
+                continue;
+            }
+
+            int fetched = 0;
+            for (MovieGenresView movie : batch) {
+                if (fetch(movie.getId(), movie.getMovieId(), language) != null) {
+                    fetched++;
+                }
+            }
+            syncedUpTo.put(language, batch.get(batch.size() - 1).getId());
+            log.info("Переводы каталога ({}): загружено {} из {}", language, fetched, batch.size());
+        }
+    }
+
+    private Map<Long, Localized> localize(Map<Long, Long> tmdbIds, String language, boolean fetchMissing) {
+        if (isDefault(language) || tmdbIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, Localized> cache = cache(language);
+        Map<Long, Localized> result = new HashMap<>();
+        Map<Long, Long> missing = new HashMap<>();
+        tmdbIds.forEach((id, tmdbId) -> {
+            Localized cached = cache.get(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                missing.put(id, tmdbId);
+            }
+        });
+        if (missing.isEmpty()) {
+            botMetrics.cacheHit("localizations");
+            return result;
+        }
+
+        botMetrics.cacheMiss("localizations");
+        for (MovieLocalization stored : movieLocalizationRepository.findByLanguageAndMovieIdIn(language, missing.keySet())) {
+            Localized localized = new Localized(stored.getTitle(), stored.getDescription());
+            cache.put(stored.getMovieId(), localized);
+            result.put(stored.getMovieId(), localized);
+            missing.remove(stored.getMovieId());
+        }
+
+        if (fetchMissing) {
+            missing.forEach((id, tmdbId) -> {
+                Localized fetched = tmdbId != null ? fetch(id, tmdbId, language) : null;
+                if (fetched != null) {
+                    result.put(id, fetched);
+                }
+            });
+        }
+        return result;
+    }
+
+    private Localized fetch(Long id, Long tmdbId, String language) {
+        Map<String, Object> details = tmdbService.getMovieDetails(tmdbId, language);
+        if (details == null) {
+            return null;
+        }
+
+        Localized localized = new Localized(blankToNull(details.get("title")), blankToNull(details.get("overview")));
+        movieLocalizationRepository.upsert(id, language, localized.title(), localized.description());
+        cache(language).put(id, localized);
+        return localized;
+    }
+
+    private Map<Long, Localized> cache(String language) {
+        return caches.computeIfAbsent(language, key -> Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Localized> eldest) {
+                return size() > cacheSize;
+            }
+        }));
+    }
+
+    private boolean isDefault(String language) {
+        return language.equals(tmdbService.getDefaultLanguage());
+    }
+
+    // TMDb отдаёт пустую строку, если перевода на язык нет
+    private static String blankToNull(Object value) {
+        return value instanceof String text && !text.isBlank() ? text : null;
+    }
+}
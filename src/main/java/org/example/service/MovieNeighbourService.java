@@ -0,0 +1,414 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.Movie;
+import org.example.entity.MovieNeighbour;
+import org.example.repository.MovieNeighbourRepository;
+import org.example.repository.MovieNeighbourView;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Похожие фильмы: для каждого фильма в таблице movie_neighbour хранится готовый список
+ * ближайших к нему фильмов, поэтому "🔗 Похожие фильмы" читает его по ключу, а не
+ * считает сходство с каждым фильмом каталога.
+ * <p>
+ * Список целиком перестраивается по расписанию: каталог делится на части, которые
+ * параллельно считаются в ForkJoinPool, и каждая часть сразу пишется своей транзакцией.
+ * Между перестройками новые фильмы (saveOrUpdateMovie, импорт каталога) получают свой
+ * список и попадают в списки своих ближайших фильмов, если обходят их худшего соседа.
+ * Фильм, которого ещё нет в таблице, считается на месте.
+ * <p>
+ * Соседи ищутся тем же индексом и той же итоговой оценкой, что рекомендации: вектор жанров
+ * фильма выступает в роли предпочтений пользователя (см. {@link MovieIndex#genresOf}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MovieNeighbourService {
+    // Новый фильм предлагается в списки стольких своих ближайших фильмов, во сколько раз больше k
+    private static final int REVERSE_FACTOR = 2;
+
+    private final MovieIndex movieIndex;
+    private final MovieAnnIndex movieAnnIndex;
+    private final MovieRepository movieRepository;
+    private final MovieNeighbourRepository movieNeighbourRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClusterService clusterService;
+
+    @Value("${spring.neighbours.k}")
+    private int k;
+
+    @Value("${spring.neighbours.parallelism}")
+    private int parallelism;
+
+    @Value("${spring.neighbours.partition-size}")
+    private int partitionSize;
+
+    @Value("${spring.neighbours.batch-size}")
+    private int batchSize;
+
+    @Value("${spring.neighbours.exact-max-movies}")
+    private int exactMaxMovies;
+
+    @Value("${spring.ann.candidates}")
+    private int annCandidates;
+
+    @Value("${spring.neighbours.weights.genre}")
+    private float genreWeight;
+
+    @Value("${spring.neighbours.weights.rating}")
+    private float ratingWeight;
+
+    @Value("${spring.neighbours.weights.popularity}")
+    private float popularityWeight;
+
+    @Value("${spring.neighbours.weights.recency}")
+    private float recencyWeight;
+
+    @Value("${spring.neighbours.weights.community}")
+    private float communityWeight;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final Queue<Long> pending = new ConcurrentLinkedQueue<>(); // TMDb id новых фильмов из ленты изменений
+    private volatile boolean catchUpRequested = true; // Проверить весь каталог: запуск, смена лидера, импорт
+    private MovieIndex.Weights weights;
+
+    @PostConstruct
+    public void init() {
+        weights = new MovieIndex.Weights(genreWeight, ratingWeight, popularityWeight, recencyWeight, communityWeight);
+        log.info("Веса ранжирования похожих фильмов: {}", weights);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    /**
+     * До k фильмов, похожих на фильм, вместе с фильмами, по убыванию итоговой оценки. Читает
+     * готовый список; если его ещё нет, считает на месте без сохранения - сохранит фоновое обновление.
+     *
+     * @param movieId Movie.id фильма
+     */
+    public List<MovieNeighbour> getNeighbours(Long movieId) {
+        List<MovieIndex.ScoredMovie> neighbours = movieNeighbourRepository.findByMovieIdIn(List.of(movieId)).stream()
+                .map(stored -> new MovieIndex.ScoredMovie(stored.getNeighbourId(), stored.getSimilarity(), stored.getScore()))
+                .toList();
+        if (neighbours.isEmpty()) {
+            neighbours = nearest(movieId, k);
+        }
+
+        // Фильмы без описаний: карточка дочитает описание, только если её нет в кэше
+        Map<Long, Movie> movies = movieRepository.findCards(neighbours.stream().map(MovieIndex.ScoredMovie::movieId).toList());
+        List<MovieNeighbour> rows = new ArrayList<>(neighbours.size());
+        for (MovieIndex.ScoredMovie scored : neighbours) {
+            Movie neighbour = movies.get(scored.movieId());
+            if (neighbour == null) {
+                continue;
+            }
+            MovieNeighbour row = new MovieNeighbour();
+            row.setMovieId(movieId);
+            row.setNeighbour(neighbour);
+            row.setPosition(rows.size());
+            row.setSimilarity(scored.similarity());
+            row.setScore(scored.score());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidationEvent event) {
+        if (event.topic() != ChangeFeedService.Topic.MOVIES || !clusterService.isLeader()) {
+            return;
+        }
+
+        // Без ключа - добавлено много фильмов сразу (импорт каталога): ищем фильмы без списка
+        if (event.entityKey() == null) {
+            catchUpRequested = true;
+        } else {
+            pending.add(Long.valueOf(event.entityKey()));
+        }
+    }
+
+    @EventListener
+    public void onLeadershipChanged(LeadershipChangedEvent event) {
+        catchUpRequested = true;
+    }
+
+    /**
+     * Инкрементальное обновление на лидере: новые фильмы из ленты изменений и, после запуска
+     * или импорта, все фильмы без списка. Пока идёт перестройка, ждёт её окончания.
+     */
+    @Scheduled(fixedDelayString = "${spring.neighbours.update-interval}")
+    public void update() {
+        if (!clusterService.isLeader() || rebuilding.get()) {
+            return;
+        }
+
+        if (catchUpRequested) {
+            if (movieNeighbourRepository.count() == 0 && movieIndex.size() > 0) {
+                // Дополнение пустой таблицы стоит столько же, сколько полная перестройка:
+                // без ANN-индекса на большом каталоге ждём его готовности
+                if (fullPassAffordable()) {
+                    catchUpRequested = false;
+                    rebuild();
+                    return;
+                }
+            } else {
+                catchUpRequested = false;
+                catchUp();
+            }
+        }
+
+        List<Long> added = new ArrayList<>();
+        for (Long tmdbId = pending.poll(); tmdbId != null; tmdbId = pending.poll()) {
+            movieRepository.findFeaturesByMovieId(tmdbId).ifPresent(movie -> added.add(movie.getId()));
+        }
+        if (!added.isEmpty()) {
+            addMovies(added);
+        }
+    }
+
+    /**
+     * Полная перестройка таблицы по расписанию. Поправляет списки, которые инкрементальное
+     * обновление дополняло приближённо, и учитывает изменившиеся рейтинги и число голосов.
+     * <p>
+     * Каждый фильм сравнивается с кандидатами ANN-индекса, то есть перестройка стоит
+     * O(N * spring.ann.candidates). Точный поиск сравнивает каждый фильм со всем каталогом, O(N²),
+     * поэтому без готового ANN-индекса перестройка выполняется, только пока в каталоге не больше
+     * exact-max-movies фильмов; иначе списки ведёт инкрементальное обновление.
+     */
+    @Scheduled(cron = "${spring.neighbours.rebuild-cron}")
+    public void rebuild() {
+        if (!clusterService.isLeader()) {
+            return;
+        }
+        if (!fullPassAffordable()) {
+            log.warn("Перестройка похожих фильмов пропущена: в каталоге {} фильмов, а ANN-индекс не готов (точный поиск - не больше {})",
+                    movieIndex.size(), exactMaxMovies);
+            return;
+        }
+        if (rebuilding.compareAndSet(false, true)) {
+            runner.execute(this::runRebuild);
+        }
+    }
+
+    private boolean fullPassAffordable() {
+        return movieAnnIndex.isReady() || movieIndex.size() <= exactMaxMovies;
+    }
+
+    private void runRebuild() {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long[] movieIds = movieIndex.movieIds();
+            AtomicInteger done = new AtomicInteger();
+            pool.invoke(new PartitionTask(movieIds, 0, movieIds.length, partitionSize,
+                    movieId -> nearest(movieId, k), this::store, done));
+            log.info("Похожие фильмы перестроены: {} фильмов за {} мс ({} потоков)",
+                    done.get(), (System.nanoTime() - start) / 1_000_000, parallelism);
+        } catch (Exception e) {
+            log.error("Перестройка похожих фильмов прервана: {}", e.getMessage(), e);
+        } finally {
+            pool.shutdown();
+            rebuilding.set(false);
+            // Фильмы, добавленные во время перестройки, могли в неё не попасть
+            catchUpRequested = true;
+        }
+    }
+
+    /**
+     * Часть каталога [from, to): делится пополам, пока не станет не больше partition-size фильмов,
+     * затем считается и сохраняется одной транзакцией. Статический класс с явными зависимостями:
+     * RecursiveAction сериализуем, и внутренний класс тянул бы за собой весь сервис.
+     */
+    private static final class PartitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] movieIds;
+        private final int from;
+        private final int to;
+        private final int partitionSize;
+        private final transient Function<Long, List<MovieIndex.ScoredMovie>> nearest;
+        private final transient Consumer<Map<Long, List<MovieIndex.ScoredMovie>>> store;
+        private final AtomicInteger done;
+
+        PartitionTask(long[] movieIds, int from, int to, int partitionSize,
+                      Function<Long, List<MovieIndex.ScoredMovie>> nearest,
+                      Consumer<Map<Long, List<MovieIndex.ScoredMovie>>> store, AtomicInteger done) {
+            this.movieIds = movieIds;
+            this.from = from;
+            this.to = to;
+            this.partitionSize = partitionSize;
+            this.nearest = nearest;
+            this.store = store;
+            this.done = done;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > partitionSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PartitionTask(movieIds, from, middle, partitionSize, nearest, store, done),
+                        new PartitionTask(movieIds, middle, to, partitionSize, nearest, store, done));
+                return;
+            }
+
+            Map<Long, List<MovieIndex.ScoredMovie>> lists = new LinkedHashMap<>();
+            for (int i = from; i < to; i++) {
+                lists.put(movieIds[i], nearest.apply(movieIds[i]));
+            }
+            store.accept(lists);
+            done.addAndGet(to - from);
+        }
+    }
+
+    private void catchUp() {
+        long after = 0;
+        List<Long> missing;
+        do {
+            missing = movieNeighbourRepository.findMovieIdsWithoutNeighbours(after, PageRequest.of(0, batchSize));
+            if (!missing.isEmpty()) {
+                addMovies(missing);
+                after = missing.get(missing.size() - 1);
+            }
+        } while (missing.size() == batchSize);
+    }
+
+    /**
+     * Новые фильмы получают свой список, а также встают в списки ближайших к ним фильмов,
+     * если обходят там худшего соседа. Кандидаты для обратного дополнения - соседи нового
+     * фильма с запасом: сходство жанров симметрично, так что чужие списки, куда он должен
+     * попасть, почти всегда среди них; остальное поправит ночная перестройка.
+     */
+    private void addMovies(List<Long> movieIds) {
+        long start = System.nanoTime();
+        Map<Long, List<MovieIndex.ScoredMovie>> own = new LinkedHashMap<>();
+        Map<Long, List<Long>> reverse = new HashMap<>(); // Фильм -> новые фильмы, которые могут войти в его список
+        for (Long movieId : movieIds) {
+            List<MovieIndex.ScoredMovie> nearest = nearest(movieId, k * REVERSE_FACTOR);
+            own.put(movieId, nearest.size() > k ? List.copyOf(nearest.subList(0, k)) : nearest);
+            nearest.forEach(neighbour -> reverse.computeIfAbsent(neighbour.movieId(), key -> new ArrayList<>()).add(movieId));
+        }
+        movieIds.forEach(reverse::remove);
+
+        Map<Long, List<MovieIndex.ScoredMovie>> current = new HashMap<>();
+        for (List<Long> chunk : chunks(new ArrayList<>(reverse.keySet()))) {
+            for (MovieNeighbourView row : movieNeighbourRepository.findByMovieIdIn(chunk)) {
+                current.computeIfAbsent(row.getMovieId(), key -> new ArrayList<>())
+                        .add(new MovieIndex.ScoredMovie(row.getNeighbourId(), row.getSimilarity(), row.getScore()));
+            }
+        }
+
+        Map<Long, List<MovieIndex.ScoredMovie>> changed = new LinkedHashMap<>(own);
+        reverse.forEach((movieId, candidates) -> {
+            List<MovieIndex.ScoredMovie> list = current.get(movieId);
+            if (list == null) {
+                return; // Своего списка у фильма ещё нет, он получит его целиком
+            }
+            double threshold = list.size() < k ? Double.NEGATIVE_INFINITY : list.get(list.size() - 1).score();
+            Set<Long> present = new HashSet<>();
+            list.forEach(neighbour -> present.add(neighbour.movieId()));
+            List<MovieIndex.ScoredMovie> better = movieIndex.rank(movieIndex.genresOf(movieId), weights, candidates, k, present)
+                    .stream()
+                    .filter(candidate -> candidate.score() > threshold)
+                    .toList();
+            if (!better.isEmpty()) {
+                List<MovieIndex.ScoredMovie> merged = new ArrayList<>(list);
+                merged.addAll(better);
+                merged.sort(Comparator.comparingDouble(MovieIndex.ScoredMovie::score).reversed());
+                changed.put(movieId, merged.size() > k ? List.copyOf(merged.subList(0, k)) : merged);
+            }
+        });
+
+        store(changed);
+        log.info("Похожие фильмы: {} новых фильмов, обновлено {} списков за {} мс",
+                movieIds.size(), changed.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Ближайшие к фильму фильмы без него самого. В режиме ann итоговая оценка считается только
+     * для кандидатов из ANN-индекса, как в RecommendationService.
+     */
+    private List<MovieIndex.ScoredMovie> nearest(Long movieId, int limit) {
+        Map<String, Double> genres = movieIndex.genresOf(movieId);
+        if (genres.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> self = Set.of(movieId);
+        if (movieAnnIndex.isReady()) {
+            return movieIndex.rank(genres, weights, movieAnnIndex.search(genres, annCandidates + 1), limit, self);
+        }
+        return movieIndex.topK(genres, weights, limit, self, 0);
+    }
+
+    private void store(Map<Long, List<MovieIndex.ScoredMovie>> lists) {
+        if (lists.isEmpty()) {
+            return;
+        }
+
+        List<SqlParameterSource> rows = new ArrayList<>();
+        lists.forEach((movieId, neighbours) -> {
+            for (int i = 0; i < neighbours.size(); i++) {
+                rows.add(new MapSqlParameterSource()
+                        .addValue("movieId", movieId)
+                        .addValue("neighbourId", neighbours.get(i).movieId())
+                        .addValue("position", i)
+                        .addValue("similarity", neighbours.get(i).similarity())
+                        .addValue("score", neighbours.get(i).score()));
+            }
+        });
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (List<Long> chunk : chunks(new ArrayList<>(lists.keySet()))) {
+                jdbcTemplate.update("DELETE FROM movie_neighbour WHERE movie_id IN (:movieIds)", Map.of("movieIds", chunk));
+            }
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO movie_neighbour (movie_id, neighbour_id, position, similarity, score)
+                    VALUES (:movieId, :neighbourId, :position, :similarity, :score)""",
+                    rows.toArray(SqlParameterSource[]::new));
+        });
+    }
+
+    private List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + batchSize)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.service;
+
+import java.util.Collection;
+
+/**
+ * Публикуется, когда оценки пользователей бота по фильмам изменились (MovieStatsService).
+ *
+ * @param movieIds Movie.id фильмов, у которых изменились суммы оценок
+ */
+public record MovieStatsChangedEvent(Collection<Long> movieIds) {
+}
@@ -0,0 +1,258 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Оценки пользователей бота по каждому фильму в сумме: число оценок, сумма и сумма квадратов.
+ * Из них за O(1) получаются средняя, разброс и оценка фильма для ранжирования, без агрегатов
+ * по user_movie_rating.
+ * <p>
+ * Каждая оценка меняет суммы на месте: новая добавляет себя, изменённая - разницу с прежней.
+ * Приращения копятся в памяти узла в LongAdder (запись из многих потоков не спорит за одну
+ * ячейку) и раз в flush-interval прибавляются к movie_stats одной пачкой. Запись в таблицу -
+ * сложение, а не замена, поэтому узлы сбрасывают свои приращения независимо, без лидера.
+ * Суммы, сброшенные другими узлами, дочитываются по updated_at.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MovieStatsService {
+    // Строки, записанные до коммита чужой транзакции, могут стать видны позже; дочитываем с запасом
+    private static final long REFRESH_OVERLAP_MILLIS = 5000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${spring.stats.prior-mean}")
+    private double priorMean;
+
+    @Value("${spring.stats.prior-votes}")
+    private double priorVotes;
+
+    // pending меняется на пустую карту под write-блокировкой, запись приращений идёт под read
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Delta> pending = new ConcurrentHashMap<>();
+    private Map<Long, Delta> flushing = Map.of(); // Сброшены в базу, но ещё не перечитаны
+    private final Map<Long, Stats> committed = new ConcurrentHashMap<>();
+    private Timestamp refreshedUpTo = new Timestamp(0);
+
+    /**
+     * Суммы оценок фильма.
+     */
+    public record Stats(long count, long sum, long sumSquares) {
+        public static final Stats EMPTY = new Stats(0, 0, 0);
+
+        public double mean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        public double stdDev() {
+            if (count == 0) {
+                return 0;
+            }
+            double mean = mean();
+            return Math.sqrt(Math.max(0, (double) sumSquares / count - mean * mean));
+        }
+
+        private Stats plus(long count, long sum, long sumSquares) {
+            return new Stats(this.count + count, this.sum + sum, this.sumSquares + sumSquares);
+        }
+    }
+
+    private static final class Delta {
+        final LongAdder count = new LongAdder();
+        final LongAdder sum = new LongAdder();
+        final LongAdder sumSquares = new LongAdder();
+    }
+
+    @PostConstruct
+    public void init() {
+        List<Long> changed = refresh();
+        log.info("Загружены оценки пользователей по {} фильмам", changed.size());
+    }
+
+    // Перечитывать таблицу и рассылать событие при остановке незачем: получатели уже уничтожены
+    @PreDestroy
+    public synchronized void shutdown() {
+        Map<Long, Delta> deltas = swap();
+        if (!deltas.isEmpty()) {
+            write(deltas);
+        }
+    }
+
+    /**
+     * Учитывает оценку фильма.
+     *
+     * @param previous прежняя оценка пользователя или null, если фильм оценён впервые
+     */
+    public void recordRating(long movieId, Integer previous, int rating) {
+        lock.readLock().lock();
+        try {
+            Delta delta = pending.computeIfAbsent(movieId, id -> new Delta());
+            if (previous == null) {
+                delta.count.increment();
+                delta.sum.add(rating);
+                delta.sumSquares.add((long) rating * rating);
+            } else {
+                delta.sum.add(rating - previous);
+                delta.sumSquares.add((long) rating * rating - (long) previous * previous);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Суммы оценок фильма с учётом ещё не сброшенных в базу.
+     */
+    public Stats stats(long movieId) {
+        lock.readLock().lock();
+        try {
+            Stats stats = plus(committed.getOrDefault(movieId, Stats.EMPTY), flushing.get(movieId));
+            return plus(stats, pending.get(movieId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Оценка фильма зрителями бота в [0, 1] для ранжирования: средняя оценка, сглаженная
+     * к prior-mean так, будто фильм уже получил prior-votes таких оценок. Один-два восторженных
+     * голоса не поднимают фильм выше фильма с сотней хороших.
+     */
+    public float score(long movieId) {
+        Stats stats = stats(movieId);
+        if (stats.count() + priorVotes <= 0) {
+            return (float) (priorMean / 10);
+        }
+        return (float) ((stats.sum() + priorMean * priorVotes) / (stats.count() + priorVotes) / 10);
+    }
+
+    /**
+     * Прибавляет накопленные приращения к movie_stats и перечитывает изменившиеся строки.
+     */
+    @Scheduled(fixedDelayString = "${spring.stats.flush-interval}")
+    public synchronized void flush() {
+        Map<Long, Delta> deltas = swap();
+        if (!deltas.isEmpty()) {
+            try {
+                write(deltas);
+            } catch (Exception e) {
+                log.error("Не удалось сохранить оценки по {} фильмам: {}", deltas.size(), e.getMessage(), e);
+                restore(deltas);
+                return;
+            }
+        }
+
+        List<Long> changed = refresh();
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new MovieStatsChangedEvent(changed));
+        }
+    }
+
+    private Map<Long, Delta> swap() {
+        lock.writeLock().lock();
+        try {
+            Map<Long, Delta> deltas = pending;
+            flushing = deltas;
+            pending = new ConcurrentHashMap<>();
+            return deltas;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Map<Long, Delta> deltas) {
+        List<SqlParameterSource> rows = new ArrayList<>(deltas.size());
+        deltas.forEach((movieId, delta) -> rows.add(new MapSqlParameterSource()
+                .addValue("movieId", movieId)
+                .addValue("count", delta.count.sum())
+                .addValue("sum", delta.sum.sum())
+                .addValue("sumSquares", delta.sumSquares.sum())));
+
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate("""
+                INSERT INTO movie_stats (movie_id, rating_count, rating_sum, rating_sum_squares, updated_at)
+                VALUES (:movieId, :count, :sum, :sumSquares, CURRENT_TIMESTAMP(6))
+                ON DUPLICATE KEY UPDATE rating_count = rating_count + VALUES(rating_count),
+                    rating_sum = rating_sum + VALUES(rating_sum),
+                    rating_sum_squares = rating_sum_squares + VALUES(rating_sum_squares),
+                    updated_at = VALUES(updated_at)""",
+                rows.toArray(SqlParameterSource[]::new)));
+    }
+
+    // Несохранённые приращения возвращаются в pending и уйдут со следующим сбросом
+    private void restore(Map<Long, Delta> deltas) {
+        lock.writeLock().lock();
+        try {
+            deltas.forEach((movieId, delta) -> {
+                Delta target = pending.computeIfAbsent(movieId, id -> new Delta());
+                target.count.add(delta.count.sum());
+                target.sum.add(delta.sum.sum());
+                target.sumSquares.add(delta.sumSquares.sum());
+            });
+            flushing = Map.of();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Дочитывает строки movie_stats, изменённые после прошлого чтения. Сброшенные этим узлом
+     * приращения перестают учитываться отдельно в тот же момент, когда их суммы попадают в committed.
+     */
+    private List<Long> refresh() {
+        Map<Long, Stats> rows = new HashMap<>();
+        Timestamp since = new Timestamp(Math.max(0, refreshedUpTo.getTime() - REFRESH_OVERLAP_MILLIS));
+        Timestamp[] upTo = {refreshedUpTo};
+        jdbcTemplate.query("""
+                SELECT movie_id, rating_count, rating_sum, rating_sum_squares, updated_at
+                FROM movie_stats WHERE updated_at >= :since""", Map.of("since", since), rs -> {
+            rows.put(rs.getLong("movie_id"), new Stats(rs.getLong("rating_count"), rs.getLong("rating_sum"),
+                    rs.getLong("rating_sum_squares")));
+            Timestamp updatedAt = rs.getTimestamp("updated_at");
+            if (updatedAt.after(upTo[0])) {
+                upTo[0] = updatedAt;
+            }
+        });
+
+        List<Long> changed = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            rows.forEach((movieId, stats) -> {
+                if (!stats.equals(committed.put(movieId, stats))) {
+                    changed.add(movieId);
+                }
+            });
+            flushing = Map.of();
+            refreshedUpTo = upTo[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return changed;
+    }
+
+    private static Stats plus(Stats stats, Delta delta) {
+        return delta == null ? stats : stats.plus(delta.count.sum(), delta.sum.sum(), delta.sumSquares.sum());
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.repository.LocalizedTitleView;
+import org.example.repository.MovieLocalizationRepository;
+import org.example.repository.MovieRepository;
+import org.example.repository.MovieTitleView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Поиск фильмов по началу названия в памяти узла, для inline-режима: ответ на каждое нажатие
+ * клавиши не ходит ни в TMDb, ни в базу.
+ * <p>
+ * Названия на языке каталога и все загруженные переводы приводятся к нижнему регистру без
+ * знаков препинания, и в упорядоченную карту кладётся каждый суффикс названия, начинающийся
+ * со слова: "властелин колец" находится и по "влас", и по "кол". Поиск - диапазон карты по
+ * префиксу; совпадения упорядочиваются по числу голосов TMDb.
+ * <p>
+ * Ключи обрезаны до {@link #MAX_KEY_LENGTH} символов, поэтому запрос длиннее сравнивается
+ * только своим началом.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MovieTitleIndex {
+    static final int MAX_KEY_LENGTH = 32;
+    // Сколько совпадений префикса просматривается для ранжирования; короткий префикс вроде "с"
+    // совпадает с большой частью каталога, и полный перебор не уложился бы в ответ на нажатие
+    private static final int SCAN_LIMIT = 5000;
+    // Id фильмов выдаются до коммита, поэтому догрузка начинается чуть раньше последнего id
+    private static final long CATCH_UP_OVERLAP = 1000;
+    private static final char ID_SEPARATOR = '\u0000';
+
+    private final MovieRepository movieRepository;
+    private final MovieLocalizationRepository movieLocalizationRepository;
+
+    @Value("${spring.inline.batch-size}")
+    private int batchSize;
+
+    private final ConcurrentSkipListMap<String, Long> entries = new ConcurrentSkipListMap<>(); // "суффикс\0id" -> Movie.id
+    private final Map<Long, Integer> voteCounts = new ConcurrentHashMap<>();
+    private long moviesUpTo;
+    private long localizationsUpTo;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        CompletableFuture.runAsync(this::refresh);
+    }
+
+    /**
+     * Догружает фильмы и переводы, появившиеся после прошлой загрузки. Новые фильмы приходят
+     * и событиями ленты изменений, а переводы - только так, с задержкой до refresh-interval.
+     */
+    @Scheduled(fixedDelayString = "${spring.inline.refresh-interval}")
+    public synchronized void refresh() {
+        long start = System.nanoTime();
+        int movies = 0;
+        List<MovieTitleView> movieBatch;
+        long after = Math.max(0, moviesUpTo - CATCH_UP_OVERLAP);
+        do {
+            movieBatch = movieRepository.findTitlesByIdGreaterThan(after, PageRequest.of(0, batchSize));
+            for (MovieTitleView movie : movieBatch) {
+                add(movie);
+                after = movie.getId();
+            }
+            movies += movieBatch.size();
+        } while (movieBatch.size() == batchSize);
+        moviesUpTo = Math.max(moviesUpTo, after);
+
+        int titles = 0;
+        List<LocalizedTitleView> titleBatch;
+        do {
+            titleBatch = movieLocalizationRepository.findTitlesByIdGreaterThan(localizationsUpTo, PageRequest.of(0, batchSize));
+            for (LocalizedTitleView title : titleBatch) {
+                addTitle(title.getMovieId(), title.getTitle());
+                localizationsUpTo = title.getId();
+            }
+            titles += titleBatch.size();
+        } while (titleBatch.size() == batchSize);
+
+        if (movies + titles > CATCH_UP_OVERLAP) {
+            log.info("Индекс названий для inline-поиска: прочитано {} фильмов и {} переводов, {} ключей за {} мс",
+                    movies, titles, entries.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidationEvent event) {
+        if (event.topic() != ChangeFeedService.Topic.MOVIES) {
+            return;
+        }
+
+        // Без ключа - добавлено много фильмов сразу (импорт каталога): дочитываем хвост по id
+        if (event.entityKey() == null) {
+            CompletableFuture.runAsync(this::refresh);
+        } else {
+            movieRepository.findTitleByMovieId(Long.valueOf(event.entityKey())).ifPresent(this::add);
+        }
+    }
+
+    /**
+     * Movie.id до {@code limit} фильмов, в названии которых есть слово, начинающееся с запроса
+     * (или фраза, если в запросе несколько слов), по убыванию числа голосов.
+     */
+    public List<Long> search(String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        if (prefix.length() > MAX_KEY_LENGTH) {
+            prefix = prefix.substring(0, MAX_KEY_LENGTH);
+        }
+
+        Set<Long> matched = new LinkedHashSet<>();
+        for (Long movieId : entries.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            matched.add(movieId);
+            if (matched.size() >= SCAN_LIMIT) {
+                break;
+            }
+        }
+
+        List<Long> ranked = new ArrayList<>(matched);
+        ranked.sort(Comparator.comparingInt((Long movieId) -> voteCounts.getOrDefault(movieId, 0)).reversed());
+        return ranked.size() > limit ? List.copyOf(ranked.subList(0, limit)) : ranked;
+    }
+
+    public int size() {
+        return voteCounts.size();
+    }
+
+    private void add(MovieTitleView movie) {
+        voteCounts.put(movie.getId(), movie.getVoteCount() != null ? movie.getVoteCount() : 0);
+        addTitle(movie.getId(), movie.getTitle());
+    }
+
+    private void addTitle(Long movieId, String title) {
+        String normalized = normalize(title);
+        for (int i = 0; i < normalized.length(); i++) {
+            if (i == 0 || normalized.charAt(i - 1) == ' ') {
+                String suffix = normalized.substring(i, Math.min(normalized.length(), i + MAX_KEY_LENGTH));
+                entries.put(suffix + ID_SEPARATOR + movieId, movieId);
+            }
+        }
+    }
+
+    /**
+     * Нижний регистр, "ё" как "е", вместо знаков препинания - одиночные пробелы.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+                space = false;
+            } else if (!space) {
+                normalized.append(' ');
+                space = true;
+            }
+        }
+        int length = normalized.length();
+        if (length > 0 && normalized.charAt(length - 1) == ' ') {
+            normalized.setLength(length - 1);
+        }
+        return normalized.toString();
+    }
+}
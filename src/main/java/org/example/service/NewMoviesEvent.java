@@ -0,0 +1,12 @@
+package org.example.service;
+
+import java.util.Collection;
+
+/**
+ * Публикуется на лидере после ночного обхода TMDb (лучшие фильмы и фильмы в прокате),
+ * если в каталог добавлены новые фильмы.
+ *
+ * @param movieIds Movie.id добавленных фильмов
+ */
+public record NewMoviesEvent(Collection<Long> movieIds) {
+}
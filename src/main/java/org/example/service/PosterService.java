@@ -0,0 +1,177 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.Movie;
+import org.example.repository.MovieRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Постеры фильмов для карточек.
+ * <p>
+ * Картинка с сервера изображений TMDb скачивается один раз в локальный каталог dir и при первой
+ * отправке загружается в Telegram; file_id из ответа сохраняется в movie.poster_file_id, и все
+ * следующие отправки - ссылка на уже загруженный файл, без скачивания и загрузки.
+ * <p>
+ * Пользователь не ждёт скачивания: пока постера нет на диске, карточка уходит текстом, а постер
+ * ставится в очередь. Новые фильмы (обход популярных, импорт каталога, поиск) ставятся в неё
+ * сразу. Очередь ограничена queue-size: что не поместилось, скачается при следующей встрече
+ * с фильмом.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PosterService {
+    // Путь постера TMDb - "/" и имя файла; всё остальное не должно попасть в путь на диске
+    private static final Pattern POSTER_PATH = Pattern.compile("/[A-Za-z0-9_-]+\\.(jpg|jpeg|png|webp)");
+
+    private final MovieRepository movieRepository;
+    private final BotMetrics botMetrics;
+
+    @Value("${spring.posters.enabled}")
+    private boolean enabled;
+
+    @Value("${spring.posters.image-url}")
+    private String imageUrl;
+
+    @Value("${spring.posters.size}")
+    private String size;
+
+    @Value("${spring.posters.dir}")
+    private Path dir;
+
+    @Value("${spring.posters.queue-size}")
+    private int queueSize;
+
+    @Value("${spring.posters.threads}")
+    private int threads;
+
+    @Value("${spring.posters.timeout}")
+    private Duration timeout;
+
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor prefetcher;
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(dir.resolve(size));
+        prefetcher = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout((int) timeout.toMillis());
+        factory.setReadTimeout((int) timeout.toMillis());
+        restTemplate = new RestTemplate(factory);
+        log.info("Постеры: {} в {}", size, dir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+    }
+
+    /**
+     * Постер для отправки: file_id, если фильм уже отправлялся с постером, иначе файл с диска.
+     * null - постера нет или он ещё не скачан; тогда он ставится в очередь.
+     */
+    public InputFile photo(Movie movie) {
+        if (!enabled) {
+            return null;
+        }
+        if (movie.getPosterFileId() != null) {
+            botMetrics.cacheHit("posters");
+            return new InputFile(movie.getPosterFileId());
+        }
+        Path file = file(movie.getPosterPath());
+        if (file == null) {
+            return null;
+        }
+        if (Files.exists(file)) {
+            botMetrics.cacheHit("posters");
+            return new InputFile(file.toFile());
+        }
+        botMetrics.cacheMiss("posters");
+        prefetch(movie.getPosterPath());
+        return null;
+    }
+
+    /**
+     * Ставит постер в очередь на скачивание, если его ещё нет на диске. Не ждёт и не бросает
+     * исключений: при полной очереди постер просто пропускается.
+     */
+    public void prefetch(String posterPath) {
+        Path file = enabled ? file(posterPath) : null;
+        if (file == null || Files.exists(file) || !queued.add(posterPath)) {
+            return;
+        }
+        try {
+            prefetcher.execute(() -> {
+                try {
+                    download(posterPath, file);
+                } finally {
+                    queued.remove(posterPath);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(posterPath);
+        }
+    }
+
+    /**
+     * Запоминает file_id загруженного в Telegram постера; null - file_id отклонён Telegram,
+     * и постер снова будет загружаться с диска.
+     */
+    public void rememberFileId(Movie movie, String fileId) {
+        movie.setPosterFileId(fileId);
+        movieRepository.updatePosterFileId(movie.getId(), fileId);
+    }
+
+    private void download(String posterPath, Path file) {
+        try {
+            byte[] image = restTemplate.getForObject(imageUrl + "/" + size + posterPath, byte[].class);
+            if (image == null || image.length == 0) {
+                return;
+            }
+            // Через временный файл, чтобы отправка не подхватила недописанную картинку
+            Path temp = Files.createTempFile(file.getParent(), "poster", ".tmp");
+            try {
+                Files.write(temp, image);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось скачать постер {}: {}", posterPath, e.getMessage());
+        }
+    }
+
+    private Path file(String posterPath) {
+        if (posterPath == null || !POSTER_PATH.matcher(posterPath).matches()) {
+            return null;
+        }
+        return dir.resolve(size).resolve(posterPath.substring(1));
+    }
+}
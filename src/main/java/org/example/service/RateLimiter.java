@@ -0,0 +1,62 @@
+package org.example.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Равномерный ограничитель частоты: разрешения выдаются не чаще одного в 1/rate секунды,
+ * без накопления запаса за время простоя. Общий для всех потоков, которые его вызывают.
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private long nextFreeAt = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Частота должна быть положительной: " + permitsPerSecond);
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    /**
+     * Ждёт своей очереди. Место в очереди занимается сразу, так что одновременные
+     * вызовы из разных потоков расходятся по времени, а не просыпаются разом.
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeAt < now) {
+                nextFreeAt = now;
+            }
+            wait = nextFreeAt - now;
+            nextFreeAt += intervalNanos;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Выдаёт разрешение без ожидания, если очередь не длиннее {@code burst} интервалов;
+     * иначе отказывает, не занимая места. Так можно сделать до burst запросов подряд,
+     * а дальше - не чаще заданной частоты.
+     */
+    public synchronized boolean tryAcquire(int burst) {
+        long now = System.nanoTime();
+        if (nextFreeAt < now) {
+            nextFreeAt = now;
+        }
+        if (nextFreeAt - now >= burst * intervalNanos) {
+            return false;
+        }
+        nextFreeAt += intervalNanos;
+        return true;
+    }
+
+    /**
+     * Очередь пуста дольше {@code idleNanos}: ограничитель можно выбросить без потери состояния.
+     */
+    public synchronized boolean isIdle(long idleNanos) {
+        return System.nanoTime() - nextFreeAt > idleNanos;
+    }
+}
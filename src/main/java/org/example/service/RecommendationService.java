@@ -0,0 +1,251 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.entity.UserRecommendation;
+import org.example.entity.Usr;
+import org.example.repository.MovieRepository;
+import org.example.repository.RatedGenresView;
+import org.example.repository.UserMovieRatingRepository;
+import org.example.repository.UserRecommendationRepository;
+import org.example.repository.UsrRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Материализованные рекомендации: для каждого активного пользователя в таблице
+ * user_recommendation хранится готовый top-N, поэтому "❤️ Рекомендации" и
+ * "🏆 Лучшее совпадение" читают его по ключу, а не считают сходство по каталогу.
+ * <p>
+ * Фоновый пересчёт на лидере: пользователи, оценившие что-то новое, пересчитываются
+ * полностью; при росте каталога новые фильмы прогоняются только против уже
+ * сохранённых списков; списки старше refresh-after обновляются по расписанию.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecommendationService {
+    private final MovieIndex movieIndex;
+    private final MovieAnnIndex movieAnnIndex;
+    private final UsrRepository usrRepository;
+    private final MovieRepository movieRepository;
+    private final UserMovieRatingRepository userMovieRatingRepository;
+    private final UserRecommendationRepository userRecommendationRepository;
+    private final ClusterService clusterService;
+    private final BotMetrics botMetrics;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.recommendations.top-n}")
+    private int topN;
+
+    @Value("${spring.recommendations.batch-size}")
+    private int batchSize;
+
+    @Value("${spring.recommendations.refresh-after}")
+    private Duration refreshAfter;
+
+    @Value("${spring.recommendations.max-staleness}")
+    private Duration maxStaleness;
+
+    @Value("${spring.ann.candidates}")
+    private int annCandidates;
+
+    @Value("${spring.recommendations.weights.genre}")
+    private float genreWeight;
+
+    @Value("${spring.recommendations.weights.rating}")
+    private float ratingWeight;
+
+    @Value("${spring.recommendations.weights.popularity}")
+    private float popularityWeight;
+
+    @Value("${spring.recommendations.weights.recency}")
+    private float recencyWeight;
+
+    @Value("${spring.recommendations.weights.community}")
+    private float communityWeight;
+
+    private MovieIndex.Weights weights;
+    private int processedCatalogSize = -1;
+
+    @PostConstruct
+    public void init() {
+        weights = new MovieIndex.Weights(genreWeight, ratingWeight, popularityWeight, recencyWeight, communityWeight);
+        log.info("Веса ранжирования рекомендаций: {}", weights);
+    }
+
+    /**
+     * Готовые рекомендации пользователя. Считаются на месте, если их ещё нет, они старше
+     * max-staleness или пользователь оценил что-то после пересчёта (иначе он увидел бы в списке
+     * только что оценённый фильм); остальное обновляет фоновая задача.
+     * <p>
+     * Список читается в read-only транзакции (с реплики, если она настроена). Пересчёт пишет
+     * в отдельной транзакции на основной базе, и реплика может ещё не видеть его результат,
+     * поэтому посчитанные строки возвращаются сразу, с фильмами из текущей сессии.
+     */
+    @Transactional(readOnly = true)
+    public List<UserRecommendation> getRecommendations(Usr user) {
+        Instant updatedAt = user.getRecommendationsUpdatedAt();
+        if (updatedAt == null || updatedAt.isBefore(Instant.now().minus(maxStaleness))
+                || Boolean.TRUE.equals(user.getRecommendationsDirty())) {
+            List<UserRecommendation> rows = newTransaction().execute(status -> recompute(user));
+            rows.forEach(row -> row.setMovie(movieRepository.getReferenceById(row.getMovie().getId())));
+            return rows;
+        }
+        return userRecommendationRepository.findByUserIdOrderByPositionAsc(user.getId());
+    }
+
+    @Transactional
+    public List<UserRecommendation> recompute(Usr user) {
+        List<RatedGenresView> ratings = userMovieRatingRepository.findRatedGenresByUserId(user.getId());
+        Map<String, Double> userGenres = CommandProcessingService.aggregateGenres(ratings);
+        Set<Long> rated = ratings.stream().map(RatedGenresView::getMovieId).collect(Collectors.toSet());
+        return store(user, score(userGenres, rated, topN));
+    }
+
+    /**
+     * Лучшие для вектора жанров фильмы каталога с весами рекомендаций, кроме {@code exclude}.
+     * Вектор не обязательно принадлежит одному пользователю: так же ранжируются и группы.
+     */
+    public List<MovieIndex.ScoredMovie> score(Map<String, Double> userGenres, Set<Long> exclude, int limit) {
+        long start = System.nanoTime();
+        // В режиме ann итоговая оценка считается только для ближайших по вектору фильмов;
+        // пока ANN-индекс строится, работает точный проход по каталогу
+        if (movieAnnIndex.isReady()) {
+            List<Long> candidates = movieAnnIndex.search(userGenres, annCandidates + exclude.size());
+            List<MovieIndex.ScoredMovie> scored = movieIndex.rank(userGenres, weights, candidates, limit, exclude);
+            botMetrics.recordRecommendation("ann", candidates.size(), System.nanoTime() - start);
+            return scored;
+        }
+        List<MovieIndex.ScoredMovie> scored = movieIndex.topK(userGenres, weights, limit, exclude, 0);
+        botMetrics.recordRecommendation("materialize", movieIndex.size(), System.nanoTime() - start);
+        return scored;
+    }
+
+    @Scheduled(fixedDelayString = "${spring.recommendations.refresh-interval}")
+    public void refresh() {
+        if (!clusterService.isLeader()) {
+            return;
+        }
+
+        int catalogSize = movieIndex.size();
+        if (processedCatalogSize < 0) {
+            processedCatalogSize = catalogSize;
+        } else if (catalogSize > processedCatalogSize) {
+            mergeNewMovies(processedCatalogSize);
+            processedCatalogSize = catalogSize;
+        }
+
+        Pageable batch = PageRequest.of(0, batchSize);
+        usrRepository.findByRecommendationsDirtyTrue(batch).forEach(this::recomputeInTransaction);
+        usrRepository.findByRecommendationsUpdatedAtBefore(Instant.now().minus(refreshAfter), batch)
+                .forEach(this::recomputeInTransaction);
+    }
+
+    /**
+     * Новые фильмы с позиции {@code from} индекса попадают в список пользователя,
+     * только если обходят по итоговой оценке его худшую сохранённую рекомендацию
+     * и ещё не оценены им (новый фильм можно найти поиском и оценить до слияния).
+     */
+    private void mergeNewMovies(int from) {
+        long start = System.nanoTime();
+        int updated = 0;
+        Slice<Usr> users;
+        Pageable page = PageRequest.of(0, batchSize);
+        do {
+            users = usrRepository.findByRecommendationsUpdatedAtIsNotNull(page);
+            for (Usr user : users) {
+                if (user.getGenrePreferences() == null) {
+                    continue;
+                }
+                Boolean merged = transactionTemplate.execute(status -> mergeNewMovies(user, from));
+                if (Boolean.TRUE.equals(merged)) {
+                    updated++;
+                }
+            }
+            page = users.nextPageable();
+        } while (users.hasNext());
+
+        log.info("Новые фильмы с позиции {} учтены в рекомендациях: обновлено {} пользователей за {} мс",
+                from, updated, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private boolean mergeNewMovies(Usr user, int from) {
+        List<UserRecommendation> current = userRecommendationRepository.findByUserIdOrderByPositionAsc(user.getId());
+        double threshold = current.size() < topN ? Double.NEGATIVE_INFINITY : current.get(current.size() - 1).getScore();
+
+        List<MovieIndex.ScoredMovie> candidates = movieIndex.topK(
+                CommandProcessingService.jsonToMap(user.getGenrePreferences()), weights, topN,
+                userMovieRatingRepository.findRatedMovieIds(user.getId()), from)
+                .stream()
+                .filter(candidate -> candidate.score() > threshold)
+                .toList();
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        Map<Long, MovieIndex.ScoredMovie> merged = new HashMap<>();
+        current.forEach(row -> merged.put(row.getMovie().getId(),
+                new MovieIndex.ScoredMovie(row.getMovie().getId(), row.getSimilarity(), row.getScore())));
+        candidates.forEach(candidate -> merged.put(candidate.movieId(), candidate));
+
+        store(user, merged.values().stream()
+                .sorted(Comparator.comparingDouble(MovieIndex.ScoredMovie::score).reversed())
+                .limit(topN)
+                .toList());
+        return true;
+    }
+
+    private void recomputeInTransaction(Usr user) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> recompute(user));
+        } catch (Exception e) {
+            log.error("Не удалось пересчитать рекомендации пользователя {}: {}", user.getId(), e.getMessage(), e);
+        }
+    }
+
+    private List<UserRecommendation> store(Usr user, List<MovieIndex.ScoredMovie> scored) {
+        userRecommendationRepository.deleteByUserId(user.getId());
+
+        List<UserRecommendation> rows = new ArrayList<>(scored.size());
+        for (int i = 0; i < scored.size(); i++) {
+            UserRecommendation row = new UserRecommendation();
+            row.setUserId(user.getId());
+            row.setMovie(movieRepository.getReferenceById(scored.get(i).movieId()));
+            row.setPosition(i);
+            row.setSimilarity(scored.get(i).similarity());
+            row.setScore(scored.get(i).score());
+            rows.add(row);
+        }
+        userRecommendationRepository.saveAll(rows);
+
+        user.setRecommendationsDirty(false);
+        user.setRecommendationsUpdatedAt(Instant.now());
+        usrRepository.save(user);
+        return rows;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+}
@@ -0,0 +1,285 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Снимки тёплого состояния узла на локальном диске: словари жанров TMDb по языкам и индекс фильмов.
+ * При запуске снимки отображаются в память и загружаются до старта бота, поэтому узел сразу
+ * готов отвечать, даже если TMDb недоступен; остальное индекс догружает из базы (MovieIndex.catchUp).
+ * <p>
+ * Формат файла: заголовок (магическое число, версия формата, вид снимка, время создания, длина данных),
+ * данные и CRC32 данных. Снимок другой версии формата или с неверной контрольной суммой пропускается.
+ * Файл пишется во временный и переименовывается, так что при сбое остаётся предыдущий снимок.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SnapshotService {
+    private static final int MAGIC = 0x46425348; // "FBSH"
+    private static final short FORMAT_VERSION = 3; // 2: словари жанров по языкам, 3: сигналы качества в индексе
+    private static final byte GENRES = 1;
+    private static final byte MOVIE_INDEX = 2;
+    private static final int HEADER_BYTES = 4 + 2 + 1 + 8 + 4;
+    private static final int TRAILER_BYTES = 8;
+
+    private final TmdbService tmdbService;
+    private final MovieIndex movieIndex;
+
+    @Value("${spring.snapshot.enabled}")
+    private boolean enabled;
+
+    @Value("${spring.snapshot.dir}")
+    private Path dir;
+
+    private long writtenGenresVersion = -1;
+    private long writtenIndexVersion = -1;
+
+    @PostConstruct
+    public void restore() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        ByteBuffer genres = read("genres.snap", GENRES);
+        if (genres != null) {
+            readGenres(genres).forEach(tmdbService::cacheGenres);
+            writtenGenresVersion = tmdbService.getGenresVersion();
+        }
+        ByteBuffer index = read("movie-index.snap", MOVIE_INDEX);
+        if (index != null) {
+            movieIndex.restore(readIndex(index));
+            writtenIndexVersion = movieIndex.version();
+        }
+        log.info("Снимки загружены за {} мс: жанров {}, фильмов в индексе {}",
+                (System.nanoTime() - start) / 1_000_000, genres != null ? "есть" : "нет", movieIndex.size());
+    }
+
+    /**
+     * Записывает снимки, если состояние изменилось с прошлой записи. Каждый узел пишет свои:
+     * снимок лежит на локальном диске и нужен только этому узлу.
+     * <p>
+     * Вызывается и по расписанию, и при остановке, поэтому синхронизирован: у снимка один
+     * временный файл, и две записи одновременно испортили бы его.
+     */
+    @Scheduled(fixedDelayString = "${spring.snapshot.interval}", initialDelayString = "${spring.snapshot.interval}")
+    public synchronized void write() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(dir);
+            long genresVersion = tmdbService.getGenresVersion();
+            Map<String, Map<Integer, String>> genres = tmdbService.getGenres();
+            if (genresVersion != writtenGenresVersion && !genres.isEmpty()) {
+                writeGenres(genres);
+                writtenGenresVersion = genresVersion;
+            }
+            // Версия читается до снимка: изменение между ними лишь повторит запись в следующий раз
+            long indexVersion = movieIndex.version();
+            if (indexVersion != writtenIndexVersion) {
+                writeIndex(movieIndex.snapshot());
+                writtenIndexVersion = indexVersion;
+            }
+        } catch (IOException e) {
+            log.error("Не удалось записать снимки в {}: {}", dir, e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        write();
+    }
+
+    private void writeGenres(Map<String, Map<Integer, String>> genres) throws IOException {
+        Map<byte[], Map<Integer, byte[]>> encoded = new HashMap<>();
+        int bytes = 4;
+        for (Map.Entry<String, Map<Integer, String>> language : genres.entrySet()) {
+            Map<Integer, byte[]> names = new HashMap<>(language.getValue().size() * 2);
+            byte[] code = language.getKey().getBytes(StandardCharsets.UTF_8);
+            bytes += 2 + code.length + 4;
+            for (Map.Entry<Integer, String> genre : language.getValue().entrySet()) {
+                byte[] name = genre.getValue().getBytes(StandardCharsets.UTF_8);
+                names.put(genre.getKey(), name);
+                bytes += 4 + 2 + name.length;
+            }
+            encoded.put(code, names);
+        }
+
+        MappedByteBuffer out = open("genres.snap", GENRES, bytes);
+        out.putInt(encoded.size());
+        encoded.forEach((code, names) -> {
+            putString(out, code);
+            out.putInt(names.size());
+            names.forEach((id, name) -> {
+                out.putInt(id);
+                putString(out, name);
+            });
+        });
+        commit("genres.snap", out, bytes);
+    }
+
+    private void writeIndex(MovieIndex.Snapshot snapshot) throws IOException {
+        int size = snapshot.size();
+        List<byte[]> genres = new ArrayList<>(snapshot.genres().size());
+        long bytes = 4 + 4 + (long) size * (8 + 4 * 4) + (long) snapshot.genres().size() * size * 4;
+        for (String genre : snapshot.genres()) {
+            byte[] encoded = genre.getBytes(StandardCharsets.UTF_8);
+            genres.add(encoded);
+            bytes += 2 + encoded.length;
+        }
+        if (bytes > Integer.MAX_VALUE - HEADER_BYTES - TRAILER_BYTES) {
+            log.warn("Индекс слишком велик для снимка ({} байт), снимок не записан", bytes);
+            return;
+        }
+
+        MappedByteBuffer out = open("movie-index.snap", MOVIE_INDEX, (int) bytes);
+        out.putInt(size);
+        out.putInt(genres.size());
+        genres.forEach(genre -> putString(out, genre));
+        out.asLongBuffer().put(snapshot.ids());
+        out.position(out.position() + size * 8);
+        for (float[] values : List.of(snapshot.invNorms(), snapshot.quality(), snapshot.votes(), snapshot.recency())) {
+            out.asFloatBuffer().put(values);
+            out.position(out.position() + size * 4);
+        }
+        for (float[] column : snapshot.columns()) {
+            out.asFloatBuffer().put(column);
+            out.position(out.position() + size * 4);
+        }
+        commit("movie-index.snap", out, (int) bytes);
+    }
+
+    private static Map<String, Map<Integer, String>> readGenres(ByteBuffer in) {
+        int languages = in.getInt();
+        Map<String, Map<Integer, String>> genres = new HashMap<>();
+        for (int i = 0; i < languages; i++) {
+            String language = getString(in);
+            int count = in.getInt();
+            Map<Integer, String> names = new HashMap<>(count * 2);
+            for (int j = 0; j < count; j++) {
+                names.put(in.getInt(), getString(in));
+            }
+            genres.put(language, names);
+        }
+        return genres;
+    }
+
+    private static MovieIndex.Snapshot readIndex(ByteBuffer in) {
+        int size = in.getInt();
+        int genreCount = in.getInt();
+        List<String> genres = new ArrayList<>(genreCount);
+        for (int i = 0; i < genreCount; i++) {
+            genres.add(getString(in));
+        }
+        long[] ids = new long[size];
+        in.asLongBuffer().get(ids);
+        in.position(in.position() + size * 8);
+        float[][] signals = new float[4][size]; // invNorms, quality, votes, recency
+        for (float[] values : signals) {
+            in.asFloatBuffer().get(values);
+            in.position(in.position() + size * 4);
+        }
+        float[][] columns = new float[genreCount][size];
+        for (float[] column : columns) {
+            in.asFloatBuffer().get(column);
+            in.position(in.position() + size * 4);
+        }
+        return new MovieIndex.Snapshot(size, genres, ids, signals[0], signals[1], signals[2], signals[3], columns);
+    }
+
+    /**
+     * Отображает файл снимка в память и проверяет заголовок и контрольную сумму.
+     * Возвращает данные снимка или null, если снимка нет или он непригоден.
+     */
+    private ByteBuffer read(String name, byte kind) {
+        Path file = dir.resolve(name);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_BYTES + TRAILER_BYTES || in.getInt() != MAGIC
+                    || in.getShort() != FORMAT_VERSION || in.get() != kind) {
+                log.warn("Снимок {} другого формата, пропускаем", file);
+                return null;
+            }
+            long createdAt = in.getLong();
+            int length = in.getInt();
+            if (length < 0 || length != in.remaining() - TRAILER_BYTES) {
+                log.warn("Снимок {} обрезан, пропускаем", file);
+                return null;
+            }
+
+            ByteBuffer payload = in.slice(HEADER_BYTES, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != in.getLong(HEADER_BYTES + length)) {
+                log.warn("Снимок {} повреждён, пропускаем", file);
+                return null;
+            }
+            log.info("Снимок {} от {} ({} байт)", file, Instant.ofEpochMilli(createdAt), length);
+            return payload;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось прочитать снимок {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private MappedByteBuffer open(String name, byte kind, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(name + ".tmp"), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + length + TRAILER_BYTES);
+            out.putInt(MAGIC);
+            out.putShort(FORMAT_VERSION);
+            out.put(kind);
+            out.putLong(System.currentTimeMillis());
+            out.putInt(length);
+            return out;
+        }
+    }
+
+    private void commit(String name, MappedByteBuffer out, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(out.slice(HEADER_BYTES, length));
+        out.putLong(HEADER_BYTES + length, crc.getValue());
+        out.force();
+        Files.move(dir.resolve(name + ".tmp"), dir.resolve(name),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void putString(ByteBuffer out, byte[] value) {
+        out.putShort((short) value.length);
+        out.put(value);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] value = new byte[in.getShort() & 0xFFFF];
+        in.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
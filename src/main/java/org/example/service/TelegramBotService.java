@@ -1,43 +1,78 @@
 package org.example.service;
 
 import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.config.QueryCountingInspector;
 import org.example.entity.Movie;
-import org.example.entity.UserMovieRating;
 import org.example.entity.Usr;
 import org.example.repository.MovieRepository;
-import org.example.repository.UserMovieRatingRepository;
 import org.example.repository.UsrRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardRemove;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class TelegramBotService extends TelegramLongPollingBot {
+    private static final String CALLBACK_RATE = "rate";
+    private static final String CALLBACK_SKIP = "skip";
+    private static final String CALLBACK_SIMILAR = "similar";
+    private static final String CALLBACK_EXPORT = "export";
+    private static final String RATING_PROMPT = "\n\n❓ *Оцените фильм от 1 до 10:*";
+    private static final String NEW_RELEASE_HEADER = "🆕 *Новинка, которая может вам понравиться:*\n";
+    // Предел длины подписи к фото в Telegram
+    private static final int CAPTION_LIMIT = 1024;
+    private static final String BUSY_TEXT = "⏳ Сейчас слишком много запросов. Попробуйте ещё раз через несколько секунд.";
 
-    private final Map<String, Movie> activeRatings = new ConcurrentHashMap<>();
     private final Map<String, String> waitingForInput = new ConcurrentHashMap<>();
-    private final UserMovieRatingRepository userMovieRatingRepository;
     private final CommandProcessingService commandProcessingService;
     private final UsrRepository usrRepository;
     private final MovieRepository movieRepository;
-    private final TmdbService tmdbService;
+    private final ClusterService clusterService;
+    private final ChangeFeedService changeFeedService;
+    private final BotMetrics botMetrics;
+    private final MovieCardRenderer movieCardRenderer;
+    private final MovieLocalizationService movieLocalizationService;
+    private final InlineSearchService inlineSearchService;
+    private final AdmissionController admissionController;
+    private final PosterService posterService;
+    private final GroupRecommendationService groupRecommendationService;
+    private final RatingExportService ratingExportService;
 
     @Value("${spring.telegram.bot.username}")
     private String botUsername;
@@ -45,19 +80,65 @@ public class TelegramBotService extends TelegramLongPollingBot {
     @Value("${spring.telegram.bot.token}")
     private String botToken;
 
+    @Value("${spring.telegram.bot.api-url}")
+    private String botApiUrl;
+
     private final Map<String, Consumer<Update>> commandHandlers = new HashMap<>();
+    private Consumer<Update> unknownCommandHandler;
+    private Consumer<Update> searchInputHandler;
+    private final Map<String, Consumer<Update>> callbackHandlers = new HashMap<>();
+    private Consumer<Update> callbackHandler;
+    private Consumer<Update> inlineQueryHandler;
 
     @PostConstruct
     public void init() {
-        System.out.println("Username: " + botUsername);
-        System.out.println("Token: " + botToken);
+        log.info("Бот запускается под именем {}", botUsername);
+        // Через опции адрес API получают и execute(), и сессия long polling (getUpdates)
+        getOptions().setBaseUrl(botApiUrl);
+
+        commandHandlers.put("🔍 Поиск", admitted("search", this::handleSearchCommand));
+        commandHandlers.put("🌀 Случайный фильм", admitted("random", this::handleRateAllCommand));
+        commandHandlers.put("🎬 Популярные фильмы", admitted("popular", this::handleRatePopularCommand));
+        commandHandlers.put("🏆 Лучшее совпадение", admitted("best_match", this::handleMostPersonalCommand));
+        commandHandlers.put("❤️ Рекомендации", admitted("recommendations", this::handlePersonalCommand));
+        commandHandlers.put("📜 Мои оценки", admitted("my_ratings", this::handleAllRatedCommand));
+        commandHandlers.put("📤 Экспорт оценок", admitted("export", this::handleExportCommand));
+        unknownCommandHandler = admitted("menu", this::handleUnknownCommand);
+        searchInputHandler = admitted("search_query", this::processSearchQuery);
+        callbackHandlers.put(CALLBACK_RATE, admitted("rating_value", this::handleRateCallback));
+        callbackHandlers.put(CALLBACK_SKIP, admitted("rating_skip", this::handleSkipCallback));
+        callbackHandlers.put(CALLBACK_SIMILAR, admitted("similar", this::handleSimilarCallback));
+        callbackHandlers.put(CALLBACK_EXPORT, admitted("export_json", this::handleExportCallback));
+        callbackHandler = this::handleCallback;
+        inlineQueryHandler = botMetrics.timed("inline", update -> inlineSearchService.answer(update.getInlineQuery(), this::answer));
+    }
 
-        commandHandlers.put("🔍 Поиск", this::handleSearchCommand);
-        commandHandlers.put("🌀 Случайный фильм", this::handleRateAllCommand);
-        commandHandlers.put("🎬 Популярные фильмы", this::handleRatePopularCommand);
-        commandHandlers.put("🏆 Лучшее совпадение", this::handleMostPersonalCommand);
-        commandHandlers.put("❤️ Рекомендации", this::handlePersonalCommand);
-        commandHandlers.put("📜 Мои оценки", this::handleAllRatedCommand);
+    /**
+     * Обработчик с замером времени, который выполняется, только если AdmissionController
+     * допускает ещё один запрос этой команды.
+     */
+    private Consumer<Update> admitted(String command, Consumer<Update> handler) {
+        Consumer<Update> timed = botMetrics.timed(command, handler);
+        return update -> {
+            if (!admissionController.execute(command, () -> timed.accept(update))) {
+                reject(update);
+            }
+        };
+    }
+
+    /**
+     * Короткий отказ вместо обработки: нажатию кнопки - всплывающее уведомление, на которое
+     * Telegram всё равно ждёт ответа, сообщению - текст, но не чаще раза в notify-interval.
+     */
+    private void reject(Update update) {
+        if (update.hasCallbackQuery()) {
+            answerCallback(update.getCallbackQuery(), BUSY_TEXT);
+            return;
+        }
+        Long chatId = resolveChatId(update);
+        if (chatId != null && admissionController.shouldNotify(chatId)) {
+            sendResponse(chatId.toString(), BUSY_TEXT);
+        }
     }
 
     @Override
@@ -72,32 +153,112 @@ public class TelegramBotService extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        Long chatId = resolveChatId(update);
+        if (chatId != null && !clusterService.isLocal(chatId) && clusterService.forward(chatId, update)) {
+            return;
+        }
+
+        handleUpdate(update);
+    }
+
+    public static Long resolveChatId(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        // Нажатия кнопок под сообщениями бота обрабатываются тем же узлом, что и сам чат
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
+    }
+
+    public void handleUpdate(Update update) {
+        QueryCountingInspector.reset();
+        try {
+            dispatch(update);
+        } finally {
+            botMetrics.recordQueriesPerUpdate(QueryCountingInspector.current());
+        }
+    }
+
+    private void dispatch(Update update) {
+        // Inline-запросы не привязаны к чату и отвечаются на любом узле
+        if (update.hasInlineQuery()) {
+            inlineQueryHandler.accept(update);
+            return;
+        }
+        // Частота на чат проверяется до любых запросов к базе, даже до регистрации пользователя
+        Long chatId = resolveChatId(update);
+        if (chatId != null && !admissionController.allowChat(chatId)) {
+            reject(update);
+            return;
+        }
+        trackGroupMembers(update);
+        if (update.hasCallbackQuery()) {
+            callbackHandler.accept(update);
+            return;
+        }
+
         if (update.hasMessage() && update.getMessage().hasText()) {
-            Long chatId = update.getMessage().getChatId();
             String userMessage = update.getMessage().getText();
 
             usrRepository.findByChatId(chatId).ifPresentOrElse(
-                    usr -> System.out.println("Пользователь уже зарегистрирован: " + usr.getUsername()),
+                    usr -> log.debug("Пользователь уже зарегистрирован: {}", usr.getUsername()),
                     () -> registerNewUser(update)
             );
 
-            if (waitingForInput.containsKey(chatId.toString())) {
-                String pendingCommand = waitingForInput.remove(chatId.toString());
+            // Ожидание снимает сам обработчик: если запрос отклонён, пользователь просто повторит ввод
+            String pendingCommand = waitingForInput.get(chatId.toString());
+            if (pendingCommand != null) {
                 if (pendingCommand.equals("search")) {
-                    processSearchQuery(update);
+                    searchInputHandler.accept(update);
+                } else {
+                    waitingForInput.remove(chatId.toString());
                 }
                 return;
             }
 
-            if (activeRatings.containsKey(chatId.toString())) {
-                handleRatingResponse(update);
-                return;
+            commandHandlers.getOrDefault(userMessage, unknownCommandHandler).accept(update);
+        }
+    }
+
+    /**
+     * Запоминает участников группового чата: кто пишет боту и нажимает его кнопки, а также
+     * вошедших и вышедших. Из них складываются рекомендации "смотрим вместе".
+     */
+    private void trackGroupMembers(Update update) {
+        if (update.hasCallbackQuery()) {
+            Message message = update.getCallbackQuery().getMessage();
+            if (message != null && isGroup(message.getChat())) {
+                trackGroupMember(message.getChatId(), update.getCallbackQuery().getFrom());
             }
+            return;
+        }
+        if (!update.hasMessage() || !isGroup(update.getMessage().getChat())) {
+            return;
+        }
+
+        Message message = update.getMessage();
+        if (message.getLeftChatMember() != null) {
+            groupRecommendationService.leave(message.getChatId(), message.getLeftChatMember().getId());
+            return;
+        }
+        if (message.getNewChatMembers() != null) {
+            message.getNewChatMembers().forEach(member -> trackGroupMember(message.getChatId(), member));
+        }
+        trackGroupMember(message.getChatId(), message.getFrom());
+    }
 
-            commandHandlers.getOrDefault(userMessage, this::handleUnknownCommand).accept(update);
+    private void trackGroupMember(Long groupChatId, org.telegram.telegrambots.meta.api.objects.User member) {
+        if (member != null && !Boolean.TRUE.equals(member.getIsBot())) {
+            groupRecommendationService.touch(groupChatId, member.getId());
         }
     }
 
+    private static boolean isGroup(Chat chat) {
+        return chat != null && (chat.isGroupChat() || chat.isSuperGroupChat());
+    }
+
     private void handleSearchCommand(Update update) {
         String chatId = update.getMessage().getChatId().toString();
 
@@ -111,17 +272,14 @@ public class TelegramBotService extends TelegramLongPollingBot {
         message.setReplyMarkup(removeKeyboard);
 
         message.setParseMode("Markdown");
-        try {
-            execute(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        send(message);
         waitingForInput.put(chatId, "search");
     }
 
     private void processSearchQuery(Update update) {
         String messageText = update.getMessage().getText();
         String chatId = update.getMessage().getChatId().toString();
+        waitingForInput.remove(chatId);
         if (messageText == null || messageText.trim().isEmpty()) {
             sendResponse(chatId, """
                     ⚠️ *Название фильма не может быть пустым.*
@@ -149,52 +307,26 @@ public class TelegramBotService extends TelegramLongPollingBot {
 
         Usr user = usrRepository.findByChatId(chatId)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
-        Map<String, Object> randomMovieData = tmdbService.getRandomPopularMovie();
-        Movie randomMovie = commandProcessingService.saveOrUpdateMovie(randomMovieData);
-        double similarity = commandProcessingService.computeCosineSimilarity(commandProcessingService.getUserGenres(user),
-                commandProcessingService.createGenreVector(randomMovie.getGenreIds()));
-
-        activeRatings.put(chatId.toString(), randomMovie);
-
-        String response = String.format(
-                """
-                        %s
-                        🤝 *Сходство:* %s
-                        
-                        """,
-                commandProcessingService.movieToString(randomMovie),
-                similarity != 0 ? String.valueOf((100 + similarity * 100) / 2).substring(0, 4) + "%" : "Не известно"
-        );
-
-        SendMessage message = new SendMessage();
-        message.setChatId(update.getMessage().getChatId().toString());
-        message.setText("""
-                ❓ *Хотите оценить этот фильм?*""");
-        message.setParseMode("Markdown");
-
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-
-        List<KeyboardRow> keyboardRows = new ArrayList<>();
-
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Да"));
-        row1.add(new KeyboardButton("Нет"));
-
-        keyboardRows.add(row1);
-        keyboardMarkup.setKeyboard(keyboardRows);
-        message.setReplyMarkup(keyboardMarkup);
 
-        sendSplitResponse(chatId.toString(), response);
         try {
-            execute(message);
+            Movie randomMovie = commandProcessingService.getRandomPopularMovie();
+            sendRatingCard(chatId.toString(), user, randomMovie, "");
         } catch (Exception e) {
-            e.printStackTrace();
+            sendResponse(chatId.toString(), """
+                    😞 *К сожалению, не удалось получить популярный фильм для оценки.* Попробуйте позже!""");
+            log.error("Ошибка при получении популярного фильма для чата {}: {}", chatId, e.getMessage(), e);
         }
     }
 
     private void handlePersonalCommand(Update update) {
         String chatId = update.getMessage().getChatId().toString();
+        // В группе рекомендации - для её участников, а не для группы как одного пользователя
+        if (isGroup(update.getMessage().getChat())) {
+            String language = movieLocalizationService.languageOf(update.getMessage().getFrom() != null
+                    ? update.getMessage().getFrom().getLanguageCode() : null);
+            sendSplitResponse(chatId, groupRecommendationService.recommend(update.getMessage().getChatId(), language));
+            return;
+        }
         String result = commandProcessingService.getPersonalRecommendation(chatId);
 
         sendSplitResponse(chatId, String.format("""
@@ -217,196 +349,283 @@ public class TelegramBotService extends TelegramLongPollingBot {
             sendResponse(chatId, """
                     ❌ *Произошла ошибка при получении списка оцененных фильмов.*
                     Попробуйте позже.""");
-            e.printStackTrace();
+            log.error("Ошибка при получении списка оценок для чата {}: {}", chatId, e.getMessage(), e);
         }
     }
 
-    private void handleMostPersonalCommand(Update update) {
-        String chatId = update.getMessage().getChatId().toString();
-        String result = commandProcessingService.getMostPersonalRecommendation(chatId);
-        sendSplitResponse(chatId, result);
+    private void handleExportCommand(Update update) {
+        exportRatings(update.getMessage().getChatId(), RatingExportService.Format.CSV);
     }
 
-    private void saveUserRating(String chatId, int rating) {
-        Long userChatId = Long.parseLong(chatId);
-        Usr user = usrRepository.findByChatId(userChatId)
-                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
-        Movie movie = activeRatings.get(chatId);
+    private void handleExportCallback(Update update) {
+        CallbackQuery callback = update.getCallbackQuery();
+        answerCallback(callback, null);
+        exportRatings(callback.getMessage().getChatId(), RatingExportService.Format.JSON);
+    }
 
-        if (movie == null) {
-            sendResponse(chatId, """
-                    ⚠️ *Фильм для оценки не найден.*
-                    
-                    Попробуйте эти команды:
-                    🎬 *Популярные фильмы*
-                    🌀 *Случайный фильм*""");
-            return;
-        }
+    /**
+     * Отправляет всю историю оценок одним документом. Файл пишется RatingExportService потоком
+     * из базы и удаляется сразу после отправки; к CSV прикладывается кнопка выгрузки в JSON.
+     */
+    private void exportRatings(Long chatId, RatingExportService.Format format) {
+        Usr user = usrRepository.findByChatId(chatId)
+                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
 
-        Optional<UserMovieRating> existingRating = userMovieRatingRepository.findByUserIdAndMovieId(user.getId(), movie.getId());
+        RatingExportService.Export export = null;
+        Timer.Sample sample = null;
+        boolean success = false;
+        try {
+            export = ratingExportService.export(user, format);
+            if (export.rows() == 0) {
+                sendResponse(chatId.toString(), """
+                        📝 *Вы пока не оценили ни одного фильма.*""");
+                return;
+            }
 
-        if (existingRating.isPresent()) {
-            UserMovieRating userMovieRating = existingRating.get();
-            userMovieRating.setRating(rating);
-            userMovieRatingRepository.save(userMovieRating);
-            sendResponse(chatId, String.format("""
-                    ✅ *Ваша оценка обновлена!*
-                    Вы поставили %s баллов. 🎉""", rating));
-        } else {
-            UserMovieRating userMovieRating = new UserMovieRating();
-            userMovieRating.setUser(user);
-            userMovieRating.setMovie(movie);
-            userMovieRating.setRating(rating);
-            userMovieRatingRepository.save(userMovieRating);
-            sendResponse(chatId, String.format("""
-                    ⭐ *Спасибо за вашу оценку!*
-                    Вы поставили %s баллов. 😊""", rating));
+            SendDocument document = new SendDocument(chatId.toString(), new InputFile(export.file().toFile(), export.fileName()));
+            document.setCaption(String.format("📤 Ваши оценки: %d", export.rows()));
+            if (format == RatingExportService.Format.CSV) {
+                document.setReplyMarkup(new InlineKeyboardMarkup(List.of(List.of(button("📄 JSON", CALLBACK_EXPORT + ":json")))));
+            }
+            sample = botMetrics.startSend();
+            execute(document);
+            success = true;
+        } catch (IOException | TelegramApiException e) {
+            log.error("Ошибка экспорта оценок для чата {}: {}", chatId, e.getMessage(), e);
+            sendResponse(chatId.toString(), """
+                    ❌ *Не удалось выгрузить оценки.*
+                    Попробуйте позже.""");
+        } finally {
+            if (sample != null) {
+                botMetrics.stopSend(sample, "senddocument", success);
+            }
+            if (export != null) {
+                deleteQuietly(export.file());
+            }
         }
-
-        Map<String, Double> genrePreferences = commandProcessingService.getUserGenres(user);
-        user.setGenrePreferences(CommandProcessingService.mapToJson(genrePreferences));
-        usrRepository.save(user);
-
-        activeRatings.remove(chatId);
     }
 
-    private void handleRatingResponse(Update update) {
-        String chatId = update.getMessage().getChatId().toString();
-        String userResponse = update.getMessage().getText().toLowerCase();
-
-        Movie movie = activeRatings.get(chatId);
-        if (movie == null) {
-            sendResponse(chatId, """
-                    😕 *У вас нет активного фильма для оценки.*
-                    
-                    Попробуйте эти команды:
-                    🎬 *Популярные фильмы*
-                    🌀 *Случайный фильм*""");
-            return;
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл выгрузки {}: {}", file, e.getMessage());
         }
+    }
 
-        if (userResponse.equals("да")) {
-            movieRepository.save(movie);
-
-            sendResponse(chatId, """
-                    🎬 Отлично! Как бы вы оценили этот фильм по шкале от 1 до 10? ⭐""");
-
-            SendMessage message = new SendMessage();
-            message.setChatId(update.getMessage().getChatId().toString());
-            message.setText("Выберите оценку:");
-            message.setParseMode("Markdown");
+    private void handleMostPersonalCommand(Update update) {
+        String chatId = update.getMessage().getChatId().toString();
+        String result = commandProcessingService.getMostPersonalRecommendation(chatId);
+        sendSplitResponse(chatId, result);
+    }
 
-            ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-            keyboardMarkup.setResizeKeyboard(true);
+    private void handleRateAllCommand(Update update) {
+        Long chatId = update.getMessage().getChatId();
 
-            List<KeyboardRow> keyboardRows = new ArrayList<>();
+        Usr user = usrRepository.findByChatId(chatId)
+                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
 
-            KeyboardRow row1 = new KeyboardRow();
-            row1.add(new KeyboardButton("1"));
-            row1.add(new KeyboardButton("2"));
-            row1.add(new KeyboardButton("3"));
-            row1.add(new KeyboardButton("4"));
-            row1.add(new KeyboardButton("5"));
+        try {
+            Movie randomMovie = commandProcessingService.getRandomMovieForRating();
+            sendRatingCard(chatId.toString(), user, randomMovie, "🎲 *Случайный фильм для оценки:*\n");
+        } catch (Exception e) {
+            sendResponse(chatId.toString(), """
+                    😞 *К сожалению, не удалось получить случайный фильм для оценки.* Попробуйте позже!""");
+            log.error("Ошибка при получении случайного фильма для чата {}: {}", chatId, e.getMessage(), e);
+        }
+    }
 
-            KeyboardRow row2 = new KeyboardRow();
-            row2.add(new KeyboardButton("6"));
-            row2.add(new KeyboardButton("7"));
-            row2.add(new KeyboardButton("8"));
-            row2.add(new KeyboardButton("9"));
-            row2.add(new KeyboardButton("10"));
+    /**
+     * Вся оценка фильма - одно сообщение: карточка с кнопками оценок 1-10 под ней. Нажатие
+     * приходит CallbackQuery с Movie.id в данных кнопки, поэтому на сервере ничего не хранится,
+     * а сообщение правится на месте (см. {@link #handleCallback}).
+     * <p>
+     * Если постер фильма уже скачан, карточка - подпись к нему (см. PosterService).
+     */
+    private void sendRatingCard(String chatId, Usr user, Movie movie, String header) {
+        double similarity = commandProcessingService.computeCosineSimilarity(commandProcessingService.getUserGenres(user),
+                commandProcessingService.createGenreVector(movie.getGenreIds()));
+        String language = movieLocalizationService.languageOf(user);
+
+        InputFile poster = posterService.photo(movie);
+        if (poster != null) {
+            String caption = header + movieCardRenderer.renderCaption(movie, similarity, language,
+                    CAPTION_LIMIT - header.length() - RATING_PROMPT.length()) + RATING_PROMPT;
+            if (caption.length() <= CAPTION_LIMIT && sendPoster(chatId, movie, poster, caption, ratingKeyboard(movie.getId(), 0))) {
+                return;
+            }
+        }
 
-            keyboardRows.add(row1);
-            keyboardRows.add(row2);
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(header + movieCardRenderer.render(movie, similarity, language) + RATING_PROMPT);
+        message.setParseMode("Markdown");
+        message.setReplyMarkup(ratingKeyboard(movie.getId(), 0));
+        send(message);
+    }
 
-            keyboardMarkup.setKeyboard(keyboardRows);
+    /**
+     * Уведомление рассылки новинок (BroadcastService): карточка с кнопками оценок, как у команд.
+     * Ошибки Telegram не перехватываются: по коду ошибки рассылка решает, повторить отправку
+     * (429) или больше не писать в чат (бот заблокирован, чат удалён).
+     */
+    public void sendNewRelease(long chatId, Movie movie, double similarity, String language) throws TelegramApiException {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(NEW_RELEASE_HEADER + movieCardRenderer.render(movie, similarity, language) + RATING_PROMPT);
+        message.setParseMode("Markdown");
+        message.setReplyMarkup(ratingKeyboard(movie.getId(), 0));
 
-            message.setReplyMarkup(keyboardMarkup);
+        Timer.Sample sample = botMetrics.startSend();
+        boolean success = false;
+        try {
+            execute(message);
+            success = true;
+        } finally {
+            botMetrics.stopSend(sample, message.getMethod(), success);
+        }
+    }
 
-            try {
-                execute(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+    /**
+     * Отправляет постер с подписью. После первой загрузки файла запоминает его file_id;
+     * если Telegram не принял сохранённый file_id, забывает его.
+     *
+     * @return false, если отправить не удалось и карточку нужно отправить текстом
+     */
+    private boolean sendPoster(String chatId, Movie movie, InputFile poster, String caption, InlineKeyboardMarkup keyboard) {
+        SendPhoto photo = new SendPhoto(chatId, poster);
+        photo.setCaption(caption);
+        photo.setParseMode("Markdown");
+        photo.setReplyMarkup(keyboard);
+
+        Timer.Sample sample = botMetrics.startSend();
+        boolean success = false;
+        try {
+            Message sent = execute(photo);
+            success = true;
+            if (poster.isNew() && sent.hasPhoto()) {
+                sent.getPhoto().stream()
+                        .max(Comparator.comparingInt(size -> size.getWidth() * size.getHeight()))
+                        .ifPresent(size -> posterService.rememberFileId(movie, size.getFileId()));
             }
-        } else if (userResponse.equals("нет")) {
-            sendResponse(chatId, """
-                    🙅‍♂️ *Спасибо за ваш ответ!*
-                    Если хотите, попробуйте другой фильм. 🎲""");
-            handleUnknownCommand(update);
-            activeRatings.remove(chatId);
-        } else {
-            try {
-                int rating = Integer.parseInt(userResponse);
-                if (rating >= 1 && rating <= 10) {
-                    saveUserRating(chatId, rating);
-                    sendResponse(chatId, """
-                            🎉 *Хотите попробовать еще раз?*""");
-
-                    handleUnknownCommand(update);
-                } else {
-                    sendResponse(chatId, """
-                            ⚠️ Пожалуйста, введите число от 1 до 10. ⭐""");
-                }
-            } catch (NumberFormatException e) {
-                sendResponse(chatId, """
-                        ❓ *Неизвестный ответ.* 🧐""");
+        } catch (TelegramApiException e) {
+            log.error("Ошибка отправки постера фильма {} (чат {}): {}", movie.getId(), chatId, e.getMessage(), e);
+            // 400 на отправку по file_id - file_id недействителен (например, сменился токен бота)
+            if (!poster.isNew() && e instanceof TelegramApiRequestException request && request.getErrorCode() == 400) {
+                posterService.rememberFileId(movie, null);
             }
+        } finally {
+            botMetrics.stopSend(sample, "sendphoto", success);
         }
+        return success;
     }
 
-    private void handleRateAllCommand(Update update) {
-        Long chatId = update.getMessage().getChatId();
+    /**
+     * Кнопки оценок 1-10 (выбранная отмечена звездой, 0 - ещё не оценён), похожие фильмы
+     * и, пока оценки нет, отказ от оценки.
+     */
+    private static InlineKeyboardMarkup ratingKeyboard(Long movieId, int rating) {
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        for (int from = 1; from <= 10; from += 5) {
+            List<InlineKeyboardButton> row = new ArrayList<>();
+            for (int value = from; value < from + 5; value++) {
+                row.add(button(value == rating ? "⭐" + value : String.valueOf(value),
+                        CALLBACK_RATE + ":" + movieId + ":" + value));
+            }
+            rows.add(row);
+        }
 
-        Usr user = usrRepository.findByChatId(chatId)
-                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден."));
+        List<InlineKeyboardButton> actions = new ArrayList<>();
+        actions.add(button("🔗 Похожие фильмы", CALLBACK_SIMILAR + ":" + movieId));
+        if (rating == 0) {
+            actions.add(button("🙅 Не смотрел", CALLBACK_SKIP + ":" + movieId));
+        }
+        rows.add(actions);
+        return new InlineKeyboardMarkup(rows);
+    }
 
-        try {
-            Movie randomMovie = commandProcessingService.getRandomMovieForRating();
-            double similarity = commandProcessingService.computeCosineSimilarity(commandProcessingService.getUserGenres(user),
-                    commandProcessingService.createGenreVector(randomMovie.getGenreIds()));
-            activeRatings.put(chatId.toString(), randomMovie);
-
-            String response = String.format(
-                    """
-                            🎲 *Случайный фильм для оценки:*
-                            %s
-                            🤝 *Сходство:* %s
-                            
-                            """,
-                    commandProcessingService.movieToString(randomMovie),
-                    similarity != 0 ? String.valueOf((100 + similarity * 100) / 2).substring(0, 4) + "%": "Не известно"
-            );
+    private static InlineKeyboardMarkup similarKeyboard(Long movieId) {
+        return new InlineKeyboardMarkup(List.of(List.of(button("🔗 Похожие фильмы", CALLBACK_SIMILAR + ":" + movieId))));
+    }
 
-            SendMessage message = new SendMessage();
-            message.setChatId(update.getMessage().getChatId().toString());
-            message.setText("""
-                    ❓ *Хотите оценить этот фильм?*""");
-            message.setParseMode("Markdown");
+    private static InlineKeyboardButton button(String text, String callbackData) {
+        InlineKeyboardButton button = new InlineKeyboardButton(text);
+        button.setCallbackData(callbackData);
+        return button;
+    }
 
-            ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-            keyboardMarkup.setResizeKeyboard(true);
+    /**
+     * Нажатие кнопки под карточкой. Данные кнопки - "действие:Movie.id[:оценка]"; каждое
+     * нажатие подтверждается всплывающим ответом, а клавиатура правится в том же сообщении.
+     */
+    private void handleCallback(Update update) {
+        CallbackQuery callback = update.getCallbackQuery();
+        String[] parts = callback.getData() != null ? callback.getData().split(":") : new String[0];
+        Consumer<Update> handler = parts.length >= 2 && callback.getMessage() != null ? callbackHandlers.get(parts[0]) : null;
+        if (handler == null) {
+            answerCallback(callback, null);
+            return;
+        }
+        handler.accept(update);
+    }
 
-            List<KeyboardRow> keyboardRows = new ArrayList<>();
+    private void handleRateCallback(Update update) {
+        CallbackQuery callback = update.getCallbackQuery();
+        String[] parts = callback.getData().split(":");
+        Long movieId = parts.length == 3 ? parseId(parts[1]) : null;
+        Long value = parts.length == 3 ? parseId(parts[2]) : null;
+        if (movieId == null || value == null || value < 1 || value > 10 || !movieRepository.existsById(movieId)) {
+            answerCallback(callback, "⚠️ Фильм для оценки не найден.");
+            return;
+        }
 
-            KeyboardRow row1 = new KeyboardRow();
-            row1.add(new KeyboardButton("Да"));
-            row1.add(new KeyboardButton("Нет"));
+        int rating = value.intValue();
+        Integer previous = commandProcessingService.saveUserRating(callback.getMessage().getChatId(), movieId, rating);
+        if (previous != null && previous == rating) {
+            // Повторное нажатие той же оценки ничего не меняет, а Telegram отклоняет правку без изменений
+            answerCallback(callback, String.format("✅ Оценка %s уже сохранена.", rating));
+            return;
+        }
+        answerCallback(callback, previous == null
+                ? String.format("⭐ Спасибо за вашу оценку! Вы поставили %s баллов.", rating)
+                : String.format("✅ Ваша оценка обновлена! Вы поставили %s баллов.", rating));
+        editKeyboard(callback, ratingKeyboard(movieId, rating));
+    }
 
-            keyboardRows.add(row1);
+    private void handleSkipCallback(Update update) {
+        CallbackQuery callback = update.getCallbackQuery();
+        Long movieId = parseId(callback.getData().split(":")[1]);
+        if (movieId == null) {
+            answerCallback(callback, "⚠️ Фильм не найден.");
+            return;
+        }
+        answerCallback(callback, "🙅‍♂️ Спасибо за ваш ответ! Если хотите, попробуйте другой фильм. 🎲");
+        editKeyboard(callback, similarKeyboard(movieId));
+    }
 
-            keyboardMarkup.setKeyboard(keyboardRows);
+    private void handleSimilarCallback(Update update) {
+        CallbackQuery callback = update.getCallbackQuery();
+        String chatId = callback.getMessage().getChatId().toString();
+        Long movieId = parseId(callback.getData().split(":")[1]);
+        Movie movie = movieId != null ? movieRepository.findById(movieId).orElse(null) : null;
+        if (movie == null) {
+            answerCallback(callback, "⚠️ Фильм не найден.");
+            return;
+        }
 
-            message.setReplyMarkup(keyboardMarkup);
+        answerCallback(callback, null);
+        sendSplitResponse(chatId, String.format("""
+                🔗 *Похожие фильмы:*
+                
+                %s""", commandProcessingService.getSimilarMovies(chatId, movie)));
+    }
 
-            sendSplitResponse(chatId.toString(), response);
-            try {
-                execute(message);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        } catch (Exception e) {
-            sendResponse(chatId.toString(), """
-                    😞 *К сожалению, не удалось получить случайный фильм для оценки.* Попробуйте позже!""");
-            e.printStackTrace();
+    // Данные кнопки приходят от клиента и могут быть любыми: некорректное число - null
+    private static Long parseId(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
@@ -441,6 +660,7 @@ public class TelegramBotService extends TelegramLongPollingBot {
 
         KeyboardRow row5 = new KeyboardRow();
         row5.add(new KeyboardButton("🎬 Популярные фильмы"));
+        row5.add(new KeyboardButton("📤 Экспорт оценок"));
 
         keyboardRows.add(row2);
         keyboardRows.add(row3);
@@ -451,11 +671,7 @@ public class TelegramBotService extends TelegramLongPollingBot {
 
         message.setReplyMarkup(keyboardMarkup);
 
-        try {
-            execute(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        send(message);
     }
 
     private void sendSplitResponse(String chatId, String text) {
@@ -472,10 +688,41 @@ public class TelegramBotService extends TelegramLongPollingBot {
         message.setText(text);
 
         message.setParseMode("Markdown");
+        send(message);
+    }
+
+    private void send(SendMessage message) {
+        call(message, "чат " + message.getChatId());
+    }
+
+    private void answer(AnswerInlineQuery answer) {
+        call(answer, "inline-запрос " + answer.getInlineQueryId());
+    }
+
+    private void answerCallback(CallbackQuery callback, String text) {
+        AnswerCallbackQuery answer = new AnswerCallbackQuery(callback.getId());
+        answer.setText(text);
+        call(answer, "нажатие " + callback.getId());
+    }
+
+    private void editKeyboard(CallbackQuery callback, InlineKeyboardMarkup keyboard) {
+        EditMessageReplyMarkup edit = new EditMessageReplyMarkup();
+        edit.setChatId(callback.getMessage().getChatId().toString());
+        edit.setMessageId(callback.getMessage().getMessageId());
+        edit.setReplyMarkup(keyboard);
+        call(edit, "чат " + edit.getChatId());
+    }
+
+    private void call(BotApiMethod<? extends Serializable> method, String target) {
+        Timer.Sample sample = botMetrics.startSend();
+        boolean success = false;
         try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+            execute(method);
+            success = true;
+        } catch (Exception e) {
+            log.error("Ошибка вызова {} ({}): {}", method.getMethod(), target, e.getMessage(), e);
+        } finally {
+            botMetrics.stopSend(sample, method.getMethod(), success);
         }
     }
 
@@ -494,6 +741,7 @@ public class TelegramBotService extends TelegramLongPollingBot {
             newUser.setIsBot(fromUser.getIsBot());
 
             usrRepository.save(newUser);
+            changeFeedService.publish(ChangeFeedService.Topic.USERS, chatId.toString());
 
             sendResponse(chatId.toString(), String.format("""
                     Добро пожаловать, *%s*! Вы успешно зарегистрированы.""", newUser.getFirstName()));
@@ -4,18 +4,40 @@ import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Клиент TMDb API. Все запросы идут через {@link #request}: таймауты на каждый эндпоинт,
+ * ограниченные повторы с экспоненциальной задержкой и случайным разбросом, общий
+ * {@link CircuitBreaker}. Методы не бросают исключений и возвращают null, если TMDb
+ * не ответил; при разомкнутой цепи - сразу, без ожидания. Вызывающий код в этом случае
+ * берёт фильмы из локальной таблицы movie (см. {@link #isAvailable}).
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -26,31 +48,89 @@ public class TmdbService {
     @Value("${spring.tmdb.api.url}")
     private String apiUrl;
 
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final Map<Integer, String> genresCache = new HashMap<>();
+    @Value("${spring.tmdb.default-language}")
+    private String defaultLanguage; // Язык каталога в таблице movie, остальные - в movie_localization
+
+    @Value("${spring.tmdb.connect-timeout}")
+    private Duration connectTimeout;
+
+    @Value("${spring.tmdb.read-timeout}")
+    private Duration readTimeout;
+
+    @Value("${spring.tmdb.timeouts}")
+    private String endpointTimeouts;
+
+    @Value("${spring.tmdb.retry.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${spring.tmdb.retry.backoff}")
+    private Duration retryBackoff;
+
+    @Value("${spring.tmdb.circuit.window}")
+    private int circuitWindow;
+
+    @Value("${spring.tmdb.circuit.min-calls}")
+    private int circuitMinCalls;
+
+    @Value("${spring.tmdb.circuit.failure-rate}")
+    private double circuitFailureRate;
+
+    @Value("${spring.tmdb.circuit.open-duration}")
+    private Duration circuitOpenDuration;
+
+    private final BotMetrics botMetrics;
+    private final Map<String, RestTemplate> restTemplates = new HashMap<>(); // Эндпоинт -> клиент со своим таймаутом
+    private RestTemplate restTemplate;
+    private CircuitBreaker circuitBreaker;
+    private final Map<String, Map<Integer, String>> genresCache = new ConcurrentHashMap<>(); // Язык -> словарь жанров
+    private final AtomicLong genresVersion = new AtomicLong();
+
+    @PostConstruct
+    public void initClients() {
+        restTemplate = createRestTemplate(readTimeout);
+        for (String entry : endpointTimeouts.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2) {
+                restTemplates.put(parts[0].trim(), createRestTemplate(DurationStyle.detectAndParse(parts[1].trim())));
+            }
+        }
+        circuitBreaker = new CircuitBreaker(circuitWindow, circuitMinCalls, circuitFailureRate,
+                circuitOpenDuration.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private RestTemplate createRestTemplate(Duration timeout) {
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout((int) connectTimeout.toMillis());
+        factory.setReadTimeout((int) timeout.toMillis());
+        return new RestTemplate(factory);
+    }
+
+    /**
+     * Можно ли сейчас обращаться к TMDb. false - цепь разомкнута, и запросы вернут null сразу.
+     */
+    public boolean isAvailable() {
+        return circuitBreaker.state() != CircuitBreaker.State.OPEN;
+    }
 
     public Map<String, Object> getPopularMovies(Integer page) {
-        String url1 = String.format("%s/movie/popular?api_key=%s&language=ru&page=%s", apiUrl, apiKey, page.toString()); //вариант запроса для получения популярных фильмов
-//        String url1 = String.format("%s/movie/top_rated?api_key=%s&language=ru&page=%s", apiUrl, apiKey, page.toString());
+        String url1 = String.format("%s/movie/popular?api_key=%s&language=%s&page=%s", apiUrl, apiKey, defaultLanguage, page.toString()); //вариант запроса для получения популярных фильмов
+//        String url1 = String.format("%s/movie/top_rated?api_key=%s&language=%s&page=%s", apiUrl, apiKey, defaultLanguage, page.toString());
 
-        return restTemplate.getForObject(url1, Map.class);
+        return request("popular", url1);
     }
 
     public Map<String, Object> searchMovie(String query) {
-        try {
-            String url = String.format("%s/search/movie?api_key=%s&query=%s&language=ru", apiUrl, apiKey, query);
-            log.info("Выполняется запрос к TMDb API: {}", url);
+        String url = String.format("%s/search/movie?api_key=%s&query=%s&language=%s", apiUrl, apiKey, query, defaultLanguage);
+        log.info("Выполняется запрос к TMDb API: {}", url.replace(apiKey, "***"));
 
-            Map<String, Object> response = restTemplate.getForObject(url, Map.class);
-            if (response != null && response.containsKey("results")) {
-                log.info("Запрос к TMDb выполнен успешно. Найдено результатов: {}",
-                        ((List<?>) response.get("results")).size());
-                return response;
-            } else {
-                log.warn("Ответ TMDb API не содержит ключ 'results'.");
-            }
-        } catch (Exception e) {
-            log.error("Ошибка при запросе к TMDb API для поиска фильма: {}", e.getMessage(), e);
+        Map<String, Object> response = request("search", url);
+        if (response != null && response.containsKey("results")) {
+            log.info("Запрос к TMDb выполнен успешно. Найдено результатов: {}",
+                    ((List<?>) response.get("results")).size());
+            return response;
+        }
+        if (response != null) {
+            log.warn("Ответ TMDb API не содержит ключ 'results'.");
         }
         return null;
     }
@@ -71,36 +151,98 @@ public class TmdbService {
     }
 
     public Map<String, Object> fetchMoviesFromAllPages(int page) {
-        String url = String.format("%s/movie/top_rated?api_key=%s&language=ru&page=%s", apiUrl, apiKey, page);
-        return performApiRequest(url);
+        String url = String.format("%s/movie/top_rated?api_key=%s&language=%s&page=%s", apiUrl, apiKey, defaultLanguage, page);
+        return request("top_rated", url);
     }
 
-    public Map<String, Object> performApiRequest(String url) {
-        try {
-            RestTemplate restTemplate = new RestTemplate();
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
+    /**
+     * Фильмы, которые сейчас идут в кинотеатрах, - источник новинок для рассылки.
+     */
+    public Map<String, Object> getNowPlayingMovies(int page) {
+        String url = String.format("%s/movie/now_playing?api_key=%s&language=%s&page=%s", apiUrl, apiKey, defaultLanguage, page);
+        return request("now_playing", url);
+    }
+
+    /**
+     * Карточка фильма TMDb на заданном языке (title, overview и т.д.), null при ошибке.
+     */
+    public Map<String, Object> getMovieDetails(Long tmdbId, String language) {
+        String url = String.format("%s/movie/%s?api_key=%s&language=%s", apiUrl, tmdbId, apiKey, language);
+        return request("details", url);
+    }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return response.getBody();
-            } else {
-                System.err.println("Ошибка при выполнении API-запроса: " + response.getStatusCode());
+    public String getDefaultLanguage() {
+        return defaultLanguage;
+    }
+
+    /**
+     * GET к TMDb с таймаутом эндпоинта. Сетевые ошибки, таймауты, 5xx и 429 повторяются
+     * до max-attempts раз с задержкой backoff * 2^(попытка - 1), умноженной на случайное
+     * число из [0, 1), чтобы повторы многих потоков не приходили одновременно. Они же
+     * считаются отказами предохранителя; прочие 4xx означают, что TMDb жив, и не повторяются.
+     *
+     * @return тело ответа или null, если ответа нет или цепь разомкнута
+     */
+    private Map<String, Object> request(String endpoint, String url) {
+        RestTemplate client = restTemplates.getOrDefault(endpoint, restTemplate);
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                botMetrics.tmdbShortCircuited(endpoint);
+                return null;
+            }
+
+            boolean retryable;
+            try {
+                Map<String, Object> response = botMetrics.recordTmdb(endpoint, () -> client.getForObject(url, Map.class));
+                circuitBreaker.onSuccess();
+                return response;
+            } catch (RestClientException e) {
+                retryable = isRetryable(e);
+                if (retryable) {
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+                if (!retryable || attempt >= maxAttempts) {
+                    log.error("Ошибка запроса TMDb {} (попытка {}): {}", endpoint, attempt, e.getMessage());
+                    return null;
+                }
+            } catch (RuntimeException e) {
+                circuitBreaker.onFailure();
+                log.error("Ошибка запроса TMDb {}: {}", endpoint, e.getMessage(), e);
+                return null;
+            }
+
+            long delay = (long) (retryBackoff.toMillis() * (1L << (attempt - 1)) * ThreadLocalRandom.current().nextDouble());
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
             }
-        } catch (Exception e) {
-            System.err.println("Исключение при выполнении API-запроса: " + e.getMessage());
         }
+    }
 
-        return null;
+    private static boolean isRetryable(RestClientException e) {
+        return e instanceof ResourceAccessException
+                || e instanceof HttpServerErrorException
+                || e instanceof HttpClientErrorException.TooManyRequests;
     }
 
-    public String getGenreNames(String genreIds) {
+    public String getGenreNames(String genreIds, String language) {
         if (genreIds == null || genreIds.isEmpty()) {
             return "Жанры неизвестны";
         }
 
-        if (genresCache.isEmpty()) {
-            fetchAndCacheGenres();
+        Map<Integer, String> names = genresCache.get(language);
+        if (names == null) {
+            botMetrics.cacheMiss("genres");
+            names = fetchGenres(language);
+        } else {
+            botMetrics.cacheHit("genres");
         }
 
+        Map<Integer, String> dictionary = names;
         return Arrays.stream(genreIds.split("_"))
                 .filter(genreId -> {
                     try {
@@ -110,7 +252,7 @@ public class TmdbService {
                         return false;
                     }
                 })
-                .map(genreId -> genresCache.getOrDefault(Integer.parseInt(genreId), "Неизвестный жанр"))
+                .map(genreId -> dictionary.getOrDefault(Integer.parseInt(genreId), "Неизвестный жанр"))
                 .collect(Collectors.joining(", "));
     }
 
@@ -129,31 +271,76 @@ public class TmdbService {
         return null;
     }
 
+    /**
+     * Обновляет словари всех языков, которые уже запрашивались, и языка каталога.
+     */
     @Scheduled(cron = "0 0 0 * * *")
     public void fetchAndCacheGenres() {
-        String url = String.format("%s/genre/movie/list?api_key=%s&language=ru", apiUrl, apiKey);
+        Set<String> languages = new HashSet<>(genresCache.keySet());
+        languages.add(defaultLanguage);
+        languages.forEach(this::fetchGenres);
+    }
+
+    private Map<Integer, String> fetchGenres(String language) {
+        String url = String.format("%s/genre/movie/list?api_key=%s&language=%s", apiUrl, apiKey, language);
         try {
-            Map<String, Object> response = restTemplate.getForObject(url, Map.class);
+            Map<String, Object> response = request("genres", url);
             if (response != null && response.containsKey("genres")) {
                 List<Map<String, Object>> genres = (List<Map<String, Object>>) response.get("genres");
-                genres.forEach(genre -> {
-                    genresCache.put(
-                            (Integer) genre.get("id"),
-                            (String) genre.get("name")
-                    );
-                });
-                log.info("Закэшированные жанры: {}", genresCache);
-            } else {
+                Map<Integer, String> names = new HashMap<>();
+                genres.forEach(genre -> names.put((Integer) genre.get("id"), (String) genre.get("name")));
+                cacheGenres(language, names);
+                log.info("Закэшированные жанры ({}): {}", language, names);
+            } else if (response != null) {
                 log.warn("Ответ от TMDb API не содержит ключа 'genres'.");
             }
         } catch (Exception e) {
-            log.error("Ошибка при получении списка жанров: {}", e.getMessage(), e);
+            log.error("Ошибка при получении списка жанров ({}): {}", language, e.getMessage(), e);
         }
+        return genresCache.getOrDefault(language, Map.of());
     }
 
-    @PostConstruct
+    void cacheGenres(String language, Map<Integer, String> genres) {
+        Map<Integer, String> cached = genresCache.computeIfAbsent(language, key -> new ConcurrentHashMap<>());
+        // Тот же словарь, что уже в памяти (например, из снимка), не сбрасывает готовые карточки
+        if (!cached.isEmpty() && cached.entrySet().containsAll(genres.entrySet())) {
+            return;
+        }
+        cached.putAll(genres);
+        genresVersion.incrementAndGet();
+    }
+
+    /**
+     * Копия словарей жанров по языкам, для снимка.
+     */
+    Map<String, Map<Integer, String>> getGenres() {
+        Map<String, Map<Integer, String>> copy = new HashMap<>();
+        genresCache.forEach((language, names) -> copy.put(language, Map.copyOf(names)));
+        return copy;
+    }
+
+    /**
+     * Растёт при каждом изменении словаря жанров; по ней сбрасываются готовые карточки фильмов.
+     */
+    public long getGenresVersion() {
+        return genresVersion.get();
+    }
+
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidationEvent event) {
+        if (event.topic() == ChangeFeedService.Topic.GENRES) {
+            // Словарь перечитается лениво при следующем обращении к getGenreNames
+            genresCache.clear();
+            genresVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Словарь из снимка (если он был) уже в памяти; свежий запрашивается в фоне,
+     * чтобы недоступный TMDb не задерживал запуск. Без снимка словарь догрузит первый getGenreNames.
+     */
+    @EventListener(ApplicationReadyEvent.class)
     public void init() {
-        fetchAndCacheGenres();
-        log.info("Жанры успешно загружены и закэшированы: {}", genresCache);
+        CompletableFuture.runAsync(this::fetchAndCacheGenres);
     }
 }
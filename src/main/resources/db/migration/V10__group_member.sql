@@ -0,0 +1,9 @@
+-- Участники групповых чатов, которые пишут боту или нажимают его кнопки (GroupRecommendationService).
+-- member_chat_id - Telegram id участника; он же chat_id его личного чата с ботом, то есть usr.chat_id,
+-- если участник пользуется ботом. last_seen_at обновляется не чаще touch-interval
+CREATE TABLE group_member (
+    group_chat_id  BIGINT      NOT NULL,
+    member_chat_id BIGINT      NOT NULL,
+    last_seen_at   DATETIME(6) NOT NULL,
+    PRIMARY KEY (group_chat_id, member_chat_id)
+);
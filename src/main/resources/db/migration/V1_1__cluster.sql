@@ -0,0 +1,26 @@
+-- Таблицы режима нескольких узлов: узлы и их адреса, аренда лидерства и журнал изменений
+-- для сброса кэшей на других узлах (ChangeFeedService)
+CREATE TABLE cluster_node (
+    id             BIGINT       NOT NULL AUTO_INCREMENT,
+    node_id        VARCHAR(255) NOT NULL,
+    base_url       VARCHAR(255),
+    last_heartbeat DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_cluster_node_node_id UNIQUE (node_id)
+);
+
+CREATE TABLE cluster_lease (
+    name       VARCHAR(255) NOT NULL,
+    owner      VARCHAR(255),
+    expires_at DATETIME(6),
+    PRIMARY KEY (name)
+);
+
+CREATE TABLE cluster_event (
+    id          BIGINT       NOT NULL AUTO_INCREMENT,
+    topic       VARCHAR(255) NOT NULL,
+    entity_key  VARCHAR(255),
+    origin_node VARCHAR(255),
+    created_at  DATETIME(6),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,14 @@
+-- Готовые списки рекомендаций. recommendations_dirty - список устарел после новой оценки,
+-- recommendations_updated_at - время последнего пересчёта
+ALTER TABLE usr ADD COLUMN recommendations_dirty BIT;
+ALTER TABLE usr ADD COLUMN recommendations_updated_at DATETIME(6);
+
+CREATE TABLE user_recommendation (
+    id         BIGINT  NOT NULL AUTO_INCREMENT,
+    user_id    BIGINT  NOT NULL,
+    movie_id   BIGINT  NOT NULL,
+    position   INTEGER NOT NULL,
+    similarity DOUBLE  NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_user_recommendation_movie FOREIGN KEY (movie_id) REFERENCES movie (id)
+);
@@ -0,0 +1,39 @@
+-- Схема в том виде, в каком её раньше создавал Hibernate (ddl-auto), до режима нескольких узлов
+-- и готовых рекомендаций: их таблицы добавляют V1_1 и V1_2.
+-- На существующей базе эта миграция не выполняется: spring.flyway.baseline-on-migrate помечает её применённой.
+
+CREATE TABLE movie (
+    id           BIGINT       NOT NULL AUTO_INCREMENT,
+    movie_id     BIGINT       NOT NULL,
+    title        VARCHAR(255),
+    description  TEXT,
+    release_date VARCHAR(255),
+    rating       DOUBLE,
+    genre_ids    VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_movie_movie_id UNIQUE (movie_id)
+);
+
+CREATE TABLE usr (
+    id                BIGINT      NOT NULL AUTO_INCREMENT,
+    chat_id           BIGINT      NOT NULL,
+    username          VARCHAR(255),
+    first_name        VARCHAR(255),
+    last_name         VARCHAR(255),
+    language_code     VARCHAR(255),
+    is_premium        BIT,
+    is_bot            BIT,
+    genre_preferences VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_usr_chat_id UNIQUE (chat_id)
+);
+
+CREATE TABLE user_movie_rating (
+    id       BIGINT  NOT NULL AUTO_INCREMENT,
+    user_id  BIGINT  NOT NULL,
+    movie_id BIGINT  NOT NULL,
+    rating   INTEGER NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_user_movie_rating_user FOREIGN KEY (user_id) REFERENCES usr (id),
+    CONSTRAINT fk_user_movie_rating_movie FOREIGN KEY (movie_id) REFERENCES movie (id)
+);
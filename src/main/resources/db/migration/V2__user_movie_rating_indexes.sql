@@ -0,0 +1,15 @@
+-- Раньше оценка сохранялась через проверку и вставку, поэтому при параллельных обновлениях
+-- могли появиться повторы (user_id, movie_id). Оставляем самую свежую оценку.
+DELETE FROM user_movie_rating
+WHERE id NOT IN (SELECT latest.id
+                 FROM (SELECT MAX(id) AS id FROM user_movie_rating GROUP BY user_id, movie_id) latest);
+
+-- Одна оценка на фильм: на этом индексе держится upsert в saveUserRating
+CREATE UNIQUE INDEX uk_user_movie_rating_user_movie ON user_movie_rating (user_id, movie_id);
+
+-- Покрывающий индекс для выборок оценок пользователя: id входит в любой вторичный индекс InnoDB,
+-- так что findRatedGenresByUserId и findRatedMoviesByUserId не читают строки таблицы
+CREATE INDEX idx_user_movie_rating_user_cover ON user_movie_rating (user_id, movie_id, rating);
+
+-- Готовые рекомендации читаются и удаляются только по пользователю
+CREATE INDEX idx_user_recommendation_user ON user_recommendation (user_id, position);
@@ -0,0 +1,12 @@
+-- Названия и описания фильмов на языках, отличных от языка каталога (spring.tmdb.default-language).
+-- Язык каталога хранится в самой таблице movie и здесь не дублируется.
+CREATE TABLE movie_localization (
+    id          BIGINT     NOT NULL AUTO_INCREMENT,
+    movie_id    BIGINT     NOT NULL,
+    language    VARCHAR(8) NOT NULL,
+    title       VARCHAR(255),
+    description TEXT,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_movie_localization_movie_language UNIQUE (movie_id, language),
+    CONSTRAINT fk_movie_localization_movie FOREIGN KEY (movie_id) REFERENCES movie (id)
+);
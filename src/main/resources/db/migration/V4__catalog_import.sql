@@ -0,0 +1,26 @@
+-- Импорт каталога из ежедневных выгрузок TMDb (movie_ids_MM_DD_YYYY.json.gz).
+-- catalog_import - задание и его прогресс: сколько строк файла уже разобрано,
+-- чтобы после перезапуска продолжить с того же места.
+CREATE TABLE catalog_import (
+    id          BIGINT       NOT NULL AUTO_INCREMENT,
+    file        VARCHAR(512) NOT NULL,
+    status      VARCHAR(16)  NOT NULL,
+    lines_read  BIGINT       NOT NULL,
+    staged      BIGINT       NOT NULL,
+    enriched    BIGINT       NOT NULL,
+    failed      BIGINT       NOT NULL,
+    started_at  DATETIME(6),
+    updated_at  DATETIME(6),
+    PRIMARY KEY (id)
+);
+
+-- Фильмы из выгрузок, ожидающие загрузки подробностей: 0 - ждёт, 1 - загружен, 2 - TMDb не отдал.
+-- Повторная выгрузка только обновляет популярность, уже загруженные фильмы не трогаются
+CREATE TABLE catalog_import_item (
+    tmdb_id    BIGINT  NOT NULL,
+    popularity DOUBLE  NOT NULL,
+    status     TINYINT NOT NULL,
+    PRIMARY KEY (tmdb_id)
+);
+
+CREATE INDEX idx_catalog_import_item_pending ON catalog_import_item (status, popularity);
@@ -0,0 +1,10 @@
+-- Сигналы качества для смешанного ранжирования рекомендаций: число голосов и популярность TMDb.
+-- Уже сохранённые фильмы получают их при следующем обновлении популярных фильмов
+ALTER TABLE movie ADD COLUMN vote_count INT;
+ALTER TABLE movie ADD COLUMN popularity DOUBLE;
+
+-- Рекомендации упорядочены по итоговой оценке, а не только по сходству жанров.
+-- До пересчёта старые списки сравниваются по сходству, пересчёт запускается в фоне
+ALTER TABLE user_recommendation ADD COLUMN score DOUBLE NOT NULL DEFAULT 0;
+UPDATE user_recommendation SET score = similarity;
+UPDATE usr SET recommendations_dirty = TRUE WHERE recommendations_updated_at IS NOT NULL;
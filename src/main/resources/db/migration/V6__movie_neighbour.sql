@@ -0,0 +1,14 @@
+-- Похожие фильмы: для каждого фильма готовый список ближайших к нему фильмов каталога.
+-- Строится параллельно по частям каталога и дополняется при появлении новых фильмов (MovieNeighbourService)
+CREATE TABLE movie_neighbour (
+    id           BIGINT NOT NULL AUTO_INCREMENT,
+    movie_id     BIGINT NOT NULL,
+    neighbour_id BIGINT NOT NULL,
+    position     INT    NOT NULL,
+    similarity   DOUBLE NOT NULL,
+    score        DOUBLE NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_movie_neighbour_movie_position UNIQUE (movie_id, position),
+    CONSTRAINT fk_movie_neighbour_movie FOREIGN KEY (movie_id) REFERENCES movie (id),
+    CONSTRAINT fk_movie_neighbour_neighbour FOREIGN KEY (neighbour_id) REFERENCES movie (id)
+);
@@ -0,0 +1,19 @@
+-- Оценки пользователей бота по фильму в сумме: число, сумма и сумма квадратов оценок 1-10.
+-- Узлы копят приращения в памяти и добавляют их сюда пачками (MovieStatsService);
+-- updated_at позволяет остальным узлам дочитывать только изменившиеся строки
+CREATE TABLE movie_stats (
+    movie_id           BIGINT      NOT NULL,
+    rating_count       BIGINT      NOT NULL,
+    rating_sum         BIGINT      NOT NULL,
+    rating_sum_squares BIGINT      NOT NULL,
+    updated_at         DATETIME(6) NOT NULL,
+    PRIMARY KEY (movie_id),
+    CONSTRAINT fk_movie_stats_movie FOREIGN KEY (movie_id) REFERENCES movie (id)
+);
+
+CREATE INDEX idx_movie_stats_updated_at ON movie_stats (updated_at);
+
+INSERT INTO movie_stats (movie_id, rating_count, rating_sum, rating_sum_squares, updated_at)
+SELECT movie_id, COUNT(*), SUM(rating), SUM(rating * rating), CURRENT_TIMESTAMP(6)
+FROM user_movie_rating
+GROUP BY movie_id;
@@ -0,0 +1,5 @@
+-- Постеры: путь картинки в TMDb и file_id, который Telegram вернул при первой отправке постера.
+-- Дальше постер отправляется по file_id без повторной загрузки. Уже сохранённые фильмы получают
+-- путь при следующей встрече в ответах TMDb
+ALTER TABLE movie ADD COLUMN poster_path VARCHAR(255);
+ALTER TABLE movie ADD COLUMN poster_file_id VARCHAR(255);
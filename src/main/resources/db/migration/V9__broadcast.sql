@@ -0,0 +1,29 @@
+-- Рассылка новинок: задание и его прогресс. last_user_id - последний сопоставленный пользователь,
+-- с него сопоставление продолжается после перезапуска
+CREATE TABLE broadcast (
+    id           BIGINT       NOT NULL AUTO_INCREMENT,
+    movie_ids    VARCHAR(512) NOT NULL,
+    status       VARCHAR(16)  NOT NULL,
+    last_user_id BIGINT       NOT NULL,
+    matched      BIGINT       NOT NULL,
+    sent         BIGINT       NOT NULL,
+    failed       BIGINT       NOT NULL,
+    started_at   DATETIME(6),
+    updated_at   DATETIME(6),
+    PRIMARY KEY (id)
+);
+
+-- Очередь отправки: одно уведомление на пользователя, 0 - ждёт, 1 - отправлено, 2 - не доставлено.
+-- Статус ставится сразу после отправки, поэтому после перезапуска отправка продолжается с неотправленных
+CREATE TABLE broadcast_delivery (
+    broadcast_id BIGINT      NOT NULL,
+    user_id      BIGINT      NOT NULL,
+    chat_id      BIGINT      NOT NULL,
+    movie_id     BIGINT      NOT NULL,
+    similarity   DOUBLE      NOT NULL,
+    language     VARCHAR(8)  NOT NULL,
+    status       TINYINT     NOT NULL,
+    PRIMARY KEY (broadcast_id, user_id)
+);
+
+CREATE INDEX idx_broadcast_delivery_pending ON broadcast_delivery (broadcast_id, status, user_id);
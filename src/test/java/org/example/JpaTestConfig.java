@@ -0,0 +1,16 @@
+package org.example;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+/**
+ * Контекст для {@code @DataJpaTest}: сущности и репозитории org.example на H2 в режиме MySQL,
+ * схема - миграциями Flyway, как в нагрузочном стенде. Заменяет TelegramBotApplication,
+ * которому для запуска нужны бот и кластер.
+ */
+@Configuration
+@AutoConfigurationPackage
+@PropertySource("classpath:bot-defaults.properties")
+public class JpaTestConfig {
+}
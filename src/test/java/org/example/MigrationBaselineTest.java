@@ -0,0 +1,75 @@
+package org.example;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * База, которую раньше создавал Hibernate, принимается за версию 1 (spring.flyway.baseline-*)
+ * и доводится миграциями до текущей схемы, не теряя данных.
+ */
+class MigrationBaselineTest {
+
+    @Test
+    void databaseCreatedBeforeFlywayIsMigratedFromBaseline() {
+        DataSource dataSource = dataSource("baseline");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Схема базовой версии без истории Flyway - как в базе, созданной через ddl-auto
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__baseline.sql")).execute(dataSource);
+        jdbcTemplate.update("INSERT INTO movie (movie_id, title, genre_ids) VALUES (550, 'Бойцовский клуб', '18')");
+        jdbcTemplate.update("INSERT INTO usr (chat_id) VALUES (100)");
+        jdbcTemplate.update("INSERT INTO user_movie_rating (user_id, movie_id, rating) SELECT u.id, m.id, 9 FROM usr u, movie m");
+
+        flyway(dataSource).migrate();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT type FROM flyway_schema_history WHERE version = '1'", String.class)).isEqualTo("BASELINE");
+        assertThat(jdbcTemplate.queryForList("SELECT version FROM flyway_schema_history WHERE type = 'SQL' AND success ORDER BY installed_rank", String.class))
+                .startsWith("1.1", "1.2", "2");
+        assertThat(tables(jdbcTemplate)).contains("cluster_node", "cluster_lease", "cluster_event", "user_recommendation", "broadcast");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM usr WHERE recommendations_dirty IS NULL", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT rating FROM user_movie_rating", Integer.class)).isEqualTo(9);
+    }
+
+    @Test
+    void emptyDatabaseGetsTheSameSchema() {
+        JdbcTemplate baselined = new JdbcTemplate(dataSource("baselined"));
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__baseline.sql")).execute(baselined.getDataSource());
+        flyway(baselined.getDataSource()).migrate();
+
+        JdbcTemplate fresh = new JdbcTemplate(dataSource("fresh"));
+        flyway(fresh.getDataSource()).migrate();
+
+        assertThat(columns(fresh)).isEqualTo(columns(baselined));
+    }
+
+    private static Flyway flyway(DataSource dataSource) {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+    }
+
+    private static DataSource dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static List<String> tables(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList("SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'", String.class);
+    }
+
+    private static List<String> columns(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList("""
+                SELECT table_name || '.' || column_name || ' ' || data_type FROM information_schema.columns
+                WHERE table_schema = 'public' AND table_name <> 'flyway_schema_history'
+                ORDER BY table_name, column_name""", String.class);
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.service;
+
+import org.example.JpaTestConfig;
+import org.example.entity.Broadcast;
+import org.example.entity.Movie;
+import org.example.entity.Usr;
+import org.example.repository.BroadcastRepository;
+import org.example.repository.MovieRepository;
+import org.example.repository.UsrRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Рассылка идёт в потоке сервиса и своими транзакциями, поэтому тест работает без общей
+ * транзакции, ждёт завершения задания и чистит таблицы сам.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ContextConfiguration(classes = JpaTestConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BroadcastServiceTest {
+    private static final String DRAMA = "18";
+
+    @Autowired
+    private BroadcastRepository broadcastRepository;
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private UsrRepository usrRepository;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ClusterService clusterService;
+    private TelegramBotService telegramBotService;
+    private BroadcastService broadcastService;
+    private Movie release;
+
+    @BeforeEach
+    void setUp() {
+        release = new Movie();
+        release.setMovieId(1L);
+        release.setTitle("Новинка");
+        release.setGenreIds(DRAMA);
+        release.setReleaseDate(LocalDate.now().minusDays(3).format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        release = movieRepository.save(release);
+
+        MovieIndex movieIndex = new MovieIndex(movieRepository, mock(MovieStatsService.class));
+        movieIndex.load();
+        MovieLocalizationService movieLocalizationService = mock(MovieLocalizationService.class);
+        when(movieLocalizationService.languageOf(nullable(String.class))).thenReturn("ru");
+        clusterService = mock(ClusterService.class);
+        when(clusterService.isLeader()).thenReturn(true);
+        telegramBotService = mock(TelegramBotService.class);
+
+        broadcastService = new BroadcastService(broadcastRepository, movieRepository, movieIndex, movieLocalizationService,
+                telegramBotService, clusterService, namedJdbcTemplate, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(broadcastService, "enabled", true);
+        ReflectionTestUtils.setField(broadcastService, "releaseWindow", Duration.ofDays(30));
+        ReflectionTestUtils.setField(broadcastService, "maxMovies", 20);
+        ReflectionTestUtils.setField(broadcastService, "minSimilarity", 0.5);
+        ReflectionTestUtils.setField(broadcastService, "pageSize", 1); // Каждый пользователь - отдельная страница
+        ReflectionTestUtils.setField(broadcastService, "parallelism", 1);
+        ReflectionTestUtils.setField(broadcastService, "senderCount", 1);
+        ReflectionTestUtils.setField(broadcastService, "rate", 1000.0);
+        ReflectionTestUtils.setField(broadcastService, "maxAttempts", 1);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        broadcastService.shutdown();
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "broadcast_delivery", "broadcast", "usr", "movie");
+    }
+
+    @Test
+    void matchingResumesAfterLastMatchedUser() throws Exception {
+        Usr first = user(1);
+        Usr second = user(2);
+        Usr third = user(3);
+        // До перезапуска подобрана новинка только первому пользователю
+        Broadcast job = job(Broadcast.Status.MATCHING, first.getId(), 1);
+        delivery(job, first, 0);
+
+        Broadcast done = runToCompletion();
+
+        assertThat(done.getMatched()).isEqualTo(3);
+        assertThat(done.getSent()).isEqualTo(3);
+        for (Usr user : new Usr[]{first, second, third}) {
+            verify(telegramBotService, times(1)).sendNewRelease(eq(user.getChatId()), any(Movie.class), anyDouble(), eq("ru"));
+        }
+    }
+
+    @Test
+    void sendingSkipsAlreadySentDeliveries() throws Exception {
+        Usr first = user(1);
+        Usr second = user(2);
+        // Первому уведомление ушло до перезапуска, второму - ещё нет
+        Broadcast job = job(Broadcast.Status.SENDING, second.getId(), 2);
+        job.setSent(1);
+        broadcastRepository.save(job);
+        delivery(job, first, 1);
+        delivery(job, second, 0);
+
+        Broadcast done = runToCompletion();
+
+        verify(telegramBotService, never()).sendNewRelease(eq(first.getChatId()), any(Movie.class), anyDouble(), anyString());
+        verify(telegramBotService, times(1)).sendNewRelease(eq(second.getChatId()), any(Movie.class), anyDouble(), anyString());
+        verify(telegramBotService, times(1)).sendNewRelease(anyLong(), any(Movie.class), anyDouble(), anyString());
+        assertThat(done.getSent()).isEqualTo(2);
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "broadcast_delivery")).isZero();
+    }
+
+    @Test
+    void newReleasesAreQueued() {
+        Movie old = new Movie();
+        old.setMovieId(2L);
+        old.setTitle("Старый фильм");
+        old.setGenreIds(DRAMA);
+        old.setReleaseDate("1999.10.15");
+        old = movieRepository.save(old);
+        when(clusterService.isLeader()).thenReturn(false); // Только постановка в очередь, без запуска
+
+        broadcastService.onNewMovies(new NewMoviesEvent(List.of(release.getId(), old.getId())));
+
+        Broadcast job = broadcastRepository.findFirstByStatusInOrderByIdAsc(List.of(Broadcast.Status.MATCHING)).orElseThrow();
+        assertThat(job.getMovieIds()).isEqualTo(release.getId().toString());
+    }
+
+    private Broadcast runToCompletion() throws InterruptedException {
+        broadcastService.resume();
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            Broadcast job = broadcastRepository.findAll().get(0);
+            if (job.getStatus() == Broadcast.Status.DONE) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Рассылка не завершилась за 30 с");
+    }
+
+    private Usr user(long chatId) {
+        Usr user = new Usr();
+        user.setChatId(chatId);
+        user.setGenrePreferences(CommandProcessingService.mapToJson(Map.of(DRAMA, 5.0)));
+        return usrRepository.save(user);
+    }
+
+    private Broadcast job(Broadcast.Status status, long lastUserId, long matched) {
+        Broadcast job = new Broadcast();
+        job.setMovieIds(release.getId().toString());
+        job.setStatus(status);
+        job.setLastUserId(lastUserId);
+        job.setMatched(matched);
+        job.setStartedAt(Instant.now());
+        job.setUpdatedAt(job.getStartedAt());
+        return broadcastRepository.save(job);
+    }
+
+    private void delivery(Broadcast job, Usr user, int status) {
+        jdbcTemplate.update("""
+                INSERT INTO broadcast_delivery (broadcast_id, user_id, chat_id, movie_id, similarity, language, status)
+                VALUES (?, ?, ?, ?, 1.0, 'ru', ?)""", job.getId(), user.getId(), user.getChatId(), release.getId(), status);
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.service;
+
+import org.example.JpaTestConfig;
+import org.example.repository.ClusterEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ContextConfiguration(classes = JpaTestConfig.class)
+class ChangeFeedServiceTest {
+
+    @Autowired
+    private ClusterEventRepository clusterEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<String> delivered = new ArrayList<>();
+    private ChangeFeedService changeFeedService;
+
+    @BeforeEach
+    void setUp() {
+        ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.isEnabled()).thenReturn(true);
+        when(clusterService.getNodeId()).thenReturn("self");
+
+        changeFeedService = new ChangeFeedService(clusterEventRepository, clusterService,
+                event -> delivered.add(((CacheInvalidationEvent) event).entityKey()));
+        ReflectionTestUtils.setField(changeFeedService, "gapTimeout", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(changeFeedService, "maxGaps", 100);
+        changeFeedService.init();
+    }
+
+    @Test
+    void eventCommittedAfterLaterIdIsStillDelivered() {
+        // Транзакция обхода получила id 1, но закоммитилась после события с id 2
+        insert(2, "other", "late-commit-first");
+        changeFeedService.poll();
+        assertThat(delivered).containsExactly("late-commit-first");
+
+        insert(1, "other", "long-transaction");
+        changeFeedService.poll();
+        assertThat(delivered).containsExactly("late-commit-first", "long-transaction");
+
+        changeFeedService.poll();
+        assertThat(delivered).hasSize(2);
+    }
+
+    @Test
+    void ownEventsAreSkipped() {
+        insert(1, "self", "own");
+        insert(2, "other", "foreign");
+        changeFeedService.poll();
+        assertThat(delivered).containsExactly("foreign");
+    }
+
+    @Test
+    void gapIsForgottenAfterTimeout() {
+        // Пропуски сразу считаются просроченными: транзакция с id 1 откатилась
+        ReflectionTestUtils.setField(changeFeedService, "gapTimeout", Duration.ofSeconds(-1));
+        insert(2, "other", "second");
+        changeFeedService.poll();
+
+        insert(1, "other", "rolled-back-long-ago");
+        changeFeedService.poll();
+        assertThat(delivered).containsExactly("second");
+    }
+
+    private void insert(long id, String originNode, String entityKey) {
+        jdbcTemplate.update("INSERT INTO cluster_event (id, topic, entity_key, origin_node, created_at) VALUES (?, 'USERS', ?, ?, ?)",
+                id, entityKey, originNode, Timestamp.from(Instant.now()));
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.service;
+
+import org.example.JpaTestConfig;
+import org.example.entity.Movie;
+import org.example.entity.Usr;
+import org.example.repository.MovieRepository;
+import org.example.repository.UserMovieRatingRepository;
+import org.example.repository.UsrRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ContextConfiguration(classes = JpaTestConfig.class)
+class CommandProcessingServiceTest {
+    private static final long CHAT_ID = 100L;
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private UsrRepository usrRepository;
+
+    @Autowired
+    private UserMovieRatingRepository userMovieRatingRepository;
+
+    private MovieStatsService movieStatsService;
+    private CommandProcessingService commandProcessingService;
+    private Movie movie;
+    private Usr user;
+
+    @BeforeEach
+    void setUp() {
+        movieStatsService = new MovieStatsService(null, null, null);
+        commandProcessingService = new CommandProcessingService(null, movieRepository, usrRepository, userMovieRatingRepository,
+                null, null, null, null, null, null, null, null, null, null, null, movieStatsService);
+
+        movie = new Movie();
+        movie.setMovieId(550L);
+        movie.setTitle("Бойцовский клуб");
+        movie.setGenreIds("18_53");
+        movie = movieRepository.save(movie);
+
+        user = new Usr();
+        user.setChatId(CHAT_ID);
+        user = usrRepository.save(user);
+    }
+
+    @Test
+    void firstRatingCountsAsNew() {
+        assertThat(commandProcessingService.saveUserRating(CHAT_ID, movie.getId(), 8)).isNull();
+
+        assertThat(movieStatsService.stats(movie.getId())).isEqualTo(new MovieStatsService.Stats(1, 8, 64));
+        assertThat(userMovieRatingRepository.findRating(user.getId(), movie.getId())).contains(8);
+        Usr saved = usrRepository.findByChatId(CHAT_ID).orElseThrow();
+        assertThat(saved.getRecommendationsDirty()).isTrue();
+        assertThat(saved.getGenrePreferences()).contains("\"18\"", "\"53\"");
+    }
+
+    @Test
+    void sameRatingAgainChangesNothing() {
+        commandProcessingService.saveUserRating(CHAT_ID, movie.getId(), 8);
+
+        assertThat(commandProcessingService.saveUserRating(CHAT_ID, movie.getId(), 8)).isEqualTo(8);
+        assertThat(movieStatsService.stats(movie.getId())).isEqualTo(new MovieStatsService.Stats(1, 8, 64));
+    }
+
+    @Test
+    void changedRatingReplacesPreviousInStats() {
+        commandProcessingService.saveUserRating(CHAT_ID, movie.getId(), 8);
+
+        assertThat(commandProcessingService.saveUserRating(CHAT_ID, movie.getId(), 6)).isEqualTo(8);
+        assertThat(movieStatsService.stats(movie.getId())).isEqualTo(new MovieStatsService.Stats(1, 6, 36));
+        assertThat(userMovieRatingRepository.countByUserId(user.getId())).isEqualTo(1);
+        assertThat(userMovieRatingRepository.findRating(user.getId(), movie.getId())).contains(6);
+    }
+}
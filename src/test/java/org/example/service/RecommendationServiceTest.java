@@ -0,0 +1,159 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.JpaTestConfig;
+import org.example.entity.Movie;
+import org.example.entity.UserRecommendation;
+import org.example.entity.Usr;
+import org.example.repository.MovieRepository;
+import org.example.repository.UserMovieRatingRepository;
+import org.example.repository.UserRecommendationRepository;
+import org.example.repository.UsrRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Пересчёт идёт в собственных транзакциях сервиса (в том числе REQUIRES_NEW), поэтому тест
+ * работает без общей транзакции и чистит таблицы сам.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ContextConfiguration(classes = JpaTestConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RecommendationServiceTest {
+    private static final String ACTION = "28";
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private UsrRepository usrRepository;
+
+    @Autowired
+    private UserMovieRatingRepository userMovieRatingRepository;
+
+    @Autowired
+    private UserRecommendationRepository userRecommendationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MovieIndex movieIndex;
+    private RecommendationService recommendationService;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        movieIndex = new MovieIndex(movieRepository, mock(MovieStatsService.class));
+        ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.isLeader()).thenReturn(true);
+
+        recommendationService = new RecommendationService(movieIndex, mock(MovieAnnIndex.class), usrRepository,
+                movieRepository, userMovieRatingRepository, userRecommendationRepository, clusterService,
+                new BotMetrics(new SimpleMeterRegistry()), transactionTemplate);
+        ReflectionTestUtils.setField(recommendationService, "topN", 10);
+        ReflectionTestUtils.setField(recommendationService, "batchSize", 100);
+        ReflectionTestUtils.setField(recommendationService, "refreshAfter", Duration.ofDays(7));
+        ReflectionTestUtils.setField(recommendationService, "maxStaleness", Duration.ofDays(30));
+        ReflectionTestUtils.setField(recommendationService, "genreWeight", 1f);
+        recommendationService.init();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "user_recommendation", "user_movie_rating", "usr", "movie");
+    }
+
+    @Test
+    void newMoviesMergedIntoListSkipRatedOnes() {
+        Movie seen = movie(1);
+        movie(2);
+        Usr user = userWhoRated(seen);
+        movieIndex.load();
+        transactionTemplate.executeWithoutResult(status -> recommendationService.recompute(user));
+        recommendationService.refresh(); // Запоминает размер каталога, с которого считать новые фильмы
+
+        Movie ratedBeforeMerge = movie(3);
+        Movie fresh = movie(4);
+        movieIndex.catchUp();
+        // Новый фильм нашли поиском и оценили раньше, чем фоновая задача дошла до слияния
+        userMovieRatingRepository.upsert(user.getId(), ratedBeforeMerge.getId(), 9);
+        recommendationService.refresh();
+
+        assertThat(recommendedIds(user))
+                .contains(fresh.getId())
+                .doesNotContain(ratedBeforeMerge.getId(), seen.getId());
+    }
+
+    @Test
+    void dirtyUserIsRecomputedOnRead() {
+        Movie seen = movie(1);
+        Movie next = movie(2);
+        movie(3);
+        Usr user = userWhoRated(seen);
+        movieIndex.load();
+        transactionTemplate.executeWithoutResult(status -> recommendationService.recompute(user));
+        assertThat(recommendedIds(user)).contains(next.getId());
+
+        userMovieRatingRepository.upsert(user.getId(), next.getId(), 8);
+        Usr rated = usrRepository.findById(user.getId()).orElseThrow();
+        rated.setRecommendationsDirty(true);
+        usrRepository.save(rated);
+
+        List<UserRecommendation> served = recommendationService.getRecommendations(usrRepository.findById(user.getId()).orElseThrow());
+        assertThat(served).extracting(row -> row.getMovie().getId()).doesNotContain(next.getId(), seen.getId());
+        assertThat(usrRepository.findById(user.getId()).orElseThrow().getRecommendationsDirty()).isFalse();
+    }
+
+    private Movie movie(long tmdbId) {
+        Movie movie = new Movie();
+        movie.setMovieId(tmdbId);
+        movie.setTitle("Фильм " + tmdbId);
+        movie.setGenreIds(ACTION);
+        movie.setRating(7.0);
+        movie.setVoteCount(100);
+        movie.setReleaseDate("2020.01.01");
+        return movieRepository.save(movie);
+    }
+
+    private Usr userWhoRated(Movie movie) {
+        Usr user = new Usr();
+        user.setChatId(100L);
+        user.setGenrePreferences(CommandProcessingService.mapToJson(Map.of(ACTION, 5.0)));
+        user = usrRepository.save(user);
+        userMovieRatingRepository.upsert(user.getId(), movie.getId(), 10);
+        // Как в боте: пользователь прочитан заново, его оценки - неинициализированная ленивая коллекция
+        return usrRepository.findById(user.getId()).orElseThrow();
+    }
+
+    private List<Long> recommendedIds(Usr user) {
+        return transactionTemplate.execute(status -> userRecommendationRepository.findByUserIdOrderByPositionAsc(user.getId())
+                .stream()
+                .map(row -> row.getMovie().getId())
+                .toList());
+    }
+}